@@ -0,0 +1,54 @@
+import java.util.stream.IntStream;
+
+// Period-end interest accrual and amortization over primitive loan columns
+// One period is one year, the unit of loanTermLeft. For every loan with term left, a period:
+//   accrues interest at interestRate percent on the amount left,
+//   takes the level (annuity) payment that clears the loan over the remaining term,
+//   applies the loan's overpayment on top, and decrements the term
+class AccrualEngine {
+    private static final int CHUNK_ROWS = 1 << 14; // Rows per parallel task
+
+    // Constructor, the class only has static methods
+    private AccrualEngine() {
+    }
+
+    // Method to advance every loan of a columnar store by one period in parallel, returns the total interest accrued
+    public static double advance(ColumnarLoanStore store) {
+        int size = store.size();
+        double[] rates = store.interestRateColumn();
+        double[] balances = store.balanceColumn();
+        double[] overpayments = store.overpaymentColumn();
+        int[] terms = store.termColumn();
+        int chunks = (size + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        // Chunks write disjoint row ranges, so they need no coordination
+        return IntStream.range(0, chunks).parallel()
+                .mapToDouble(chunk -> advanceRange(rates, balances, overpayments, terms,
+                        chunk * CHUNK_ROWS, Math.min(size, (chunk + 1) * CHUNK_ROWS)))
+                .sum();
+    }
+
+    // Method to advance rows from (inclusive) to to (exclusive) by one period, returns the interest accrued
+    // The loop body has no data-dependent branch: every row is computed, and a row without term or balance left keeps
+    // its old values through selects the JIT can turn into conditional moves, so a book mixing open and paid off loans
+    // costs no mispredictions. Each row still needs one Math.pow, since every row has its own term
+    static double advanceRange(double[] rates, double[] balances, double[] overpayments, int[] terms, int from, int to) {
+        double interestTotal = 0;
+        for (int i = from; i < to; i++) {
+            int term = terms[i];
+            double balance = balances[i];
+            double rate = rates[i] / 100;
+            double interest = balance * rate;
+            // Share of the balance the level payment takes: rate / (1 - (1 + rate)^-term), or 1 / term without interest,
+            // picked operand by operand so one division serves both
+            boolean interestFree = rate == 0;
+            double share = (interestFree ? 1 : rate) / (interestFree ? term : 1 - Math.pow(1 + rate, -term));
+            double next = balance + interest - balance * share - overpayments[i];
+            double advanced = term == 1 | next < 0 ? 0 : next; // The last payment clears the loan
+            boolean open = term > 0 & balance > 0; // Paid off loans are left as they are
+            balances[i] = open ? advanced : balance;
+            terms[i] = open ? term - 1 : term;
+            interestTotal += open ? interest : 0;
+        }
+        return interestTotal;
+    }
+}
@@ -0,0 +1,177 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Load generator for BankServer, measuring throughput and latency percentiles of many concurrent clients
+// Usage: java BankLoadGenerator [port] [clients] [requests per client] [first record ID]
+// Every client opens its own connection, registers its own customers and then sends one request at a time (closed loop):
+// 40% CUSTOMER, 30% INCOME, 30% ADD or REMOVE of loans from the client's own range of record IDs
+// All connections are open before the first timed request, so the server really holds that many clients at once
+class BankLoadGenerator {
+    private static final int CUSTOMERS_PER_CLIENT = 4;
+    private static final int MAX_RECORDS_PER_CLIENT = 64;
+    private static final int FIRST_CUSTOMER_KEY = IdCodec.customerKey("LGA000"); // Keeps generated customers apart
+
+    // Member variables
+    private final InetSocketAddress server;
+    private final int clients;
+    private final int requestsPerClient;
+    private final int firstRecordKey; // Start of the record IDs the clients add and remove
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder(); // Responses other than OK, such as a full book
+
+    // Constructor
+    public BankLoadGenerator(InetSocketAddress server, int clients, int requestsPerClient, int firstRecordKey) {
+        this.server = server;
+        this.clients = clients;
+        this.requestsPerClient = requestsPerClient;
+        this.firstRecordKey = firstRecordKey;
+    }
+
+    // Main method
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int firstRecordKey = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        BankLoadGenerator generator = new BankLoadGenerator(new InetSocketAddress("localhost", port), clients, requests,
+                firstRecordKey);
+        long elapsed = generator.run();
+        generator.printReport(elapsed, System.out);
+    }
+
+    // Method to run every client to completion, returns the elapsed time of the timed phase in nanoseconds
+    public long run() throws InterruptedException {
+        ExecutorService threads = BankServer.newConnectionExecutor();
+        CountDownLatch connected = new CountDownLatch(clients);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<?>> running = new ArrayList<>(clients);
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            running.add(threads.submit(() -> {
+                runClient(client, connected, go);
+                return null;
+            }));
+        }
+        connected.await();
+        long start = System.nanoTime();
+        go.countDown();
+        for (Future<?> client : running) {
+            try {
+                client.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Client failed", e.getCause());
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        threads.shutdown();
+        threads.awaitTermination(10, TimeUnit.SECONDS);
+        return elapsed;
+    }
+
+    // Method to run one client: connect, set up its customers, wait for the start signal, then send its requests
+    private void runClient(int client, CountDownLatch connected, CountDownLatch go) throws IOException, InterruptedException {
+        try (Socket socket = new Socket()) {
+            socket.connect(server);
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII));
+            String[] customers = new String[CUSTOMERS_PER_CLIENT];
+            for (int i = 0; i < customers.length; i++) {
+                customers[i] = IdCodec.customerId(FIRST_CUSTOMER_KEY + client * CUSTOMERS_PER_CLIENT + i);
+                call(in, out, "REGISTER " + customers[i] + " 60000"); // Already registered by an earlier run is fine
+            }
+            int records = Math.max(0, Math.min(MAX_RECORDS_PER_CLIENT, (IdCodec.RECORD_KEY_SPACE - firstRecordKey) / clients));
+            int firstRecord = firstRecordKey + client * records;
+            boolean[] added = new boolean[records]; // Which of the client's records it currently holds
+            String[] owners = new String[records];
+            SplittableRandom random = new SplittableRandom(client);
+            connected.countDown();
+            go.await();
+            for (int i = 0; i < requestsPerClient; i++) {
+                String customer = customers[random.nextInt(customers.length)];
+                int pick = random.nextInt(10);
+                String request;
+                if (pick < 4 || records == 0) {
+                    request = "CUSTOMER " + customer;
+                } else if (pick < 7) {
+                    request = "INCOME " + customer + " " + (40_000 + random.nextInt(60_000));
+                } else {
+                    int slot = random.nextInt(records);
+                    String recordId = IdCodec.recordId(firstRecord + slot);
+                    if (added[slot]) {
+                        request = "REMOVE " + owners[slot] + " " + recordId;
+                    } else {
+                        request = "ADD " + customer + " Personal " + recordId + " 3.5 1200.00 12";
+                        owners[slot] = customer;
+                    }
+                    added[slot] = !added[slot];
+                }
+                long start = System.nanoTime();
+                String status = call(in, out, request);
+                latencies.record(System.nanoTime() - start);
+                if (!status.startsWith("OK")) {
+                    errors.increment();
+                }
+            }
+            for (int slot = 0; slot < records; slot++) {
+                if (added[slot]) { // Leave the book as it was, so the next run can use the same record IDs
+                    call(in, out, "REMOVE " + owners[slot] + " " + IdCodec.recordId(firstRecord + slot));
+                }
+            }
+            call(in, out, "QUIT");
+        }
+    }
+
+    // Method to send one request and read its whole response, returns the status line
+    private static String call(BufferedReader in, Writer out, String request) throws IOException {
+        out.write(request);
+        out.write('\n');
+        out.flush();
+        String status = in.readLine();
+        if (status == null) {
+            throw new IOException("Server closed the connection");
+        }
+        int extraLines = 0;
+        if (request.startsWith("CUSTOMER") && status.startsWith("OK")) {
+            extraLines = Integer.parseInt(status.substring(status.lastIndexOf(' ') + 1)); // One line per loan
+        } else if (request.startsWith("LIST") && status.startsWith("OK")) {
+            extraLines = Integer.parseInt(status.substring(3, status.indexOf(' ', 3))); // One line per customer
+        }
+        for (int i = 0; i < extraLines; i++) {
+            in.readLine();
+        }
+        return status;
+    }
+
+    // Getter methods for the results
+    public LatencyHistogram getLatencies() { return latencies; }
+    public long getErrors() { return errors.sum(); }
+
+    // Method to print throughput and latency percentiles of a finished run
+    public void printReport(long elapsedNanos, Appendable out) {
+        long requests = latencies.getCount();
+        XYZBank.writeLine(out, String.format("Clients: %d, requests: %d, errors: %d, threads: %s", clients, requests,
+                getErrors(), BankServer.threadKind()));
+        XYZBank.writeLine(out, String.format("Throughput: %.0f requests/s", requests / (elapsedNanos / 1e9)));
+        XYZBank.writeLine(out, String.format("Latency us: mean %.1f, p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f",
+                latencies.getMean() / 1e3, latencies.getValueAtPercentile(50) / 1e3,
+                latencies.getValueAtPercentile(99) / 1e3, latencies.getValueAtPercentile(99.9) / 1e3,
+                latencies.getMax() / 1e3));
+    }
+}
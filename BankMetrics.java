@@ -0,0 +1,216 @@
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.Formatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Counters, latency histograms and rejection reasons for the operations of one XYZBank
+// Recording allocates nothing and keeps threads off each other's cache lines:
+// - calls are counted in a LongAdder per operation, which spreads contended increments over per-CPU cells and holds
+//   no state per thread, so the many short-lived threads of a server leave nothing behind
+// - about one call in each sample interval, picked with ThreadLocalRandom, reads the clock and goes to the
+//   LatencyHistogram, because two clock reads cost about as much as a record lookup; the histograms therefore hold a
+//   uniform sample of the latencies
+// - rejections are rare and counted in LongAdders as well
+class BankMetrics implements BankMetricsMXBean {
+    private static final BankOperation[] OPERATIONS = BankOperation.values();
+    private static final BankResult[] RESULTS = BankResult.values();
+    private static final long DISABLED = Long.MIN_VALUE; // Returned by start() when metrics are off
+    private static final long UNTIMED = Long.MIN_VALUE + 1; // Returned by start() for calls outside the sample
+    private static final int DEFAULT_SAMPLE_INTERVAL = 64; // Enough samples for p99.9 after a few minutes of traffic
+
+    // Member variables
+    private final XYZBank bank; // Source of the book size gauges
+    private volatile boolean enabled = true;
+    private final LongAdder[] calls = new LongAdder[OPERATIONS.length];
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+    private final LongAdder[][] rejections = new LongAdder[OPERATIONS.length][RESULTS.length]; // By operation and result
+    private final int[] sampleMasks = new int[OPERATIONS.length]; // Sample interval - 1, the interval is a power of two
+
+    // Constructor
+    BankMetrics(XYZBank bank) {
+        this.bank = bank;
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            sampleMasks[op] = DEFAULT_SAMPLE_INTERVAL - 1;
+            calls[op] = new LongAdder();
+            latencies[op] = new LatencyHistogram();
+            for (int result = 0; result < RESULTS.length; result++) {
+                rejections[op][result] = new LongAdder();
+            }
+        }
+    }
+
+    // Method to start an operation: counts the call and reads the clock only if the call is in the timing sample
+    long start(BankOperation operation) {
+        if (!enabled) {
+            return DISABLED;
+        }
+        int op = operation.ordinal();
+        calls[op].increment();
+        return (ThreadLocalRandom.current().nextInt() & sampleMasks[op]) == 0 ? System.nanoTime() : UNTIMED;
+    }
+
+    // Method to record a finished operation started with start()
+    void record(BankOperation operation, long startNanos) {
+        if (startNanos != DISABLED && startNanos != UNTIMED) {
+            latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+        }
+    }
+
+    // Method to record a finished operation and count its result if it was rejected
+    void record(BankOperation operation, long startNanos, BankResult result) {
+        record(operation, startNanos);
+        if (startNanos != DISABLED && !result.isSuccess()) {
+            rejections[operation.ordinal()][result.ordinal()].increment();
+        }
+    }
+
+    // Method to time about one call in every interval calls of an operation, the interval is rounded up to a power of two
+    public void setSampleInterval(BankOperation operation, int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Sample interval must be positive: " + interval);
+        }
+        int powerOfTwo = Integer.highestOneBit(interval - 1) << 1;
+        sampleMasks[operation.ordinal()] = Math.max(1, powerOfTwo) - 1;
+    }
+
+    // Getter method for the sample interval of an operation
+    public int getSampleInterval(BankOperation operation) {
+        return sampleMasks[operation.ordinal()] + 1;
+    }
+
+    // Getter and setter methods for enabled
+    @Override
+    public boolean isEnabled() { return enabled; }
+    @Override
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+    // Getter method for the number of calls of one operation since the last reset
+    // Calls made while the count is read may or may not be included
+    public long getCount(BankOperation operation) {
+        return calls[operation.ordinal()].sum();
+    }
+
+    // Getter method for the latency histogram of one operation
+    public LatencyHistogram getLatency(BankOperation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    // Getter method for how often an operation was rejected with a result
+    public long getRejections(BankOperation operation, BankResult result) {
+        return rejections[operation.ordinal()][result.ordinal()].sum();
+    }
+
+    // Methods for the JMX view
+    @Override
+    public Map<String, Long> getOperationCounts() { return perOperation(this::getCount); }
+    @Override
+    public Map<String, Long> getLatencyP50Nanos() { return perOperation(op -> getLatency(op).getValueAtPercentile(50)); }
+    @Override
+    public Map<String, Long> getLatencyP99Nanos() { return perOperation(op -> getLatency(op).getValueAtPercentile(99)); }
+    @Override
+    public Map<String, Long> getLatencyMaxNanos() { return perOperation(op -> getLatency(op).getMax()); }
+    @Override
+    public int getCustomerCount() { return bank.getCustomerCount(); }
+    @Override
+    public int getRecordCount() { return bank.getCurrentNumberOfRecords(); }
+    @Override
+    public int getMaxRecordsAllowed() { return bank.getMaxRecordsAllowed(); }
+    @Override
+    public double getEligibilityCacheHitRate() { return bank.getEligibilityEvaluator().getHitRate(); }
+
+    // Method to list the non-zero rejection counts, keyed by "method result"
+    @Override
+    public Map<String, Long> getRejections() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (BankOperation operation : OPERATIONS) {
+            for (BankResult result : RESULTS) {
+                long count = getRejections(operation, result);
+                if (count > 0) {
+                    map.put(operation.getDisplayName() + " " + result.name(), count);
+                }
+            }
+        }
+        return map;
+    }
+
+    // Method to build a map with one value per operation
+    private static Map<String, Long> perOperation(ToLongFunction<BankOperation> value) {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (BankOperation operation : OPERATIONS) {
+            map.put(operation.getDisplayName(), value.applyAsLong(operation));
+        }
+        return map;
+    }
+
+    // Method to clear every counter and histogram
+    @Override
+    public synchronized void reset() {
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            calls[op].reset();
+            latencies[op].reset();
+            for (LongAdder rejection : rejections[op]) {
+                rejection.reset();
+            }
+        }
+    }
+
+    // Method to write a text dump of all metrics
+    public void dump(Appendable out) {
+        Formatter formatter = new Formatter(out);
+        formatter.format("%-24s %12s %8s %10s %10s %10s %12s %12s%n",
+                "Operation", "Count", "Timed 1/", "Mean ns", "p50 ns", "p99 ns", "p99.9 ns", "Max ns");
+        for (BankOperation operation : OPERATIONS) {
+            LatencyHistogram latency = getLatency(operation);
+            formatter.format("%-24s %12d %8d %10.0f %10d %10d %12d %12d%n", operation.getDisplayName(), getCount(operation),
+                    getSampleInterval(operation), latency.getMean(), latency.getValueAtPercentile(50), latency.getValueAtPercentile(99),
+                    latency.getValueAtPercentile(99.9), latency.getMax());
+        }
+        formatter.format("Rejections:%n");
+        Map<String, Long> rejected = getRejections();
+        if (rejected.isEmpty()) {
+            formatter.format("  none%n");
+        }
+        for (Map.Entry<String, Long> entry : rejected.entrySet()) {
+            formatter.format("  %-40s %12d%n", entry.getKey(), entry.getValue());
+        }
+        formatter.format("Customers: %d, records: %d of %d, eligibility cache hit rate: %.3f%n",
+                getCustomerCount(), getRecordCount(), getMaxRecordsAllowed(), getEligibilityCacheHitRate());
+        if (formatter.ioException() != null) {
+            throw new UncheckedIOException(formatter.ioException());
+        }
+    }
+
+    // Method to get the text dump as a String
+    @Override
+    public String getTextDump() {
+        StringBuilder out = new StringBuilder();
+        dump(out);
+        return out.toString();
+    }
+
+    // Method to publish these metrics on the platform MBean server under XYZBank:type=BankMetrics,name=<name>
+    public ObjectName registerMBean(String name) {
+        try {
+            ObjectName objectName = new ObjectName("XYZBank:type=BankMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register bank metrics as " + name, e);
+        }
+    }
+
+    // Method to remove these metrics from the platform MBean server
+    public void unregisterMBean(ObjectName objectName) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot unregister bank metrics " + objectName, e);
+        }
+    }
+}
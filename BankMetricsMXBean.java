@@ -0,0 +1,20 @@
+import java.util.Map;
+
+// JMX view of BankMetrics, maps are keyed by XYZBank method name (or by "method result" for rejections)
+// Counts cover every call, latencies come from the timed sample (see BankMetrics.setSampleInterval)
+// Public because the platform MBean server only introspects public interfaces
+public interface BankMetricsMXBean {
+    boolean isEnabled();
+    void setEnabled(boolean enabled);
+    Map<String, Long> getOperationCounts();
+    Map<String, Long> getLatencyP50Nanos();
+    Map<String, Long> getLatencyP99Nanos();
+    Map<String, Long> getLatencyMaxNanos();
+    Map<String, Long> getRejections();
+    int getCustomerCount();
+    int getRecordCount();
+    int getMaxRecordsAllowed();
+    double getEligibilityCacheHitRate();
+    String getTextDump();
+    void reset();
+}
@@ -0,0 +1,23 @@
+// Enum of the XYZBank operations that are counted and timed by BankMetrics
+enum BankOperation {
+    REGISTER_CUSTOMER("registerNewCustomer"),
+    ADD_LOAN("addLoanToCustomer"),
+    ADD_LOANS("addLoans"),
+    REMOVE_LOAN("removeLoanFromCustomer"),
+    UPDATE_INCOME("updateCustomerIncome"),
+    UPDATE_LOAN("updateLoan"),
+    LOOKUP("lookup"); // hasRecord, hasCustomer and findCustomerByRecordId
+
+    // Member variables
+    private final String displayName; // Name of the XYZBank method shown in dumps and JMX
+
+    // Constructor
+    BankOperation(String displayName) {
+        this.displayName = displayName;
+    }
+
+    // Getter method for displayName
+    public String getDisplayName() {
+        return displayName;
+    }
+}
@@ -0,0 +1,28 @@
+// Enum of the outcomes of XYZBank operations, each with the message reported to the user
+enum BankResult {
+    SUCCESS("Operation completed successfully."),
+    CUSTOMER_NOT_FOUND("Customer not found."),
+    CUSTOMER_EXISTS("Customer already exists."),
+    INVALID_CUSTOMER_ID("Invalid Customer ID format. Customer ID should be 3 letters followed by 3 numbers."),
+    DUPLICATE_RECORD("Record with the same Record ID already exists for another customer."),
+    RECORD_NOT_FOUND("Loan with this Record ID does not exist for the customer."),
+    LIMIT_REACHED("Cannot add more loans, maximum records limit reached.");
+
+    // Member variables
+    private final String message; // Message shown for this outcome
+
+    // Constructor
+    BankResult(String message) {
+        this.message = message;
+    }
+
+    // Getter method for message
+    public String getMessage() {
+        return message;
+    }
+
+    // Method to check if the operation succeeded
+    public boolean isSuccess() {
+        return this == SUCCESS;
+    }
+}
@@ -0,0 +1,458 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Headless server exposing the bank operations over a line-based text protocol on localhost
+// Usage: java BankServer [port] [max records] [data directory], port 0 picks a free port
+// Every request is one line of space separated words, the first line of its response starts with OK or ERR:
+//   REGISTER <customerID> <income>
+//   ADD <customerID> <loanType> <recordID> <interestRate> <amountLeft> <termLeft> [overpayment]
+//   REMOVE <customerID> <recordID>
+//   INCOME <customerID> <income>
+//   UPDATE <customerID> <recordID> <amountLeft> <termLeft>
+//   OWNER <recordID>                       -> OK <customerID>
+//   CUSTOMER <customerID>                  -> OK <customerID> <income> <totalLeft> <eligible> <loans>, then one line per loan
+//   LIST <afterCustomerID or -> <pageSize> -> OK <customers> <next cursor or ->, then one line per customer
+//   QUIT
+// Failures answer ERR <BankResult or BAD_REQUEST> <message>, or ERR SERVER_ERROR <message> when the bank could not
+// carry out the request, for example because its journal failed; lines longer than MAX_LINE_CHARS are rejected
+// Each connection is served by its own thread: a virtual thread when the JVM can run them (Java 21 and later, or
+// Java 19 and 20 with preview features enabled), otherwise a platform thread with a small stack
+// The bank itself is thread-safe, so connections share it directly
+class BankServer implements Closeable {
+    private static final int DEFAULT_PORT = 7070;
+    private static final int DEFAULT_MAX_RECORDS = 1_000_000;
+    private static final int BACKLOG = 4096; // Pending connections queued by the OS while the acceptor catches up
+    private static final long PLATFORM_STACK_BYTES = 256 * 1024; // Stack of a fallback connection thread
+    private static final int MAX_PAGE_SIZE = 1000; // Largest LIST page a client may ask for
+    private static final int MAX_LINE_CHARS = 1024; // Longest request line, far above the longest valid request
+    private static final long MIN_ACCEPT_BACKOFF_MILLIS = 10; // First pause after a failed accept
+    private static final long MAX_ACCEPT_BACKOFF_MILLIS = 1000; // Longest pause while accept keeps failing
+    private static final Method VIRTUAL_EXECUTOR = findVirtualExecutor(); // Null when this JVM cannot run virtual threads
+
+    // Member variables
+    private final XYZBank bank; // Bank shared by every connection
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = newConnectionExecutor();
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet(); // Closed on shutdown to end blocked reads
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+    // Constructor, binds to the loopback address and starts accepting connections
+    public BankServer(XYZBank bank, int port) throws IOException {
+        this.bank = bank;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        this.acceptor = new Thread(this::acceptLoop, "bank-server-acceptor");
+        acceptor.start();
+    }
+
+    // Main method
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int maxRecords = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_RECORDS;
+        XYZBank bank;
+        BankStore store = null;
+        if (args.length > 2) {
+            store = BankStore.open(Path.of(args[2]), maxRecords, FsyncPolicy.GROUP, 10);
+            store.scheduleCheckpoints(60_000);
+            bank = store.getBank();
+        } else {
+            bank = new XYZBank(maxRecords);
+        }
+        BankServer server = new BankServer(bank, port);
+        BankStore openStore = store;
+        // The server runs until the process is stopped, so the store is closed from a shutdown hook: it commits the
+        // records the journal still buffers, which a group commit policy would otherwise lose
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                if (openStore != null) {
+                    openStore.close();
+                }
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Shutdown failed: " + e.getMessage());
+            }
+        }, "bank-server-shutdown"));
+        System.out.println("XYZ Bank server listening on " + server.getAddress() + " using " + threadKind() + " threads");
+    }
+
+    // Getter method for the address the server listens on, useful with port 0
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    // Method to find the factory of virtual thread executors, returns null if this JVM cannot run virtual threads
+    // Virtual threads are looked up by reflection so the code still compiles and runs on Java 17; on Java 19 and 20
+    // the factory exists but refuses to run unless preview features are enabled, so it is tried once here
+    private static Method findVirtualExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ((ExecutorService) factory.invoke(null)).shutdown();
+            return factory;
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null; // No virtual threads (or only as a disabled preview)
+        }
+    }
+
+    // Method to create the executor running one task per connection
+    // It uses virtual threads when the JVM can run them, otherwise platform threads with a small stack
+    static ExecutorService newConnectionExecutor() {
+        if (VIRTUAL_EXECUTOR != null) {
+            try {
+                return (ExecutorService) VIRTUAL_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Virtual thread executor failed after it was tried", e);
+            }
+        }
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threads = task -> {
+            Thread thread = new Thread(null, task, "bank-connection-" + count.incrementAndGet(), PLATFORM_STACK_BYTES);
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newCachedThreadPool(threads);
+    }
+
+    // Method to name the kind of thread newConnectionExecutor uses
+    static String threadKind() {
+        return VIRTUAL_EXECUTOR != null ? "virtual" : "platform";
+    }
+
+    // Method to accept connections until the server is closed
+    // While accept keeps failing, for example when the process is out of file descriptors, the loop pauses before
+    // retrying, doubling the pause up to a limit, instead of spinning and flooding the log
+    private void acceptLoop() {
+        long backoffMillis = MIN_ACCEPT_BACKOFF_MILLIS;
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true); // Responses are small and clients wait for each one
+                openSockets.add(socket);
+                connections.execute(() -> serve(socket));
+                backoffMillis = MIN_ACCEPT_BACKOFF_MILLIS;
+            } catch (IOException e) {
+                if (closed) {
+                    break;
+                }
+                System.err.println("Accept failed, retrying in " + backoffMillis + " ms: " + e.getMessage());
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoffMillis = Math.min(backoffMillis * 2, MAX_ACCEPT_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    // Method to answer the requests of one connection until the client quits or disconnects
+    private void serve(Socket socket) {
+        try (socket;
+             LineReader in = new LineReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+            StringBuilder response = new StringBuilder(256); // Reused for every response of the connection
+            String line;
+            while ((line = in.readLine()) != null) {
+                response.setLength(0);
+                boolean more = true;
+                if (in.isTooLong()) {
+                    response.append("ERR BAD_REQUEST Line longer than ").append(MAX_LINE_CHARS).append(" characters\n");
+                } else {
+                    more = handle(line, response);
+                }
+                out.append(response);
+                if (!more) {
+                    break;
+                }
+                if (!in.ready()) {
+                    out.flush(); // Flush once per batch of pipelined requests
+                }
+            }
+        } catch (SocketException e) {
+            // Client went away or the server is closing
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("Connection failed: " + e.getMessage());
+            }
+        } finally {
+            openSockets.remove(socket);
+        }
+    }
+
+    // Method to execute one request line and append its response, returns false when the client asked to quit
+    boolean handle(String line, StringBuilder response) {
+        String[] words = splitWords(line);
+        try {
+            switch (words[0].toUpperCase()) {
+                case "REGISTER":
+                    expectWords(words, 3, 3);
+                    appendResult(response, bank.registerNewCustomer(words[1], amount(words[2])));
+                    break;
+                case "ADD":
+                    expectWords(words, 7, 8);
+                    LoanRequest request = LoanRequest.of(words[1], words[2], words[3], positive(amount(words[4])),
+                            positive(amount(words[5])), (int) positive(wholeNumber(words[6])),
+                            words.length > 7 ? amount(words[7]) : 0);
+                    appendResult(response, bank.addLoanToCustomer(request.getCustomerID(), request.getLoan()));
+                    break;
+                case "REMOVE":
+                    expectWords(words, 3, 3);
+                    appendResult(response, bank.removeLoanFromCustomer(words[1], words[2]));
+                    break;
+                case "INCOME":
+                    expectWords(words, 3, 3);
+                    appendResult(response, bank.updateCustomerIncome(words[1], amount(words[2])));
+                    break;
+                case "UPDATE":
+                    expectWords(words, 5, 5);
+                    appendResult(response, bank.updateLoan(words[1], words[2], amount(words[3]), wholeNumber(words[4])));
+                    break;
+                case "OWNER":
+                    expectWords(words, 2, 2);
+                    Customer owner = bank.findCustomerByRecordId(words[1]);
+                    if (owner == null) {
+                        appendResult(response, BankResult.RECORD_NOT_FOUND);
+                    } else {
+                        response.append("OK ").append(owner.getCustomerId()).append('\n');
+                    }
+                    break;
+                case "CUSTOMER":
+                    expectWords(words, 2, 2);
+                    CustomerListing listing = bank.getCustomerListing(words[1]);
+                    if (listing == null) {
+                        appendResult(response, BankResult.CUSTOMER_NOT_FOUND);
+                    } else {
+                        response.append("OK ");
+                        appendListing(response, listing, true);
+                    }
+                    break;
+                case "LIST":
+                    expectWords(words, 1, 3);
+                    String after = words.length > 1 && !words[1].equals("-") ? words[1] : null;
+                    int pageSize = words.length > 2 ? wholeNumber(words[2]) : 20;
+                    if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+                        throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+                    }
+                    appendPage(response, bank.listCustomers(after, pageSize, LoanFilter.ALL));
+                    break;
+                case "QUIT":
+                    response.append("OK\n");
+                    return false;
+                default:
+                    throw new IllegalArgumentException("Unknown command: " + words[0]);
+            }
+        } catch (IllegalArgumentException e) {
+            response.append("ERR BAD_REQUEST ").append(e.getMessage()).append('\n');
+        } catch (RuntimeException e) {
+            // The request was valid but the bank failed, for example when its journal refused the mutation, which the
+            // bank then left unapplied; the connection stays usable
+            System.err.println("Request failed: " + line + ": " + e);
+            response.append("ERR SERVER_ERROR ").append(e.getMessage()).append('\n');
+        }
+        return true;
+    }
+
+    // Method to split a request line at runs of spaces, without the regex engine String.split would use
+    private static String[] splitWords(String line) {
+        List<String> words = new ArrayList<>(8);
+        int i = 0;
+        while (i < line.length()) {
+            while (i < line.length() && line.charAt(i) == ' ') {
+                i++;
+            }
+            int start = i;
+            while (i < line.length() && line.charAt(i) != ' ') {
+                i++;
+            }
+            if (i > start) {
+                words.add(line.substring(start, i));
+            }
+        }
+        return words.isEmpty() ? new String[] {""} : words.toArray(new String[0]);
+    }
+
+    // Method to check the number of words of a request, the command included
+    private static void expectWords(String[] words, int min, int max) {
+        if (words.length < min || words.length > max) {
+            throw new IllegalArgumentException(words[0].toUpperCase() + " takes " + (min - 1)
+                    + (max > min ? " to " + (max - 1) : "") + " arguments");
+        }
+    }
+
+    // Method to parse an amount, rate or income field
+    private static double amount(String word) {
+        if (!Validators.isValidAmount(word)) {
+            throw new IllegalArgumentException("Invalid amount: " + word);
+        }
+        return Double.parseDouble(word);
+    }
+
+    // Method to parse a whole number field such as a term or a page size
+    private static int wholeNumber(String word) {
+        if (!Validators.isWholeNumber(word)) {
+            throw new IllegalArgumentException("Invalid number: " + word);
+        }
+        return Integer.parseInt(word);
+    }
+
+    // Method to check that a loan's rate, amount or term is above zero, as the menu requires
+    private static double positive(double value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("Loan values must be positive: " + value);
+        }
+        return value;
+    }
+
+    // Method to append the response line of an operation result
+    private static void appendResult(StringBuilder response, BankResult result) {
+        if (result.isSuccess()) {
+            response.append("OK\n");
+        } else {
+            response.append("ERR ").append(result.name()).append(' ').append(result.getMessage()).append('\n');
+        }
+    }
+
+    // Method to append one page: a header line with the count and the next cursor, then one line per customer
+    private static void appendPage(StringBuilder response, CustomerPage page) {
+        response.append("OK ").append(page.getCustomers().size()).append(' ')
+                .append(page.hasNext() ? page.getNextCursor() : "-").append('\n');
+        for (CustomerListing listing : page.getCustomers()) {
+            appendListing(response, listing, false);
+        }
+    }
+
+    // Method to append the line of one customer, followed by one line per loan when withLoans is true
+    private static void appendListing(StringBuilder response, CustomerListing listing, boolean withLoans) {
+        response.append(listing.getCustomerId()).append(' ');
+        appendFixed(response, listing.getAnnualIncome(), 2);
+        response.append(' ');
+        appendFixed(response, listing.getTotalAmountLeft(), 2);
+        response.append(' ').append(listing.isEligible()).append(' ').append(listing.getLoans().size()).append('\n');
+        if (withLoans) {
+            for (Loan loan : listing.getLoans()) {
+                response.append(loan.getRecordID()).append(' ').append(loan.getLoanType()).append(' ');
+                appendFixed(response, loan.getInterestRate(), 4);
+                response.append(' ');
+                appendFixed(response, loan.getAmountLeft(), 2);
+                response.append(' ').append(loan.getLoanTermLeft()).append('\n');
+            }
+        }
+    }
+
+    // Method to append a number with a fixed number of decimals, the protocol's format for money and rates
+    private static void appendFixed(StringBuilder response, double value, int decimals) {
+        byte[] digits = new byte[32];
+        int length = LoanBookIO.formatFixed(value, decimals, digits);
+        for (int i = 0; i < length; i++) {
+            response.append((char) digits[i]);
+        }
+    }
+
+    // Method to stop accepting connections and close the open ones
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket socket : openSockets) {
+            socket.close();
+        }
+        connections.shutdown();
+    }
+
+    // Reader of request lines that keeps at most MAX_LINE_CHARS of a line, so a client cannot make the server buffer
+    // an endless line; a longer line is read to its end, dropped and flagged
+    private static final class LineReader implements Closeable {
+        private final Reader in;
+        private final char[] buffer = new char[8192];
+        private int position;
+        private int limit;
+        private final StringBuilder line = new StringBuilder(128);
+        private boolean tooLong; // True if the last line read was longer than MAX_LINE_CHARS
+
+        // Constructor
+        LineReader(Reader in) {
+            this.in = in;
+        }
+
+        // Method to read the next line without its line break, returns null at the end of the stream
+        // Lines end with \n or \r\n; a line longer than MAX_LINE_CHARS comes back empty with isTooLong true
+        String readLine() throws IOException {
+            line.setLength(0);
+            tooLong = false;
+            boolean any = false;
+            while (true) {
+                if (position == limit) {
+                    int read = in.read(buffer, 0, buffer.length);
+                    if (read < 0) {
+                        return any ? endLine() : null;
+                    }
+                    position = 0;
+                    limit = read;
+                    continue;
+                }
+                char c = buffer[position++];
+                any = true;
+                if (c == '\n') {
+                    return endLine();
+                }
+                if (line.length() < MAX_LINE_CHARS + 1) { // One more than the limit to keep a \r before the \n
+                    line.append(c);
+                } else {
+                    tooLong = true;
+                }
+            }
+        }
+
+        // Method to finish the current line, dropping a \r before the line break
+        private String endLine() {
+            int length = line.length();
+            if (length > 0 && line.charAt(length - 1) == '\r') {
+                line.setLength(--length);
+            }
+            if (tooLong || length > MAX_LINE_CHARS) {
+                tooLong = true;
+                return "";
+            }
+            return line.toString();
+        }
+
+        // Getter method for tooLong
+        boolean isTooLong() {
+            return tooLong;
+        }
+
+        // Method to check if a line can be read without blocking, for flushing once per batch of pipelined requests
+        boolean ready() throws IOException {
+            return position < limit || in.ready();
+        }
+
+        // Method to close the underlying reader
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Point-in-time view of a whole XYZBank, opened with XYZBank.openSnapshot
+// Every customer is seen as of the same moment, however long the reader takes and whatever writers do meanwhile;
+// reads take no lock, so writers go on at full speed (see BankVersions)
+// Each bank operation is one step: the snapshot sees all of it or none of it. A batch of loans or an accrual run is
+// one step per customer, as it is for live readers
+// Eligibility is judged under the policy in force when the reader asks
+// Close the snapshot when done, an open snapshot keeps every version it can see alive
+class BankSnapshot implements AutoCloseable {
+    // Member variables
+    private final BankVersions versions;
+    private final CustomerTable customers;
+    private final EligibilityEvaluator eligibility;
+    private final int maxRecordsAllowed;
+    private final long registered; // Version the reader is registered at, see BankVersions.openReader
+    private final long version; // Version the snapshot reads at
+    private boolean closed;
+
+    // Constructor, use XYZBank.openSnapshot
+    BankSnapshot(BankVersions versions, CustomerTable customers, EligibilityEvaluator eligibility, int maxRecordsAllowed) {
+        this.versions = versions;
+        this.customers = customers;
+        this.eligibility = eligibility;
+        this.maxRecordsAllowed = maxRecordsAllowed;
+        this.registered = versions.openReader();
+        this.version = versions.getClock(); // Only after registering
+    }
+
+    // Getter method for the version the snapshot reads at
+    public long getVersion() {
+        return version;
+    }
+
+    // Method to find the version of a customer this snapshot sees, returns null if it was not registered yet
+    private CustomerVersion lookup(String customerID) {
+        Customer customer = customers.get(IdCodec.customerKey(customerID));
+        return customer != null ? BankVersions.versionAt(customer, version) : null;
+    }
+
+    // Method to check if a customer was registered at the time of the snapshot
+    public boolean hasCustomer(String customerID) {
+        return lookup(customerID) != null;
+    }
+
+    // Method to capture a customer with all of their loans, returns null if the customer was not registered
+    public CustomerListing getCustomerListing(String customerID) {
+        CustomerVersion customer = lookup(customerID);
+        return customer != null ? customer.toListing(eligibility.getPolicy(), LoanFilter.ALL) : null;
+    }
+
+    // Method to count the loans in the snapshot, one pass over every customer
+    public int getRecordCount() {
+        int count = 0;
+        Iterator<CustomerVersion> inOrder = new VersionIterator(0);
+        while (inOrder.hasNext()) {
+            count += inOrder.next().getLoanCount();
+        }
+        return count;
+    }
+
+    // Method to stream the customers matching a filter lazily, in customer ID order, starting after a customer ID
+    // Pass null to start from the beginning
+    public Stream<CustomerListing> listCustomers(String afterCustomerID, LoanFilter filter) {
+        int firstKey = 0;
+        if (afterCustomerID != null) {
+            int afterKey = IdCodec.customerKey(afterCustomerID);
+            if (afterKey == IdCodec.INVALID) {
+                throw new IllegalArgumentException("Invalid cursor: " + afterCustomerID);
+            }
+            firstKey = afterKey + 1;
+        }
+        EligibilityPolicy policy = eligibility.getPolicy();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new VersionIterator(firstKey),
+                        Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false)
+                .map(customer -> customer.toListing(policy, filter))
+                .filter(Objects::nonNull);
+    }
+
+    // Method to render the report of all customers, in customer ID order, with the record counts of the snapshot
+    // The caller flushes the renderer, so a report can go to a FileChannel as well as to any Appendable
+    public void renderReport(ReportRenderer renderer) {
+        renderer.beginReport(maxRecordsAllowed, getRecordCount());
+        listCustomers(null, LoanFilter.ALL).forEach(renderer::customer);
+        renderer.endReport();
+    }
+
+    // Method to release the snapshot, calling it again does nothing
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            versions.closeReader(registered);
+        }
+    }
+
+    // Iterator over the customer versions the snapshot sees, in customer ID order, starting at a customer key
+    private final class VersionIterator implements Iterator<CustomerVersion> {
+        private int nextKey; // Key of the next customer to look at, or -1 at the end
+        private CustomerVersion next; // Next version to return, or null at the end
+
+        // Constructor
+        VersionIterator(int firstKey) {
+            nextKey = customers.nextKey(firstKey);
+            next = advance();
+        }
+
+        // Method to find the next customer the snapshot sees, skipping customers registered after it
+        private CustomerVersion advance() {
+            while (nextKey >= 0) {
+                CustomerVersion found = BankVersions.versionAt(customers.get(nextKey), version);
+                nextKey = customers.nextKey(nextKey + 1);
+                if (found != null) {
+                    return found;
+                }
+            }
+            return null;
+        }
+
+        // Method to check if there is another customer
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        // Method to get the next customer
+        @Override
+        public CustomerVersion next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            CustomerVersion found = next;
+            next = advance();
+            return found;
+        }
+    }
+}
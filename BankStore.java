@@ -0,0 +1,168 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+// Persistent home of an XYZBank: a snapshot of the whole book plus a journal of the mutations made since
+// Opening a store loads the snapshot and replays only the journal tail, a checkpoint writes a new snapshot and empties the journal
+class BankStore implements AutoCloseable {
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String JOURNAL_FILE = "journal.bin";
+    private static final int SNAPSHOT_MAGIC = 0x58534E50; // "XSNP", marks the start of a snapshot file
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int LOAD_BATCH = 1 << 16; // Loans handed to XYZBank.addLoans at a time while loading a snapshot
+
+    // Member variables
+    private final Path directory; // Directory holding the snapshot and journal files
+    private final XYZBank bank; // Recovered bank, logging to the journal
+    private final LoanJournal journal; // Journal of mutations since the last snapshot
+    private ScheduledExecutorService scheduler; // Runs periodic checkpoints, null until scheduled
+
+    // Constructor, use open to create a store
+    private BankStore(Path directory, XYZBank bank, LoanJournal journal) {
+        this.directory = directory;
+        this.bank = bank;
+        this.journal = journal;
+    }
+
+    // Method to open (or create) a store and recover its bank
+    // maxRecords is only used when the directory holds no snapshot yet
+    public static BankStore open(Path directory, int maxRecords, FsyncPolicy policy, long commitIntervalMillis)
+            throws IOException {
+        Files.createDirectories(directory);
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        Path journalFile = directory.resolve(JOURNAL_FILE);
+        XYZBank bank = Files.exists(snapshotFile) ? readSnapshot(snapshotFile) : new XYZBank(maxRecords);
+        LoanJournal.replay(journalFile, bank); // Replay only what happened after the snapshot
+        BankStore store = new BankStore(directory, bank, LoanJournal.open(journalFile, policy, commitIntervalMillis));
+        bank.attachJournal(store.journal);
+        if (!Files.exists(snapshotFile)) {
+            store.checkpoint(); // Make the records limit of a new store durable
+        }
+        return store;
+    }
+
+    // Getter method for the recovered bank
+    public XYZBank getBank() {
+        return bank;
+    }
+
+    // Method to write a snapshot of the bank and empty the journal
+    // Mutations wait while the snapshot is written, so the snapshot and the emptied journal always agree
+    public void checkpoint() throws IOException {
+        Lock lock = bank.checkpointLock();
+        lock.lock();
+        try {
+            writeSnapshot(bank, directory.resolve(SNAPSHOT_FILE));
+            journal.truncate();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Method to checkpoint in the background at a fixed period, so a restart only replays a short journal
+    public synchronized void scheduleCheckpoints(long periodMillis) {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bank-store-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Checkpoint failed: " + e.getMessage());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // Method to stop checkpoints, commit the journal and detach it from the bank
+    @Override
+    public synchronized void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        bank.attachJournal(null);
+        journal.close();
+    }
+
+    // Method to write a snapshot file atomically: write a temporary file, force it, then rename it over the old one
+    private static void writeSnapshot(XYZBank bank, Path snapshotFile) throws IOException {
+        Path temporary = snapshotFile.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(bank.getMaxRecordsAllowed());
+            out.writeInt(bank.getCustomers().size());
+            for (Customer customer : bank.getCustomers()) {
+                synchronized (customer) {
+                    out.writeUTF(customer.getCustomerId());
+                    out.writeDouble(customer.getAnnualIncome());
+                    out.writeInt(customer.getCreditRecords().size());
+                    for (Loan loan : customer.getCreditRecords()) {
+                        out.writeInt(loan.getRecordKey());
+                        out.writeByte(loan.getType().ordinal());
+                        out.writeDouble(loan.getInterestRate());
+                        out.writeDouble(loan.getAmountLeft());
+                        out.writeInt(loan.getLoanTermLeft());
+                        out.writeDouble(loan.getOverpayment());
+                    }
+                }
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Method to rebuild a bank from a snapshot file, loading the loans in large batches
+    private static XYZBank readSnapshot(Path snapshotFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Not a bank snapshot: " + snapshotFile);
+            }
+            XYZBank bank = new XYZBank(in.readInt());
+            int customerCount = in.readInt();
+            List<LoanRequest> loans = new ArrayList<>();
+            for (int c = 0; c < customerCount; c++) {
+                String customerID = in.readUTF();
+                bank.registerNewCustomer(customerID, in.readDouble());
+                int loanCount = in.readInt();
+                for (int l = 0; l < loanCount; l++) {
+                    String recordID = IdCodec.recordId(in.readInt());
+                    LoanType type = LoanType.fromCode(in.readByte());
+                    double interestRate = in.readDouble();
+                    double amountLeft = in.readDouble();
+                    int loanTermLeft = in.readInt();
+                    double overpayment = in.readDouble();
+                    loans.add(new LoanRequest(customerID, type.create(recordID, interestRate, amountLeft, loanTermLeft, overpayment)));
+                }
+                if (loans.size() >= LOAD_BATCH) {
+                    bank.addLoans(loans);
+                    loans.clear();
+                }
+            }
+            bank.addLoans(loans);
+            return bank;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Multi-version store behind BankSnapshot: a global clock, a version chain per customer and the registry of open readers
+// Every mutation commits a new CustomerVersion while holding the customer's lock:
+// 1. the version is installed as the customer's newest, still PENDING
+// 2. the clock is incremented and the version stamped with the new value
+// 3. versions older than the newest one every open reader can still see are cut off the chain
+// A reader takes the clock value as its snapshot and sees, for every customer, the newest version stamped at or below
+// it; a PENDING version is waited for, since it may turn out to be stamped below the snapshot
+// Readers never lock anything a writer needs, and writers never wait for readers
+class BankVersions {
+    // Member variables
+    private final AtomicLong clock = new AtomicLong(CustomerVersion.PENDING);
+    private final TreeMap<Long, Integer> readers = new TreeMap<>(); // Registered version to number of open readers
+    private volatile long oldestReader = Long.MAX_VALUE; // Lowest registered version, MAX_VALUE with no reader open
+
+    // Getter method for the last committed version number
+    public long getClock() {
+        return clock.get();
+    }
+
+    // Method to commit the first version of a customer, or a full capture, called while holding the customer's lock
+    void commitCapture(Customer customer) {
+        commit(customer, CustomerVersion.capture(customer));
+    }
+
+    // Method to commit a customer after an income change, called while holding the customer's lock
+    void commitIncome(Customer customer) {
+        CustomerVersion latest = customer.getLatestVersion();
+        commit(customer, latest != null ? latest.withIncome(customer) : CustomerVersion.capture(customer));
+    }
+
+    // Method to commit a customer after one of its loans was added or changed, called while holding the customer's lock
+    void commitLoan(Customer customer, Loan loan) {
+        CustomerVersion latest = customer.getLatestVersion();
+        commit(customer, latest != null ? latest.withLoan(customer, loan) : CustomerVersion.capture(customer));
+    }
+
+    // Method to commit a customer after one of its loans was removed, called while holding the customer's lock
+    void commitRemoval(Customer customer, int recordKey) {
+        CustomerVersion latest = customer.getLatestVersion();
+        commit(customer, latest != null ? latest.withoutLoan(customer, recordKey) : CustomerVersion.capture(customer));
+    }
+
+    // Method to install, stamp and prune, see the class comment
+    private void commit(Customer customer, CustomerVersion next) {
+        next.setPrevious(customer.getLatestVersion());
+        customer.setLatestVersion(next);
+        long version = clock.incrementAndGet();
+        next.setVersion(version);
+        // A reader registered too late to show in oldestReader takes its snapshot at or above this version
+        long horizon = Math.min(version, oldestReader);
+        for (CustomerVersion v = next; v != null; v = v.getPrevious()) {
+            if (v.getVersion() <= horizon) {
+                v.setPrevious(null); // Every open reader stops at v or a newer version
+                break;
+            }
+        }
+    }
+
+    // Method to find the version of a customer a snapshot sees, returns null if the customer did not exist yet
+    static CustomerVersion versionAt(Customer customer, long snapshot) {
+        for (CustomerVersion v = customer.getLatestVersion(); v != null; v = v.getPrevious()) {
+            if (v.getVersion() <= snapshot) {
+                return v;
+            }
+        }
+        return null;
+    }
+
+    // Method to register a reader, returns the version it is registered at
+    // The reader must then take getClock() as its snapshot: a writer that pruned without seeing the registration had
+    // stamped its version before that clock read, so it kept every version the snapshot can see
+    synchronized long openReader() {
+        long registered = clock.get();
+        readers.merge(registered, 1, Integer::sum);
+        oldestReader = readers.firstKey();
+        return registered;
+    }
+
+    // Method to unregister a reader by the version it was registered at
+    synchronized void closeReader(long registered) {
+        Integer count = readers.get(registered);
+        if (count == null) {
+            return;
+        }
+        if (count == 1) {
+            readers.remove(registered);
+        } else {
+            readers.put(registered, count - 1);
+        }
+        oldestReader = readers.isEmpty() ? Long.MAX_VALUE : readers.firstKey();
+    }
+
+    // Getter method for the number of open readers
+    public synchronized int getOpenReaders() {
+        int open = 0;
+        for (int count : readers.values()) {
+            open += count;
+        }
+        return open;
+    }
+}
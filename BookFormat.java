@@ -0,0 +1,5 @@
+// Enum of the file layouts LoanBookIO reads and writes
+enum BookFormat {
+    CSV, // Comma separated, with a header line
+    FIXED_WIDTH // Space padded columns of fixed width, no header
+}
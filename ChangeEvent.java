@@ -0,0 +1,44 @@
+// One loan book mutation delivered by a ChangeFeed
+// Events are reusable holders filled by the feed, like the rows of a ColumnarLoanStore cursor
+// Fields that do not apply to a change type are IdCodec.INVALID for keys and 0 for numbers
+class ChangeEvent {
+    // Member variables
+    long sequence; // Position in the feed, consecutive unless events were missed
+    ChangeType type;
+    int customerKey;
+    int recordKey;
+    LoanType loanType; // Null unless the event carries a loan
+    double income;
+    double interestRate;
+    double amountLeft;
+    int loanTermLeft;
+    double overpayment;
+
+    // Getter methods
+    public long getSequence() { return sequence; }
+    public ChangeType getType() { return type; }
+    public int getCustomerKey() { return customerKey; }
+    public int getRecordKey() { return recordKey; }
+    public LoanType getLoanType() { return loanType; }
+    public double getIncome() { return income; }
+    public double getInterestRate() { return interestRate; }
+    public double getAmountLeft() { return amountLeft; }
+    public int getLoanTermLeft() { return loanTermLeft; }
+    public double getOverpayment() { return overpayment; }
+
+    // Method to get the customer ID, creating its String
+    public String getCustomerId() {
+        return IdCodec.customerId(customerKey);
+    }
+
+    // Method to get the record ID, creating its String, or null if the event has no loan
+    public String getRecordId() {
+        return recordKey == IdCodec.INVALID ? null : IdCodec.recordId(recordKey);
+    }
+
+    // Method to describe the event
+    @Override
+    public String toString() {
+        return sequence + " " + type + " " + getCustomerId() + (recordKey == IdCodec.INVALID ? "" : " " + getRecordId());
+    }
+}
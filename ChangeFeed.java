@@ -0,0 +1,315 @@
+import java.io.Closeable;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// In-process feed of loan book mutations, for downstream systems that must follow the bank without re-reading it
+// Events go into a fixed ring of preallocated slots (Disruptor style), so publishing allocates nothing:
+// - a writer claims the next sequence with one atomic increment, fills the slot and then publishes it by storing its
+//   sequence; the slot is marked as being written first, so readers never use a half-written slot
+// - by default writers never wait for subscribers: a subscriber more than a ring behind has events overwritten,
+//   notices it when the slot's sequence moved on, and is told how many events it missed; those events are lost to it
+// - a subscription made with blockWriters has no such loss: a writer about to overwrite an event it has not read yet
+//   waits for it, so the ring acts as a bounded buffer and a slow subscriber slows every writer down
+// - each subscriber has its own cursor and thread, and receives the events in batches of up to its batch size
+// The fields of a slot lie next to each other in one long array (8 longs, about a cache line per event), and the
+// slot sequences in a separate dense array, so a writer touches two lines per event instead of one per field
+// Capacity bounds the memory used (72 bytes per event) and how far a subscriber may lag before it misses events;
+// the default ring stays within the L2 cache, as a larger one makes every publish wait for a cache miss
+class ChangeFeed implements Closeable {
+    private static final int DEFAULT_CAPACITY = 1 << 13;
+    private static final int SLOT_SHIFT = 3; // 8 longs per slot, the last one is padding
+    private static final long WRITING = Long.MIN_VALUE; // Slot sequence while a writer fills the slot
+    private static final int SPINS_BEFORE_PARK = 100; // Empty polls a subscriber yields before parking
+    private static final long PARK_NANOS = 50_000; // Sleep of an idle subscriber, writers never wake subscribers
+
+    // Offsets of the fields inside a slot
+    private static final int HEADER = 0; // Change type in bits 0-7, loan type code + 1 in bits 8-15, term left in bits 32-63
+    private static final int KEYS = 1; // Customer key in the high int, record key in the low int
+    private static final int INCOME = 2; // Doubles are stored as their raw bits
+    private static final int INTEREST_RATE = 3;
+    private static final int AMOUNT_LEFT = 4;
+    private static final int OVERPAYMENT = 5;
+
+    // Member variables
+    private final int mask; // Capacity - 1, the capacity is a power of two
+    private final long[] slots; // Event fields
+    private final AtomicLongArray published; // Sequence held by each slot, or WRITING
+    private final AtomicLong nextSequence = new AtomicLong(); // Next sequence a writer will claim
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile Subscription[] blocking = new Subscription[0]; // Subscriptions writers wait for, copied on change
+
+    // Constructor
+    public ChangeFeed() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    // Constructor with the number of events kept, rounded up to a power of two
+    public ChangeFeed(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 26) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^26: " + capacity);
+        }
+        int size = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+        mask = size - 1;
+        slots = new long[size << SLOT_SHIFT];
+        published = new AtomicLongArray(size);
+        for (int slot = 0; slot < size; slot++) {
+            published.set(slot, slot - size); // As if the previous lap had been written
+        }
+    }
+
+    // Getter methods
+    public int getCapacity() { return mask + 1; }
+    public long getPublishedCount() { return nextSequence.get(); }
+
+    // Method to publish a new customer
+    void publishRegister(int customerKey, double income) {
+        long sequence = claim();
+        write(sequence, ChangeType.CUSTOMER_REGISTERED, customerKey, IdCodec.INVALID, income, null);
+        publish(sequence);
+    }
+
+    // Method to publish a customer's new income
+    void publishIncome(int customerKey, double income) {
+        long sequence = claim();
+        write(sequence, ChangeType.INCOME_UPDATED, customerKey, IdCodec.INVALID, income, null);
+        publish(sequence);
+    }
+
+    // Method to publish a removed loan
+    void publishRemoveLoan(int customerKey, int recordKey) {
+        long sequence = claim();
+        write(sequence, ChangeType.LOAN_REMOVED, customerKey, recordKey, 0, null);
+        publish(sequence);
+    }
+
+    // Method to publish an added or updated loan with its current fields
+    void publishLoan(ChangeType type, int customerKey, Loan loan) {
+        long sequence = claim();
+        write(sequence, type, customerKey, loan.getRecordKey(), 0, loan);
+        publish(sequence);
+    }
+
+    // Method to claim the next sequence and mark its slot as being written
+    private long claim() {
+        long sequence = nextSequence.getAndIncrement();
+        int slot = (int) sequence & mask;
+        long previousLap = sequence - (mask + 1);
+        for (Subscription subscription : blocking) {
+            while (subscription.cursor <= previousLap && subscription.running) {
+                Thread.yield(); // The subscriber has not copied the event this slot still holds
+            }
+        }
+        while (published.getAcquire(slot) != previousLap) {
+            Thread.onSpinWait(); // Only when another writer is still filling this slot a whole ring earlier
+        }
+        published.setOpaque(slot, WRITING);
+        VarHandle.storeStoreFence(); // Readers must see WRITING before any of the new field values
+        return sequence;
+    }
+
+    // Method to fill the slot of a claimed sequence, loan is null for events without a loan
+    private void write(long sequence, ChangeType type, int customerKey, int recordKey, double income, Loan loan) {
+        int base = ((int) sequence & mask) << SLOT_SHIFT;
+        long header = type.ordinal();
+        slots[base + KEYS] = ((long) customerKey << 32) | (recordKey & 0xFFFFFFFFL);
+        slots[base + INCOME] = Double.doubleToRawLongBits(income);
+        if (loan != null) {
+            header |= (long) (loan.getType().ordinal() + 1) << 8
+                    | (long) loan.getLoanTermLeft() << 32;
+            slots[base + INTEREST_RATE] = Double.doubleToRawLongBits(loan.getInterestRate());
+            slots[base + AMOUNT_LEFT] = Double.doubleToRawLongBits(loan.getAmountLeft());
+            slots[base + OVERPAYMENT] = Double.doubleToRawLongBits(loan.getOverpayment());
+        } else {
+            slots[base + INTEREST_RATE] = 0;
+            slots[base + AMOUNT_LEFT] = 0;
+            slots[base + OVERPAYMENT] = 0;
+        }
+        slots[base + HEADER] = header;
+    }
+
+    // Method to make a filled slot visible to subscribers
+    private void publish(long sequence) {
+        // Release: the field values are visible before the sequence
+        published.setRelease((int) sequence & mask, sequence);
+    }
+
+    // Method to subscribe to the events published from now on, delivered on a new daemon thread
+    // Writers never wait for this subscription, so it loses the events it falls a whole ring behind on (see ChangeListener)
+    public Subscription subscribe(String name, ChangeListener listener, int maxBatch) {
+        return subscribe(name, listener, maxBatch, false);
+    }
+
+    // Method to subscribe, choosing whether writers wait for the subscriber instead of overwriting its unread events
+    // With blockWriters no event is lost, but writers wait while holding the customer's lock: the listener must not call
+    // the bank, or any code that waits for a bank writer, or it can deadlock with the writers waiting for it
+    public Subscription subscribe(String name, ChangeListener listener, int maxBatch, boolean blockWriters) {
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatch);
+        }
+        Subscription subscription;
+        if (blockWriters) {
+            // Writers wait for the subscription as soon as it is listed, and the cursor only starts after that, so no
+            // writer that missed the listing can overwrite an event the subscription is due to read
+            subscription = new Subscription(listener, maxBatch, Long.MIN_VALUE, true);
+            addBlocking(subscription);
+            subscription.start(nextSequence.get());
+        } else {
+            subscription = new Subscription(listener, maxBatch, nextSequence.get(), false);
+        }
+        subscriptions.add(subscription);
+        Thread thread = new Thread(subscription::run, name);
+        thread.setDaemon(true);
+        thread.start();
+        return subscription;
+    }
+
+    // Method to make writers wait for a subscription
+    private synchronized void addBlocking(Subscription subscription) {
+        Subscription[] next = Arrays.copyOf(blocking, blocking.length + 1);
+        next[blocking.length] = subscription;
+        blocking = next;
+    }
+
+    // Method to stop writers waiting for a subscription
+    private synchronized void removeBlocking(Subscription subscription) {
+        Subscription[] next = new Subscription[blocking.length];
+        int count = 0;
+        for (Subscription each : blocking) {
+            if (each != subscription) {
+                next[count++] = each;
+            }
+        }
+        blocking = Arrays.copyOf(next, count);
+    }
+
+    // Method to stop every subscription
+    @Override
+    public void close() {
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+
+    // One subscriber: its cursor, its reusable batch and the thread delivering to its listener
+    class Subscription implements Closeable {
+        // Member variables
+        private final ChangeListener listener;
+        private final ChangeEvent[] batch;
+        private final boolean blocksWriters;
+        private long firstSequence;
+        private volatile long cursor; // Next sequence to deliver, writers of a blocking subscription wait on it
+        private volatile long missed; // Events overwritten before they were read
+        private volatile boolean running = true;
+
+        // Constructor
+        Subscription(ChangeListener listener, int maxBatch, long firstSequence, boolean blocksWriters) {
+            this.listener = listener;
+            this.batch = new ChangeEvent[maxBatch];
+            for (int i = 0; i < maxBatch; i++) {
+                batch[i] = new ChangeEvent();
+            }
+            this.blocksWriters = blocksWriters;
+            start(firstSequence);
+        }
+
+        // Method to set the first sequence to deliver, called before the delivery thread starts
+        private void start(long firstSequence) {
+            this.firstSequence = firstSequence;
+            this.cursor = firstSequence;
+        }
+
+        // Getter method telling if writers wait for this subscription
+        public boolean blocksWriters() { return blocksWriters; }
+
+        // Getter methods
+        public long getDelivered() { return cursor - firstSequence - missed; } // Delivered or being delivered
+        public long getMissed() { return missed; }
+
+        // Method to get how many published events this subscriber has not received yet
+        public long getLag() {
+            return Math.max(0, nextSequence.get() - cursor);
+        }
+
+        // Method to deliver batches until the subscription is closed
+        private void run() {
+            int idle = 0;
+            while (running) {
+                int count = poll();
+                if (count > 0) {
+                    listener.onEvents(batch, count);
+                    idle = 0;
+                } else if (++idle < SPINS_BEFORE_PARK) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+            }
+            if (blocksWriters) {
+                removeBlocking(this);
+            }
+            subscriptions.remove(this);
+        }
+
+        // Method to copy the next published events into the batch, returns how many were copied
+        // Events a writer overwrote before they were read are skipped and reported once the batch before them is delivered
+        private int poll() {
+            long next = cursor;
+            int count = 0;
+            while (count < batch.length) {
+                int slot = (int) next & mask;
+                long seen = published.getAcquire(slot);
+                if (seen == next) {
+                    copy(slot << SLOT_SHIFT, batch[count]);
+                    VarHandle.loadLoadFence(); // Read the fields before checking the slot again
+                    if (published.get(slot) == next) {
+                        batch[count++].sequence = next++;
+                        continue;
+                    }
+                    seen = WRITING; // Overwritten while copying
+                }
+                if (seen != WRITING && seen < next) {
+                    break; // The slot still holds the previous lap: not published yet
+                }
+                long oldest = nextSequence.get() - (mask + 1); // Oldest sequence the ring can still hold
+                if (next >= oldest) {
+                    break; // The writer of this sequence is still filling the slot
+                }
+                if (count > 0) {
+                    break; // Deliver the events before the gap first
+                }
+                missed += oldest - next;
+                listener.onOverrun(oldest - next);
+                next = oldest;
+            }
+            cursor = next;
+            return count;
+        }
+
+        // Method to copy one slot into an event
+        private void copy(int base, ChangeEvent event) {
+            long header = slots[base + HEADER];
+            long keys = slots[base + KEYS];
+            int loanTypeCode = (int) (header >>> 8) & 0xFF;
+            event.type = ChangeType.fromCode((int) header & 0xFF);
+            event.customerKey = (int) (keys >> 32);
+            event.recordKey = (int) keys;
+            event.loanType = loanTypeCode == 0 ? null : LoanType.fromCode(loanTypeCode - 1);
+            event.loanTermLeft = (int) (header >> 32);
+            event.income = Double.longBitsToDouble(slots[base + INCOME]);
+            event.interestRate = Double.longBitsToDouble(slots[base + INTEREST_RATE]);
+            event.amountLeft = Double.longBitsToDouble(slots[base + AMOUNT_LEFT]);
+            event.overpayment = Double.longBitsToDouble(slots[base + OVERPAYMENT]);
+        }
+
+        // Method to stop delivery, the listener gets no more events once the current batch returns
+        @Override
+        public void close() {
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+// Callback receiving the events of a ChangeFeed subscription, always on the subscription's own thread
+// A listener of a subscription made with blockWriters must not call the bank: writers may be waiting for it
+@FunctionalInterface
+interface ChangeListener {
+    // Method to handle the next batch of events, in publication order
+    // The events are reused for the next batch, so copy what has to outlive the call
+    void onEvents(ChangeEvent[] events, int count);
+
+    // Method called when the subscription fell so far behind that the writers overwrote events it had not read yet
+    // Delivery continues with the oldest event still in the ring; the missed events are lost and cannot be asked for
+    // again, so a listener that mirrors the bank is out of date from here on and must rebuild its copy from the bank
+    // (for example from XYZBank.openSnapshot) or be subscribed with blockWriters, which never overruns
+    default void onOverrun(long missedEvents) {
+    }
+}
@@ -0,0 +1,15 @@
+// Enum of the kinds of loan book mutation published on a ChangeFeed
+enum ChangeType {
+    CUSTOMER_REGISTERED, // Customer ID and income
+    LOAN_ADDED, // Customer ID and every loan field
+    LOAN_REMOVED, // Customer ID and record ID
+    INCOME_UPDATED, // Customer ID and new income
+    LOAN_UPDATED; // Customer ID and every loan field after the change, also published by interest accrual
+
+    private static final ChangeType[] BY_CODE = values(); // Shared copy of values(), which clones on every call
+
+    // Method to look up a change type by its compact code (its ordinal)
+    public static ChangeType fromCode(int code) {
+        return BY_CODE[code];
+    }
+}
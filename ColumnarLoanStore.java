@@ -0,0 +1,221 @@
+import java.util.Arrays;
+
+// Compact side store for a large loan book, keeping every loan field in its own primitive column
+// A loan costs 37 bytes of column data instead of a Loan object, its record ID String and its list and index entries
+// It is not the storage behind XYZBank: from(bank) takes a detached copy, which costs memory on top of the bank's,
+// never sees later changes to the bank, and whose own changes never reach the bank
+// Use it for read-heavy bulk work over a book held apart from the bank, like stress scenarios and portfolio analytics
+// The store is not thread-safe
+// Rows are dense (0 to size - 1); removing a loan moves the last row into the hole
+class ColumnarLoanStore {
+    private static final int RECORD_ID_SPACE = IdCodec.RECORD_KEY_SPACE;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Loan columns, one entry per row
+    private int[] recordKeys; // 6-digit record ID as an int
+    private byte[] typeCodes; // LoanType ordinal
+    private double[] interestRates;
+    private double[] balances; // Amount left to pay
+    private double[] overpayments; // Zero for loan types without an overpayment
+    private int[] terms; // Loan term left
+    private int[] customerOrdinals; // Row of the owning customer in the customer columns
+    private int size; // Number of loans stored
+
+    // Customer columns, one entry per customer ordinal
+    private String[] customerIds;
+    private double[] incomes;
+    private int customerCount;
+
+    // Dense map from record key to row + 1 (0 means the record ID is not stored)
+    private final int[] rowByRecordKey = new int[RECORD_ID_SPACE];
+
+    // Constructor
+    public ColumnarLoanStore() {
+        allocateLoans(INITIAL_CAPACITY);
+        customerIds = new String[INITIAL_CAPACITY];
+        incomes = new double[INITIAL_CAPACITY];
+    }
+
+    // Method to build a store holding a detached copy of every customer and loan of a bank
+    // Each customer is copied under its lock, so the copy is consistent per customer but not across customers
+    public static ColumnarLoanStore from(XYZBank bank) {
+        ColumnarLoanStore store = new ColumnarLoanStore();
+        for (Customer customer : bank.getCustomers()) {
+            synchronized (customer) {
+                int ordinal = store.addCustomer(customer.getCustomerId(), customer.getAnnualIncome());
+                for (Loan loan : customer.getCreditRecords()) {
+                    store.addLoan(ordinal, loan);
+                }
+            }
+        }
+        return store;
+    }
+
+    // Getter methods for the sizes
+    public int size() { return size; }
+    public int customerCount() { return customerCount; }
+
+    // Method to add a customer, returns its ordinal
+    public int addCustomer(String customerID, double annualIncome) {
+        if (customerCount == customerIds.length) {
+            int capacity = customerCount + (customerCount >> 1);
+            customerIds = Arrays.copyOf(customerIds, capacity);
+            incomes = Arrays.copyOf(incomes, capacity);
+        }
+        customerIds[customerCount] = customerID;
+        incomes[customerCount] = annualIncome;
+        return customerCount++;
+    }
+
+    // Method to add a copy of a Loan object for a customer, returns its row
+    public int addLoan(int customerOrdinal, Loan loan) {
+        return addLoan(customerOrdinal, loan.getRecordKey(), loan.getType(),
+                loan.getInterestRate(), loan.getAmountLeft(), loan.getLoanTermLeft(), loan.getOverpayment());
+    }
+
+    // Method to add a loan from its field values, returns its row
+    public int addLoan(int customerOrdinal, int recordKey, LoanType type, double interestRate, double amountLeft,
+                       int loanTermLeft, double overpayment) {
+        if (recordKey < 0 || recordKey >= RECORD_ID_SPACE) {
+            throw new IllegalArgumentException("Invalid record key: " + recordKey);
+        }
+        if (rowByRecordKey[recordKey] != 0) {
+            throw new IllegalArgumentException("Duplicate record ID: " + IdCodec.recordId(recordKey));
+        }
+        if (customerOrdinal < 0 || customerOrdinal >= customerCount) {
+            throw new IllegalArgumentException("Unknown customer ordinal: " + customerOrdinal);
+        }
+        if (size == recordKeys.length) {
+            allocateLoans(size + (size >> 1));
+        }
+        int row = size++;
+        recordKeys[row] = recordKey;
+        typeCodes[row] = (byte) type.ordinal();
+        interestRates[row] = interestRate;
+        balances[row] = amountLeft;
+        overpayments[row] = overpayment;
+        terms[row] = loanTermLeft;
+        customerOrdinals[row] = customerOrdinal;
+        rowByRecordKey[recordKey] = row + 1;
+        return row;
+    }
+
+    // Method to remove a loan by record key, returns false if it is not stored
+    public boolean removeLoan(int recordKey) {
+        int row = rowOf(recordKey);
+        if (row < 0) {
+            return false;
+        }
+        int last = --size;
+        if (row != last) { // Move the last row into the hole
+            recordKeys[row] = recordKeys[last];
+            typeCodes[row] = typeCodes[last];
+            interestRates[row] = interestRates[last];
+            balances[row] = balances[last];
+            overpayments[row] = overpayments[last];
+            terms[row] = terms[last];
+            customerOrdinals[row] = customerOrdinals[last];
+            rowByRecordKey[recordKeys[row]] = row + 1;
+        }
+        rowByRecordKey[recordKey] = 0;
+        return true;
+    }
+
+    // Method to find the row of a record key, returns -1 if it is not stored
+    public int rowOf(int recordKey) {
+        return recordKey >= 0 && recordKey < RECORD_ID_SPACE ? rowByRecordKey[recordKey] - 1 : -1;
+    }
+
+    // Getter methods for single loan fields by row
+    public int recordKey(int row) { return recordKeys[row]; }
+    public LoanType loanType(int row) { return LoanType.fromCode(typeCodes[row]); }
+    public double interestRate(int row) { return interestRates[row]; }
+    public double amountLeft(int row) { return balances[row]; }
+    public double overpayment(int row) { return overpayments[row]; }
+    public int loanTermLeft(int row) { return terms[row]; }
+    public int customerOrdinal(int row) { return customerOrdinals[row]; }
+
+    // Getter methods for customer fields by ordinal
+    public String customerId(int ordinal) { return customerIds[ordinal]; }
+    public double annualIncome(int ordinal) { return incomes[ordinal]; }
+
+    // Setter methods for the fields that change over a loan's life
+    public void setAmountLeft(int row, double amountLeft) { balances[row] = amountLeft; }
+    public void setLoanTermLeft(int row, int loanTermLeft) { terms[row] = loanTermLeft; }
+    public void setAnnualIncome(int ordinal, double annualIncome) { incomes[ordinal] = annualIncome; }
+
+    // Raw columns for bulk engines, valid for rows 0 to size - 1 and only until the next loan is added
+    int[] recordKeyColumn() { return recordKeys; }
+    byte[] typeCodeColumn() { return typeCodes; }
+    double[] interestRateColumn() { return interestRates; }
+    double[] balanceColumn() { return balances; }
+    double[] overpaymentColumn() { return overpayments; }
+    int[] termColumn() { return terms; }
+    int[] customerOrdinalColumn() { return customerOrdinals; }
+    double[] incomeColumn() { return incomes; }
+
+    // Method to create a full Loan object for a row, for callers that need the object API
+    public Loan toLoan(int row) {
+        return loanType(row).create(IdCodec.recordId(recordKeys[row]), interestRates[row], balances[row],
+                terms[row], overpayments[row]);
+    }
+
+    // Method to create a reusable cursor over the rows
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    // Method to estimate the heap used by the store, columns counted at their allocated capacity
+    public long estimatedBytes() {
+        long loanColumns = (long) recordKeys.length * (4 + 1 + 8 + 8 + 8 + 4 + 4);
+        long customerColumns = (long) customerIds.length * (4 + 8) + (long) customerCount * 48; // 48: a 6-character String
+        return loanColumns + customerColumns + 4L * RECORD_ID_SPACE;
+    }
+
+    // Method to (re)allocate the loan columns
+    private void allocateLoans(int capacity) {
+        if (recordKeys == null) {
+            recordKeys = new int[capacity];
+            typeCodes = new byte[capacity];
+            interestRates = new double[capacity];
+            balances = new double[capacity];
+            overpayments = new double[capacity];
+            terms = new int[capacity];
+            customerOrdinals = new int[capacity];
+            return;
+        }
+        recordKeys = Arrays.copyOf(recordKeys, capacity);
+        typeCodes = Arrays.copyOf(typeCodes, capacity);
+        interestRates = Arrays.copyOf(interestRates, capacity);
+        balances = Arrays.copyOf(balances, capacity);
+        overpayments = Arrays.copyOf(overpayments, capacity);
+        terms = Arrays.copyOf(terms, capacity);
+        customerOrdinals = Arrays.copyOf(customerOrdinals, capacity);
+    }
+
+    // Flyweight view of one row at a time, so walking the book allocates no Loan objects
+    class Cursor {
+        private int row = -1; // Current row
+
+        // Method to move to the next row, returns false after the last one
+        public boolean next() {
+            return ++row < size;
+        }
+
+        // Method to move to a given row
+        public Cursor moveTo(int row) {
+            this.row = row;
+            return this;
+        }
+
+        // Getter methods for the current row
+        public int row() { return row; }
+        public int recordKey() { return recordKeys[row]; }
+        public LoanType loanType() { return ColumnarLoanStore.this.loanType(row); }
+        public double interestRate() { return interestRates[row]; }
+        public double amountLeft() { return balances[row]; }
+        public double overpayment() { return overpayments[row]; }
+        public int loanTermLeft() { return terms[row]; }
+        public String customerId() { return customerIds[customerOrdinals[row]]; }
+    }
+}
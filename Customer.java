@@ -1,120 +1,228 @@
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 // Class Customer implementing CheckerPrinter interface
+// All state changes are synchronized on the customer, so the bank can update different customers in parallel
 class Customer implements CheckerPrinter {
+    private static final long NO_DECISION = -1; // Decision version meaning no eligibility decision is cached
     // Member variables
     private String customerID; // Stores the ID of the customer
     private double annualIncome; // Stores the annual income of the customer
-    private boolean eligibilityStatus; // Stores the eligibility status of the customer
+    private boolean eligibilityStatus; // Cached eligibility decision, valid while decisionVersion matches the policy version
+    private long decisionVersion = NO_DECISION; // Policy version the cached decision was made under
+    private final EligibilityEvaluator eligibility; // Policy and cache metrics of the bank the customer belongs to
     private ArrayList<Loan> creditRecords; // Stores the credit records (loans) associated with the customer
+    private double outstandingBalance; // Running total of amountLeft over all credit records
+    private volatile CustomerVersion latestVersion; // Newest committed version for snapshot readers, null until versioned
 
-    // Constructor
+    // Constructor for a customer outside a bank, judged by the default eligibility policy
     public Customer(String customerID, double annualIncome) {
+        this(customerID, annualIncome, EligibilityEvaluator.STANDALONE);
+    }
+
+    // Constructor
+    public Customer(String customerID, double annualIncome, EligibilityEvaluator eligibility) {
         this.customerID = customerID; // Initialize customer ID
         this.annualIncome = annualIncome; // Initialize annual income
-        this.eligibilityStatus = false; // Initialize eligibility status to false
         this.creditRecords = new ArrayList<>(); // Initialize the ArrayList to store credit records
+        this.outstandingBalance = 0; // No loans yet
+        this.eligibility = eligibility; // Eligibility is decided on first use
     }
 
     // Getter method for creditRecords
+    // The list is live, so callers iterating it from other threads must hold the customer's lock
     public ArrayList<Loan> getCreditRecords() {
         return creditRecords; // Return the ArrayList of credit records
     }
 
+    // Getter method for the newest committed version, read by snapshot readers without the customer's lock
+    CustomerVersion getLatestVersion() {
+        return latestVersion;
+    }
+
+    // Setter method for the newest version, only to be called by BankVersions while holding the customer's lock
+    void setLatestVersion(CustomerVersion version) {
+        latestVersion = version;
+    }
+
     // Getter method for customerID
     public String getCustomerId() {
         return customerID; // Return the customer ID
     }
 
     // Method to update the annual income of the customer
-    public void updateIncome(double newIncome) {
+    public synchronized void updateIncome(double newIncome) {
         this.annualIncome = newIncome; // Update the annual income
-        updateEligibilityStatus(); // Update the eligibility status based on the new income
+        invalidateEligibility(); // The cached decision was based on the old income
     }
 
     // Method to add a credit record (loan) to the customer's credit records
     public boolean addCreditRecord(Loan loan) {
-        return creditRecords.add(loan); // Add the loan to the credit records ArrayList
+        return addLoan(loan); // Same as addLoan, keeps the running balance in step
     }
 
     // Method to remove a credit record (loan) from the customer's credit records by record ID
     public void removeCreditRecord(String recordID) {
-        creditRecords.removeIf(loan -> loan.getRecordID().equals(recordID)); // Remove the loan with the specified record ID
+        removeLoan(recordID); // Same as removeLoan, keeps the running balance in step
     }
 
-    // Method to remove a loan from the customer's credit records by record ID
-    public void removeLoan(String recordID) {
-        creditRecords.removeIf(loan -> loan.recordID.equals(recordID)); // Remove the loan with the specified record ID
+    // Method to remove a loan from the customer's credit records by record ID, returns the removed loan or null
+    public synchronized Loan removeLoan(String recordID) {
+        int recordKey = IdCodec.recordKey(recordID); // Compare packed keys instead of Strings
+        Iterator<Loan> iterator = creditRecords.iterator();
+        while (iterator.hasNext()) {
+            Loan loan = iterator.next();
+            if (loan.getRecordKey() == recordKey) {
+                iterator.remove(); // Remove the loan with the specified record ID
+                adjustOutstandingBalance(-loan.getAmountLeft()); // Take its balance off the running total
+                return loan;
+            }
+        }
+        return null;
     }
 
     // Method to add a loan to the customer's credit records
-    public boolean addLoan(Loan loan) {
+    public synchronized boolean addLoan(Loan loan) {
         // You might want to check eligibility criteria here
         creditRecords.add(loan); // Add the loan to the credit records ArrayList
+        adjustOutstandingBalance(loan.getAmountLeft()); // Add its balance to the running total
         return true; // Assuming the addition is always successful for this context
     }
 
+    // Method to change the amount left on one of the customer's loans, returns false if the record ID is not found
+    public synchronized boolean updateLoanBalance(String recordID, double newAmountLeft) {
+        Loan loan = findLoan(recordID);
+        if (loan != null) {
+            adjustOutstandingBalance(newAmountLeft - loan.getAmountLeft()); // Apply only the difference
+            loan.setAmountLeft(newAmountLeft);
+            return true;
+        }
+        return false;
+    }
+
+    // Method to change the amount and term left on one of the customer's loans, returns false if the record ID is not found
+    public synchronized boolean updateLoan(String recordID, double newAmountLeft, int newLoanTermLeft) {
+        Loan loan = findLoan(recordID);
+        if (loan != null) {
+            loan.setLoanTermLeft(newLoanTermLeft);
+            return updateLoanBalance(recordID, newAmountLeft);
+        }
+        return false;
+    }
+
+    // Method to find one of the customer's loans by record ID, returns null if it is not found
+    private Loan findLoan(String recordID) {
+        int recordKey = IdCodec.recordKey(recordID); // Compare packed keys instead of Strings
+        for (Loan loan : creditRecords) {
+            if (loan.getRecordKey() == recordKey) {
+                return loan;
+            }
+        }
+        return null;
+    }
+
+    // Method to apply one accrual period to every loan, the arrays follow the order of creditRecords
+    synchronized void applyAccrual(double[] newAmountsLeft, int[] newLoanTermsLeft) {
+        double total = 0;
+        for (int i = 0; i < creditRecords.size(); i++) {
+            Loan loan = creditRecords.get(i);
+            loan.setAmountLeft(newAmountsLeft[i]);
+            loan.setLoanTermLeft(newLoanTermsLeft[i]);
+            total += newAmountsLeft[i];
+        }
+        outstandingBalance = total; // Every balance changed, so recompute instead of applying differences
+        invalidateEligibility();
+    }
+
+    // Getter method for the running total of amount left over all loans
+    public synchronized double getOutstandingBalance() {
+        return outstandingBalance;
+    }
+
+    // Method to apply a change to the running balance and drop the cached eligibility decision
+    private void adjustOutstandingBalance(double delta) {
+        // Reset to exactly zero once the last loan is gone so rounding errors cannot build up over time
+        outstandingBalance = creditRecords.isEmpty() ? 0 : outstandingBalance + delta;
+        invalidateEligibility();
+    }
+
     // Method to check if the customer is eligible for loans
-    public boolean isEligible() {
-        return eligibilityStatus; // Return the eligibility status
+    // The cached decision is reused until the income or a loan changes or the bank's policy is replaced
+    public synchronized boolean isEligible() {
+        EligibilityEvaluator.Current policy = eligibility.current();
+        if (decisionVersion == policy.version) {
+            eligibility.recordHit();
+            return eligibilityStatus;
+        }
+        eligibilityStatus = policy.policy.isEligible(annualIncome, outstandingBalance);
+        decisionVersion = policy.version;
+        eligibility.recordEvaluation();
+        return eligibilityStatus;
     }
 
-    // Method to update the eligibility status based on the annual income and total loan amount
-    private void updateEligibilityStatus() {
-        // Calculate the total amount left to pay for all loans
-        double totalAmountLeft = creditRecords.stream()
-                .mapToDouble(Loan::getAmountLeft)
-                .sum();
-        // Update the eligibility status based on the income and total amount left
-        eligibilityStatus = checkEligibility(annualIncome, totalAmountLeft);
+    // Method to drop the cached eligibility decision so the next isEligible call runs the policy again
+    private void invalidateEligibility() {
+        decisionVersion = NO_DECISION;
     }
 
     // Method to print customer details
     @Override
     public void printCustomerDetails() {
-        // Print credit records in a table
-        System.out.println("Maximum number of Records: ");
-        System.out.println("Registered records: ");
-        System.out.println("================================");
-        // Print eligibility status
-        System.out.println("Eligible to arrange new loans - " + checkEligibility(gettotalAmountLeft(), getAnnualIncome()));;
-        System.out.println("CustomerID: " + getCustomerId());
-        // Print credit records in tabular format
-        System.out.printf("%-12s %-15s %-12s %-15s %-18s%n",
-                "Record ID", "Loan Type", "Interest Rate", "Amount Left", "Loan Term Left");
-        // Print each credit record
+        printCustomerDetails(System.out);
+    }
+
+    // Method to print customer details to the given destination
+    public void printCustomerDetails(Appendable out) {
+        printCustomerDetails(out, ReportFormat.TEXT);
+    }
+
+    // Method to print customer details to the given destination in a report format
+    public synchronized void printCustomerDetails(Appendable out, ReportFormat format) {
+        ReportRenderer renderer = new ReportRenderer(out, format); // Buffers the whole statement, one write at the end
+        // Print eligibility status and the credit records in a table
+        renderer.beginStatement(getCustomerId(), isEligible());
         for (Loan loan : creditRecords) {
-            System.out.printf("%-12s %-15s %-12.2f £%-15.2f %-18d%n",
-                    loan.getRecordID(), loan.getLoanType(),
+            renderer.statementLoan(loan.getRecordKey(), loan.getLoanType(),
                     loan.getInterestRate(), loan.getAmountLeft(), loan.getLoanTermLeft());
         }
+        renderer.endStatement();
+        renderer.flush();
+    }
+
+    // Method to write this customer into a report of the whole bank, under its lock so no loan changes meanwhile
+    // Loans are written in record ID order like every other report; only a customer whose loans were not added in that
+    // order needs a sorted list, which holds the same Loan objects rather than copies
+    public synchronized void writeReportEntry(ReportRenderer renderer) {
+        List<Loan> loans = creditRecords;
+        for (int i = 1; i < loans.size(); i++) {
+            if (loans.get(i - 1).getRecordKey() > loans.get(i).getRecordKey()) {
+                loans = new ArrayList<>(creditRecords);
+                loans.sort((a, b) -> Integer.compare(a.getRecordKey(), b.getRecordKey()));
+                break;
+            }
+        }
+        renderer.customer(getCustomerId(), isEligible(), loans);
     }
 
-    // Method to check eligibility based on income and total loan amount
+    // Method to check eligibility based on income and total loan amount under the policy in force
     @Override
     public boolean checkEligibility(double income, double totalLoanAmount) {
-        // Assuming the eligibility is based on whether total loan amount does not exceed a certain threshold of income
-        return totalLoanAmount <= 4 * income;
+        return eligibility.getPolicy().isEligible(income, totalLoanAmount);
     }
 
     // Getter method for annualIncome
-    public double getAnnualIncome() {
+    public synchronized double getAnnualIncome() {
         return this.annualIncome; // Return the annual income
     }
 
-    // Getter method for total amount left to pay (assuming it's the same as annual income)
-    public double gettotalAmountLeft() {
-        return this.annualIncome; // Return the total amount left to pay
+    // Getter method for total amount left to pay over all loans
+    public synchronized double gettotalAmountLeft() {
+        return outstandingBalance; // Same as the running balance
     }
 
     // Method to check if the customer has a loan with a specific record ID
-    public boolean hasLoanWithRecordId(String recordId) {
-        // Iterate through credit records to check for the specified record ID
-        for (Loan loan : creditRecords) {
-            if (loan.getRecordID().equals(recordId)) {
-                return true; // Return true if the record ID is found
-            }
-        }
-        return false; // Return false if the record ID is not found
+    public synchronized boolean hasLoanWithRecordId(String recordId) {
+        return findLoan(recordId) != null; // Check the credit records for the specified record ID
     }
 }
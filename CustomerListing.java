@@ -0,0 +1,59 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// One customer of a listing: the customer's figures and matching loans, captured under the customer's lock
+// The loans are copies, so a listing keeps showing the captured values however the bank changes afterwards
+class CustomerListing {
+    // Member variables
+    private final String customerID;
+    private final double annualIncome;
+    private final double totalAmountLeft; // Over all of the customer's loans, not only the listed ones
+    private final boolean eligible;
+    private final List<Loan> loans; // Copies of the loans matching the filter, ordered by record ID
+
+    // Constructor
+    private CustomerListing(Customer customer, List<Loan> loans) {
+        this(customer.getCustomerId(), customer.getAnnualIncome(), customer.getOutstandingBalance(), customer.isEligible(),
+                loans);
+    }
+
+    // Constructor for customers read from somewhere else than a live Customer, such as a MappedSnapshot
+    CustomerListing(String customerID, double annualIncome, double totalAmountLeft, boolean eligible, List<Loan> loans) {
+        this.customerID = customerID;
+        this.annualIncome = annualIncome;
+        this.totalAmountLeft = totalAmountLeft;
+        this.eligible = eligible;
+        this.loans = Collections.unmodifiableList(loans);
+    }
+
+    // Method to capture a customer under a filter, returns null if the customer is filtered out
+    // Eligibility is checked before any loan is looked at, and only matching loans are copied
+    // Each matching loan is copied with Loan.copy, so readers never see a live Loan change under them
+    static CustomerListing of(Customer customer, LoanFilter filter) {
+        synchronized (customer) {
+            if (!filter.matches(customer)) {
+                return null;
+            }
+            List<Loan> records = customer.getCreditRecords();
+            List<Loan> matching = new ArrayList<>(records.size());
+            for (Loan loan : records) {
+                if (filter.matches(loan)) {
+                    matching.add(loan.copy());
+                }
+            }
+            if (matching.isEmpty() && filter.filtersLoans()) {
+                return null; // The customer has no loan the filter asks for
+            }
+            matching.sort((a, b) -> Integer.compare(a.getRecordKey(), b.getRecordKey()));
+            return new CustomerListing(customer, matching);
+        }
+    }
+
+    // Getter methods
+    public String getCustomerId() { return customerID; }
+    public double getAnnualIncome() { return annualIncome; }
+    public double getTotalAmountLeft() { return totalAmountLeft; }
+    public boolean isEligible() { return eligible; }
+    public List<Loan> getLoans() { return loans; }
+}
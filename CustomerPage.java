@@ -0,0 +1,20 @@
+import java.util.Collections;
+import java.util.List;
+
+// One page of a customer listing plus the cursor to pass back for the next page
+class CustomerPage {
+    // Member variables
+    private final List<CustomerListing> customers; // Ordered by customer ID
+    private final String nextCursor; // Customer ID to continue after, or null on the last page
+
+    // Constructor
+    CustomerPage(List<CustomerListing> customers, String nextCursor) {
+        this.customers = Collections.unmodifiableList(customers);
+        this.nextCursor = nextCursor;
+    }
+
+    // Getter methods
+    public List<CustomerListing> getCustomers() { return customers; }
+    public String getNextCursor() { return nextCursor; }
+    public boolean hasNext() { return nextCursor != null; }
+}
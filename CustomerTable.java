@@ -0,0 +1,215 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bank-wide table from customer key (see IdCodec) to Customer
+// Keys are primitive ints in open-addressing tables, so a lookup neither hashes nor case-folds a String
+// The table is split into lock stripes chosen by key, like RecordIndex; a customer is only removed to undo its
+// registration when the journal refuses it
+// A bitset over the whole key space records which keys are taken, so customers can be walked in ID order
+class CustomerTable {
+    private static final int EMPTY = -1; // Marker for an unused slot (customer keys are never negative)
+    private static final int MIN_CAPACITY = 16; // Smallest table size, always a power of two
+    private static final int STRIPES = 64; // Number of independently locked segments, always a power of two
+
+    // Member variables
+    private final Segment[] segments = new Segment[STRIPES]; // One open-addressing table per stripe
+    private final AtomicLongArray registered = new AtomicLongArray((IdCodec.CUSTOMER_KEY_SPACE + 63) >>> 6); // 2.2 MB
+
+    // Constructor
+    public CustomerTable() {
+        for (int i = 0; i < STRIPES; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    // Getter method for the number of customers
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    // Method to get the customer stored under a key, or null if there is none (including for IdCodec.INVALID)
+    public Customer get(int key) {
+        return key >= 0 ? segmentFor(key).get(key) : null;
+    }
+
+    // Method to add a customer unless the key is taken, returns the customer already stored or null if added
+    public Customer putIfAbsent(int key, Customer customer) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) { // The bit changes under the segment's lock, in the same order as the entry
+            Customer existing = segment.putIfAbsent(key, customer);
+            if (existing == null) {
+                registered.getAndAccumulate(key >>> 6, 1L << key, (word, bit) -> word | bit);
+            }
+            return existing;
+        }
+    }
+
+    // Method to remove a customer if it is still the one stored under its key, returns true if it was removed
+    public boolean remove(int key, Customer customer) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            if (!segment.remove(key, customer)) {
+                return false;
+            }
+            registered.getAndAccumulate(key >>> 6, ~(1L << key), (word, mask) -> word & mask);
+            return true;
+        }
+    }
+
+    // Method to find the smallest registered key at or after fromKey, returns -1 if there is none
+    // Keys sort in the same order as the customer IDs they encode
+    public int nextKey(int fromKey) {
+        if (fromKey < 0 || fromKey >= IdCodec.CUSTOMER_KEY_SPACE) {
+            return -1;
+        }
+        int index = fromKey >>> 6;
+        long word = registered.get(index) & (-1L << fromKey); // Ignore keys below fromKey in the first word
+        while (word == 0) {
+            if (++index == registered.length()) {
+                return -1;
+            }
+            word = registered.get(index);
+        }
+        return (index << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    // Method to copy all customers into a list, one stripe at a time
+    // Customers registered while the copy runs may or may not be included
+    public List<Customer> values() {
+        List<Customer> values = new ArrayList<>(size());
+        for (Segment segment : segments) {
+            segment.copyTo(values);
+        }
+        return values;
+    }
+
+    // Method to pick the stripe for a key
+    private Segment segmentFor(int key) {
+        return segments[(mix(key) >>> 26) & (STRIPES - 1)]; // High bits, the low bits choose the slot inside the segment
+    }
+
+    // Method to spread sequential customer keys across the table
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // One lock stripe: an open-addressing table guarded by its own monitor
+    private static final class Segment {
+        // Member variables
+        private int[] keys; // Customer key stored in each slot
+        private Customer[] customers; // Customer stored in each slot
+        private int size; // Number of customers in this segment
+
+        // Constructor
+        Segment() {
+            allocate(MIN_CAPACITY);
+        }
+
+        // Getter method for the number of customers in this segment
+        synchronized int size() {
+            return size;
+        }
+
+        // Method to get the customer stored under a key, or null if there is none
+        synchronized Customer get(int key) {
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (keys[slot] != EMPTY) {
+                if (keys[slot] == key) {
+                    return customers[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        // Method to insert a key, returns the customer already stored under it or null if inserted
+        synchronized Customer putIfAbsent(int key, Customer customer) {
+            if ((size + 1) * 4 > keys.length * 3) { // Keep the load factor below 0.75
+                allocate(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (keys[slot] != EMPTY) {
+                if (keys[slot] == key) {
+                    return customers[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            customers[slot] = customer;
+            size++;
+            return null;
+        }
+
+        // Method to remove a key if it maps to the given customer, returns true if it was removed
+        synchronized boolean remove(int key, Customer customer) {
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (keys[slot] != key) {
+                if (keys[slot] == EMPTY) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (customers[slot] != customer) {
+                return false;
+            }
+            // Shift later entries of the probe chain back so lookups never hit a hole, as RecordIndex does
+            int hole = slot;
+            int next = (hole + 1) & mask;
+            while (keys[next] != EMPTY) {
+                int home = mix(keys[next]) & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    customers[hole] = customers[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            keys[hole] = EMPTY;
+            customers[hole] = null;
+            size--;
+            return true;
+        }
+
+        // Method to append every customer of this segment to a list
+        synchronized void copyTo(List<Customer> out) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) {
+                    out.add(customers[i]);
+                }
+            }
+        }
+
+        // Method to (re)allocate the table and reinsert existing entries
+        private void allocate(int capacity) {
+            int[] oldKeys = keys;
+            Customer[] oldCustomers = customers;
+            keys = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+            customers = new Customer[capacity];
+            if (oldKeys == null) {
+                return;
+            }
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = mix(oldKeys[i]) & mask;
+                    while (keys[slot] != EMPTY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    customers[slot] = oldCustomers[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// One committed state of a customer, kept by BankVersions for snapshot readers
+// The fields never change once the version is published; versions form a chain from the newest to older ones
+// The loans are frozen copies sorted by record key, and a new version shares the copies of the loans it did not change,
+// so changing one loan copies one loan and an array of references, and an income update copies no loan at all
+final class CustomerVersion {
+    static final long PENDING = 0; // Version number of a version installed but not stamped yet, the clock starts above it
+
+    // Member variables
+    private final String customerID;
+    private final double annualIncome;
+    private final double totalAmountLeft;
+    private final Loan[] loans; // Frozen copies sorted by record key, shared with other versions
+    private volatile long version = PENDING; // Clock value the version was committed at
+    private CustomerVersion previous; // Next older version, cut off once no snapshot can read it
+
+    // Constructor
+    private CustomerVersion(Customer customer, Loan[] loans) {
+        this.customerID = customer.getCustomerId();
+        this.annualIncome = customer.getAnnualIncome();
+        this.totalAmountLeft = customer.getOutstandingBalance();
+        this.loans = loans;
+    }
+
+    // Method to capture a customer with frozen copies of all of its loans, called while holding the customer's lock
+    static CustomerVersion capture(Customer customer) {
+        List<Loan> records = customer.getCreditRecords();
+        Loan[] loans = new Loan[records.size()];
+        for (int i = 0; i < loans.length; i++) {
+            loans[i] = records.get(i).copy();
+        }
+        Arrays.sort(loans, (a, b) -> Integer.compare(a.getRecordKey(), b.getRecordKey()));
+        return new CustomerVersion(customer, loans);
+    }
+
+    // Method to derive the next version after the customer's income changed
+    CustomerVersion withIncome(Customer customer) {
+        return new CustomerVersion(customer, loans);
+    }
+
+    // Method to derive the next version after a loan was added or changed, copying only that loan
+    CustomerVersion withLoan(Customer customer, Loan loan) {
+        int index = find(loan.getRecordKey());
+        Loan[] next;
+        if (index >= 0) {
+            next = loans.clone();
+        } else {
+            index = -index - 1;
+            next = new Loan[loans.length + 1];
+            System.arraycopy(loans, 0, next, 0, index);
+            System.arraycopy(loans, index, next, index + 1, loans.length - index);
+        }
+        next[index] = loan.copy();
+        return new CustomerVersion(customer, next);
+    }
+
+    // Method to derive the next version after a loan was removed
+    CustomerVersion withoutLoan(Customer customer, int recordKey) {
+        int index = find(recordKey);
+        if (index < 0) {
+            return new CustomerVersion(customer, loans);
+        }
+        Loan[] next = new Loan[loans.length - 1];
+        System.arraycopy(loans, 0, next, 0, index);
+        System.arraycopy(loans, index + 1, next, index, next.length - index);
+        return new CustomerVersion(customer, next);
+    }
+
+    // Method to find a record key among the loans, returns its index or -(insertion point) - 1 like Arrays.binarySearch
+    private int find(int recordKey) {
+        int low = 0;
+        int high = loans.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int key = loans[mid].getRecordKey();
+            if (key < recordKey) {
+                low = mid + 1;
+            } else if (key > recordKey) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -low - 1;
+    }
+
+    // Getter method for the version number, waiting for a version that is being committed to be stamped
+    long getVersion() {
+        long version = this.version;
+        while (version == PENDING) {
+            Thread.yield(); // The committing thread stamps it right after installing, unless it was descheduled
+            version = this.version;
+        }
+        return version;
+    }
+
+    // Setter method for the version number, called once by the committing thread
+    void setVersion(long version) {
+        this.version = version;
+    }
+
+    // Getter and setter methods for the next older version
+    CustomerVersion getPrevious() { return previous; }
+    void setPrevious(CustomerVersion previous) { this.previous = previous; }
+
+    // Getter methods
+    public String getCustomerId() { return customerID; }
+    public double getAnnualIncome() { return annualIncome; }
+    public double getTotalAmountLeft() { return totalAmountLeft; }
+    public int getLoanCount() { return loans.length; }
+
+    // Method to turn the version into a listing under a filter, returns null if the customer is filtered out
+    // Eligibility is judged under the given policy, like CustomerListing.of does for a live customer
+    CustomerListing toListing(EligibilityPolicy policy, LoanFilter filter) {
+        boolean eligible = policy.isEligible(annualIncome, totalAmountLeft);
+        if (!filter.matchesEligibility(eligible)) {
+            return null;
+        }
+        List<Loan> matching = new ArrayList<>(loans.length);
+        for (Loan loan : loans) {
+            if (filter.matches(loan)) {
+                matching.add(loan);
+            }
+        }
+        if (matching.isEmpty() && filter.filtersLoans()) {
+            return null; // The customer has no loan the filter asks for
+        }
+        return new CustomerListing(customerID, annualIncome, totalAmountLeft, eligible, matching);
+    }
+}
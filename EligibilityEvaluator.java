@@ -0,0 +1,66 @@
+import java.util.concurrent.atomic.LongAdder;
+
+// Current eligibility policy of a bank with its version, plus the counters of the per-customer decision caches
+// Replacing the policy bumps the version, which invalidates every cached decision at once without touching customers
+class EligibilityEvaluator {
+    // Shared evaluator for customers created outside a bank
+    static final EligibilityEvaluator STANDALONE = new EligibilityEvaluator(EligibilityPolicy.DEFAULT);
+
+    // Member variables
+    private volatile Current current; // Policy and version, replaced together so readers never see a mix
+    private final LongAdder hits = new LongAdder(); // Decisions answered from a customer's cache
+    private final LongAdder evaluations = new LongAdder(); // Decisions computed by running the policy
+
+    // Constructor
+    public EligibilityEvaluator(EligibilityPolicy policy) {
+        this.current = new Current(policy, 0);
+    }
+
+    // Getter method for the policy in force
+    public EligibilityPolicy getPolicy() {
+        return current.policy;
+    }
+
+    // Getter method for the policy version, incremented by every setPolicy call
+    public long getPolicyVersion() {
+        return current.version;
+    }
+
+    // Method to replace the policy, returns the new version
+    public synchronized long setPolicy(EligibilityPolicy policy) {
+        current = new Current(policy, current.version + 1);
+        return current.version;
+    }
+
+    // Getter method for the policy and version as one consistent pair
+    Current current() {
+        return current;
+    }
+
+    // Methods to count cache hits and policy evaluations, called by Customer
+    void recordHit() { hits.increment(); }
+    void recordEvaluation() { evaluations.increment(); }
+
+    // Getter methods for the cache metrics
+    public long getHitCount() { return hits.sum(); }
+    public long getEvaluationCount() { return evaluations.sum(); }
+
+    // Method to get the share of decisions answered from the cache, 0 before the first decision
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + evaluations.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    // Immutable pair of a policy and its version
+    static final class Current {
+        final EligibilityPolicy policy;
+        final long version;
+
+        // Constructor
+        Current(EligibilityPolicy policy, long version) {
+            this.policy = policy;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+// Rule deciding whether a customer may arrange new loans
+// Implementations must be stateless and thread-safe, because decisions are cached per customer and shared by threads
+@FunctionalInterface
+interface EligibilityPolicy {
+    // Default rule: the amount left on all loans must not exceed four times the annual income
+    EligibilityPolicy DEFAULT = incomeMultiple(4);
+
+    // Method to decide eligibility from the annual income and the total amount left on all loans
+    boolean isEligible(double annualIncome, double totalAmountLeft);
+
+    // Method to create a rule allowing a total amount left of up to a multiple of the annual income
+    static EligibilityPolicy incomeMultiple(double multiple) {
+        return (annualIncome, totalAmountLeft) -> totalAmountLeft <= multiple * annualIncome;
+    }
+}
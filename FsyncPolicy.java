@@ -0,0 +1,6 @@
+// Enum controlling when the loan journal forces its writes to disk
+enum FsyncPolicy {
+    NEVER, // Records are written to the file every commit interval, the operating system decides when they reach disk
+    GROUP, // Records are written and forced to disk every commit interval, writers never wait
+    SYNC // Every mutation waits until it is on disk, concurrent writers share one force (group commit)
+}
@@ -0,0 +1,71 @@
+// Packs the fixed-format IDs into ints, so maps and tables can key on primitives instead of Strings
+// Customer IDs (3 letters and 3 digits) map to 0 .. 17,575,999 and record IDs (6 digits) to 0 .. 999,999
+// Encoding accepts lower-case letters and folds them to upper case without creating a String
+final class IdCodec {
+    public static final int CUSTOMER_KEY_SPACE = 26 * 26 * 26 * 1000; // Number of possible customer IDs
+    public static final int RECORD_KEY_SPACE = 1_000_000; // Number of possible record IDs
+    public static final int INVALID = -1; // Returned for IDs that do not have the required format
+
+    // Constructor, the class only has static methods
+    private IdCodec() {
+    }
+
+    // Method to encode a customer ID such as ABC123 (or abc123), returns INVALID if the format is wrong
+    public static int customerKey(CharSequence customerID) {
+        if (customerID == null || customerID.length() != 6) {
+            return INVALID;
+        }
+        int key = 0;
+        for (int i = 0; i < 3; i++) {
+            int letter = customerID.charAt(i) | 0x20; // Fold ASCII upper case to lower case
+            if (letter < 'a' || letter > 'z') {
+                return INVALID;
+            }
+            key = key * 26 + (letter - 'a');
+        }
+        for (int i = 3; i < 6; i++) {
+            char c = customerID.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID;
+            }
+            key = key * 10 + (c - '0');
+        }
+        return key;
+    }
+
+    // Method to turn a customer key back into its upper-case customer ID
+    public static String customerId(int key) {
+        int letters = key / 1000;
+        int digits = key % 1000;
+        char[] id = {
+                (char) ('A' + letters / (26 * 26)), (char) ('A' + letters / 26 % 26), (char) ('A' + letters % 26),
+                (char) ('0' + digits / 100), (char) ('0' + digits / 10 % 10), (char) ('0' + digits % 10)};
+        return new String(id);
+    }
+
+    // Method to encode a 6-digit record ID, returns INVALID if the format is wrong
+    public static int recordKey(CharSequence recordID) {
+        if (recordID == null || recordID.length() != 6) {
+            return INVALID;
+        }
+        int key = 0;
+        for (int i = 0; i < 6; i++) {
+            char c = recordID.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID;
+            }
+            key = key * 10 + (c - '0');
+        }
+        return key;
+    }
+
+    // Method to turn a record key back into its 6-digit record ID
+    public static String recordId(int key) {
+        char[] digits = new char[6];
+        for (int i = 5; i >= 0; i--) {
+            digits[i] = (char) ('0' + key % 10);
+            key /= 10;
+        }
+        return new String(digits);
+    }
+}
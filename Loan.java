@@ -1,50 +1,82 @@
-import java.util.Scanner;
-import java.util.regex.Pattern;
-
 // Abstract class representing a loan
-abstract class Loan {
+abstract class Loan implements Cloneable {
     // Member variables
-    protected String recordID; // Record ID of the loan
-    protected String loanType; // Type of loan
+    protected int recordKey; // Record ID of the loan, packed by IdCodec
+    private String recordID; // String form of recordKey, created on first use
+    protected LoanType loanType; // Type of loan, kept as the enum so callers need no lookup by name
     protected double interestRate; // Interest rate of the loan
     protected double amountLeft; // Amount left to pay for the loan
     protected int loanTermLeft; // Remaining loan term
 
     // Constructor
-    public Loan(String loanType, double interestRate, double amountLeft, int loanTermLeft) {
+    public Loan(String recordID, LoanType loanType, double interestRate, double amountLeft, int loanTermLeft) {
+        // Reject record IDs that are not exactly 6 digits
+        int recordKey = IdCodec.recordKey(recordID);
+        if (recordKey == IdCodec.INVALID) {
+            throw new IllegalArgumentException("Invalid Record ID: " + recordID + ". Record ID must be 6 digits.");
+        }
         // Initialize loan properties
+        this.recordKey = recordKey;
         this.loanType = loanType;
         this.interestRate = interestRate;
         this.amountLeft = amountLeft;
         this.loanTermLeft = loanTermLeft;
-        // Call method to input record ID
-        this.recordID = inputRecordID();
+    }
+
+    // Method to create a loan of a type without any console input
+    // The subclasses live in this file, so the factory does too; the overpayment is only kept by Builder and Mortgage loans
+    static Loan create(LoanType type, String recordID, double interestRate, double amountLeft, int loanTermLeft,
+            double overpayment) {
+        switch (type) {
+            case AUTO:
+                return new AutoLoan(recordID, interestRate, amountLeft, loanTermLeft);
+            case BUILDER:
+                return new BuilderLoan(recordID, interestRate, amountLeft, loanTermLeft, overpayment);
+            case PERSONAL:
+                return new PersonalLoan(recordID, interestRate, amountLeft, loanTermLeft);
+            case MORTGAGE:
+                return new MortgageLoan(recordID, interestRate, amountLeft, loanTermLeft, overpayment);
+            default:
+                return new OtherLoan(recordID, interestRate, amountLeft, loanTermLeft);
+        }
     }
 
     // Abstract method to print loan details
     public abstract void printDetails();
 
     // Getter methods
-    public String getRecordID() { return recordID; }
-    public String getLoanType() { return loanType; }
+    public int getRecordKey() { return recordKey; }
+    public String getLoanType() { return loanType.getDisplayName(); }
+    public LoanType getType() { return loanType; }
     public double getInterestRate() { return interestRate; }
     public int getLoanTermLeft() { return loanTermLeft; }
     public double getAmountLeft() { return amountLeft; }
-
-    // Method to input record ID
-    private String inputRecordID() {
-        Scanner scanner = new Scanner(System.in); // Create a scanner object for input
-        String input;
-        do {
-            System.out.print("Enter Record ID (6 digits only): "); // Prompt user for input
-            input = scanner.nextLine(); // Read input from the user
-        } while (!isValidRecordID(input)); // Loop until a valid record ID is provided
-        return input; // Return the valid record ID
+    public double getOverpayment() { return 0; } // Only Builder and Mortgage loans carry an overpayment
+
+    // Getter method for the record ID, creating its String once and reusing it on later calls
+    // A race only builds an equal String twice, which is harmless as Strings are immutable
+    public String getRecordID() {
+        String recordID = this.recordID;
+        if (recordID == null) {
+            recordID = IdCodec.recordId(recordKey);
+            this.recordID = recordID;
+        }
+        return recordID;
     }
 
-    // Validation method for record ID
-    private boolean isValidRecordID(String recordID) {
-        return Pattern.matches("\\d{6}", recordID); // Check if the record ID matches the pattern (6 digits)
+    // Setter method for amountLeft, only to be called through Customer so its running balance stays correct
+    void setAmountLeft(double amountLeft) { this.amountLeft = amountLeft; }
+
+    // Setter method for loanTermLeft, only to be called through Customer
+    void setLoanTermLeft(int loanTermLeft) { this.loanTermLeft = loanTermLeft; }
+
+    // Method to copy the loan as it is now, for snapshots that must not follow later changes
+    Loan copy() {
+        try {
+            return (Loan) clone(); // Field by field, no record ID String is built or parsed
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
     }
 }
 
@@ -53,7 +85,7 @@ class AutoLoan extends Loan {
     // Constructor
     public AutoLoan(String recordID, double interestRate, double amountLeft, int loanTermLeft) {
         // Call superclass constructor with loan type "Auto"
-        super("Auto", interestRate, amountLeft, loanTermLeft);
+        super(recordID, LoanType.AUTO, interestRate, amountLeft, loanTermLeft);
     }
     
     // Method to print auto loan details
@@ -73,11 +105,17 @@ class BuilderLoan extends Loan {
     // Constructor
     public BuilderLoan(String recordID, double interestRate, double amountLeft, int loanTermLeft, double overpayment) {
         // Call superclass constructor with loan type "Builder"
-        super("Builder", interestRate, amountLeft, loanTermLeft);
+        super(recordID, LoanType.BUILDER, interestRate, amountLeft, loanTermLeft);
         // Initialize overpayment
         this.overpayment = overpayment;
     }
 
+    // Getter method for overpayment
+    @Override
+    public double getOverpayment() {
+        return overpayment;
+    }
+
     // Method to print builder loan details
     @Override
     public void printDetails() {
@@ -96,11 +134,17 @@ class MortgageLoan extends Loan {
     // Constructor
     public MortgageLoan(String recordID, double interestRate, double amountLeft, int loanTermLeft, double overpayment) {
         // Call superclass constructor with loan type "Mortgage"
-        super("Mortgage", interestRate, amountLeft, loanTermLeft);
+        super(recordID, LoanType.MORTGAGE, interestRate, amountLeft, loanTermLeft);
         // Initialize overpayment
         this.overpayment = overpayment;
     }
 
+    // Getter method for overpayment
+    @Override
+    public double getOverpayment() {
+        return overpayment;
+    }
+
     // Method to print mortgage loan details
     @Override
     public void printDetails() {
@@ -116,7 +160,7 @@ class PersonalLoan extends Loan {
     // Constructor
     public PersonalLoan(String recordID, double interestRate, double amountLeft, int loanTermLeft) {
         // Call superclass constructor with loan type "Personal"
-        super("Personal", interestRate, amountLeft, loanTermLeft);
+        super(recordID, LoanType.PERSONAL, interestRate, amountLeft, loanTermLeft);
     }
 
     // Method to print personal loan details
@@ -133,7 +177,7 @@ class OtherLoan extends Loan {
     // Constructor
     public OtherLoan(String recordID, double interestRate, double amountLeft, int loanTermLeft) {
         // Call superclass constructor with loan type "Other"
-        super("Other", interestRate, amountLeft, loanTermLeft);
+        super(recordID, LoanType.OTHER, interestRate, amountLeft, loanTermLeft);
     }
 
     // Method to print other loan details
@@ -0,0 +1,546 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Streaming import and export of customers and their loans, one line per loan
+// A customer without loans is written as one line with the loan fields left empty
+// Columns: customerID, annualIncome, recordID, loanType, interestRate, amountLeft, loanTermLeft, overpayment
+// Money values and interest rates are written at full precision (as Double.toString writes them), so an import
+// restores exactly the values that were exported
+// Files are read and written through a FileChannel and one direct buffer, so memory use does not grow with file size;
+// numeric fields are formatted and parsed straight through the buffer bytes without creating a String per field
+class LoanBookIO {
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int MAX_LINE_BYTES = 1024; // Longer lines are rejected as malformed
+    private static final int IMPORT_BATCH = 1 << 16; // Loans handed to XYZBank.addLoans at a time
+    private static final int FIELD_COUNT = 8;
+    private static final String CSV_HEADER =
+            "customerID,annualIncome,recordID,loanType,interestRate,amountLeft,loanTermLeft,overpayment";
+    // Fixed-width column widths, in the column order above; 24 characters hold any double Double.toString writes and 11
+    // any int
+    private static final int[] WIDTHS = {6, 24, 6, 8, 24, 24, 11, 24};
+    private static final long MAX_EXACT_MANTISSA = 1L << 53; // Largest mantissa a double holds exactly
+    private static final double[] EXACT_POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22}; // Every one is an exact double
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000,
+            100_000_000, 1_000_000_000, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L, 10_000_000_000_000L,
+            100_000_000_000_000L, 1_000_000_000_000_000L, 10_000_000_000_000_000L, 100_000_000_000_000_000L};
+
+    // Constructor, the class only has static methods
+    private LoanBookIO() {
+    }
+
+    // Method to write every customer and loan of a bank to a file, returns the number of lines written
+    // The file is written under a temporary name, forced and then renamed over the old one, so a failed export leaves
+    // the old file as it was
+    public static long exportBook(XYZBank bank, Path file, BookFormat format) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            long lines;
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                lines = writeBook(bank, channel, format);
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return lines;
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    // Method to write every customer and loan of a bank to a channel, returns the number of lines written
+    private static long writeBook(XYZBank bank, FileChannel channel, BookFormat format) throws IOException {
+        Writer writer = new Writer(channel, format);
+        if (format == BookFormat.CSV) {
+            writer.putAscii(CSV_HEADER);
+            writer.endLine();
+        }
+        long lines = 0;
+        for (Customer customer : bank.getCustomers()) {
+            synchronized (customer) {
+                if (customer.getCreditRecords().isEmpty()) {
+                    writer.writeRow(customer, null);
+                    lines++;
+                }
+                for (Loan loan : customer.getCreditRecords()) {
+                    writer.writeRow(customer, loan);
+                    lines++;
+                }
+            }
+        }
+        writer.flush();
+        return lines;
+    }
+
+    // Method to load a file into a bank, returns the number of loans added
+    // Customers are registered from the first line that names them; lines are added in batches of loans
+    // The import is not atomic: a malformed line aborts it with an IOException, and the customers registered and the
+    // batches of loans added before that line stay in the bank, while the loans queued in the unfinished batch are dropped
+    public static long importBook(Path file, BookFormat format, XYZBank bank) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Reader reader = new Reader(bank, format);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            boolean endOfFile = false;
+            while (!endOfFile) {
+                endOfFile = channel.read(buffer) < 0;
+                buffer.flip();
+                int lineStart = buffer.position();
+                int limit = buffer.limit();
+                for (int i = lineStart; i < limit; i++) {
+                    if (buffer.get(i) == '\n') {
+                        reader.readLine(buffer, lineStart, i);
+                        lineStart = i + 1;
+                    }
+                }
+                if (endOfFile && lineStart < limit) {
+                    reader.readLine(buffer, lineStart, limit); // Last line without a line break
+                    lineStart = limit;
+                }
+                if (limit - lineStart > MAX_LINE_BYTES) {
+                    throw new IOException("Line " + (reader.lineNumber + 1) + " is longer than " + MAX_LINE_BYTES + " bytes");
+                }
+                buffer.position(lineStart);
+                buffer.compact(); // Keep the partial line for the next read
+            }
+            return reader.finish();
+        }
+    }
+
+    // Row encoder writing into a direct buffer that is flushed to the channel when nearly full
+    private static final class Writer {
+        private final FileChannel channel;
+        private final BookFormat format;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private final byte[] number = new byte[32]; // Scratch space for one formatted whole number
+        private final StringBuilder decimal = new StringBuilder(32); // Scratch space for one formatted double
+
+        // Constructor
+        Writer(FileChannel channel, BookFormat format) {
+            this.channel = channel;
+            this.format = format;
+        }
+
+        // Method to write one line, loan is null for a customer without loans
+        void writeRow(Customer customer, Loan loan) throws IOException {
+            if (buffer.remaining() < MAX_LINE_BYTES) {
+                flush();
+            }
+            putText(0, customer.getCustomerId());
+            putDouble(1, customer.getAnnualIncome());
+            if (loan == null) {
+                for (int field = 2; field < FIELD_COUNT; field++) {
+                    putText(field, "");
+                }
+            } else {
+                putRecordId(loan.getRecordKey());
+                putText(3, loan.getLoanType());
+                putDouble(4, loan.getInterestRate());
+                putDouble(5, loan.getAmountLeft());
+                putWhole(6, loan.getLoanTermLeft());
+                putDouble(7, loan.getOverpayment());
+            }
+            endLine();
+        }
+
+        // Method to write a text field, left aligned in fixed-width files
+        private void putText(int field, String text) throws IOException {
+            startField(field);
+            putAscii(text);
+            if (format == BookFormat.FIXED_WIDTH) {
+                pad(field, text.length());
+            }
+        }
+
+        // Method to write the 6 digits of a record key without creating its String
+        private void putRecordId(int recordKey) {
+            startField(2);
+            for (int divisor = 100_000; divisor > 0; divisor /= 10) {
+                buffer.put((byte) ('0' + recordKey / divisor % 10));
+            }
+        }
+
+        // Method to write a whole number field, right aligned in fixed-width files
+        private void putWhole(int field, long value) throws IOException {
+            startField(field);
+            int length = formatFixed(value, 0, number);
+            if (format == BookFormat.FIXED_WIDTH) {
+                pad(field, length);
+            }
+            buffer.put(number, 0, length);
+        }
+
+        // Method to write a decimal field at full precision, right aligned in fixed-width files
+        // StringBuilder.append writes the same digits as Double.toString without creating a String
+        private void putDouble(int field, double value) throws IOException {
+            startField(field);
+            decimal.setLength(0);
+            decimal.append(value);
+            if (format == BookFormat.FIXED_WIDTH) {
+                pad(field, decimal.length());
+            }
+            for (int i = 0; i < decimal.length(); i++) {
+                buffer.put((byte) decimal.charAt(i));
+            }
+        }
+
+        // Method to write the separator before a field
+        private void startField(int field) {
+            if (field > 0 && format == BookFormat.CSV) {
+                buffer.put((byte) ',');
+            }
+        }
+
+        // Method to pad a fixed-width field to its column width
+        private void pad(int field, int length) throws IOException {
+            if (length > WIDTHS[field]) {
+                throw new IOException("Value does not fit the fixed-width column " + field + " of " + WIDTHS[field] + " characters");
+            }
+            for (int i = length; i < WIDTHS[field]; i++) {
+                buffer.put((byte) ' ');
+            }
+        }
+
+        // Method to write ASCII text byte by byte
+        void putAscii(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                buffer.put((byte) text.charAt(i));
+            }
+        }
+
+        // Method to end the current line
+        void endLine() {
+            buffer.put((byte) '\n');
+        }
+
+        // Method to write the buffered bytes to the channel
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    // Line decoder collecting loans into batches for the bank
+    private static final class Reader {
+        private final XYZBank bank;
+        private final BookFormat format;
+        private final int[] fieldStarts = new int[FIELD_COUNT];
+        private final int[] fieldEnds = new int[FIELD_COUNT];
+        private final byte[] lastCustomer = new byte[MAX_LINE_BYTES]; // Bytes of the previous line's customer ID
+        private int lastCustomerLength = -1;
+        private String customerID; // String of the previous line's customer ID, reused while it repeats
+        private final List<LoanRequest> batch = new ArrayList<>(IMPORT_BATCH);
+        private long lineNumber;
+        private long added;
+
+        // Constructor
+        Reader(XYZBank bank, BookFormat format) {
+            this.bank = bank;
+            this.format = format;
+        }
+
+        // Method to decode one line between start (inclusive) and end (exclusive)
+        void readLine(ByteBuffer buffer, int start, int end) throws IOException {
+            lineNumber++;
+            if (end > start && buffer.get(end - 1) == '\r') {
+                end--; // Windows line ending
+            }
+            if (end == start) {
+                return; // Blank line
+            }
+            if (format == BookFormat.CSV) {
+                if (lineNumber == 1 && isHeader(buffer, start, end)) {
+                    return;
+                }
+                splitCsv(buffer, start, end);
+            } else {
+                splitFixed(buffer, start, end);
+            }
+            String owner = customerId(buffer);
+            if (fieldEnds[2] > fieldStarts[2]) { // The line carries a loan
+                queueLoan(buffer, owner);
+            }
+        }
+
+        // Method to check if a line is the CSV header
+        private boolean isHeader(ByteBuffer buffer, int start, int end) {
+            if (end - start != CSV_HEADER.length()) {
+                return false;
+            }
+            for (int i = 0; i < CSV_HEADER.length(); i++) {
+                if (buffer.get(start + i) != CSV_HEADER.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Method to get the customer ID of the current line, registering the customer when the ID changes
+        // Export writes a customer's lines together, so the String of the previous line is usually reused
+        private String customerId(ByteBuffer buffer) throws IOException {
+            int start = fieldStarts[0];
+            int length = fieldEnds[0] - start;
+            if (length == 0) {
+                throw malformed("customer ID is empty");
+            }
+            boolean same = length == lastCustomerLength;
+            for (int i = 0; same && i < length; i++) {
+                same = buffer.get(start + i) == lastCustomer[i];
+            }
+            if (!same) {
+                for (int i = 0; i < length; i++) {
+                    lastCustomer[i] = buffer.get(start + i);
+                }
+                lastCustomerLength = length;
+                customerID = new String(lastCustomer, 0, length, StandardCharsets.US_ASCII);
+                BankResult result = bank.registerNewCustomer(customerID, parseDouble(buffer, 1));
+                if (!result.isSuccess() && result != BankResult.CUSTOMER_EXISTS) { // An existing customer is kept
+                    throw malformed(result.getMessage());
+                }
+            }
+            return customerID;
+        }
+
+        // Method to decode the loan fields of the current line and add the loan to the batch
+        // The values are held to the rules of the menu: positive rate, amount and term, and no negative overpayment
+        private void queueLoan(ByteBuffer buffer, String owner) throws IOException {
+            int recordKey = (int) parseLong(buffer, 2);
+            if (fieldEnds[2] - fieldStarts[2] != 6) {
+                throw malformed("record ID must be 6 digits");
+            }
+            LoanType type = loanType(buffer);
+            double interestRate = parseDouble(buffer, 4);
+            if (!(interestRate > 0)) { // Also rejects NaN
+                throw malformed("interest rate must be positive");
+            }
+            double amountLeft = parseDouble(buffer, 5);
+            if (!(amountLeft > 0)) {
+                throw malformed("amount left must be positive");
+            }
+            long loanTermLeft = parseLong(buffer, 6);
+            if (loanTermLeft <= 0 || loanTermLeft > Integer.MAX_VALUE) {
+                throw malformed("loan term must be a positive whole number");
+            }
+            double overpayment = parseDouble(buffer, 7);
+            if (!(overpayment >= 0)) {
+                throw malformed("overpayment cannot be negative");
+            }
+            Loan loan = type.create(IdCodec.recordId(recordKey), interestRate, amountLeft, (int) loanTermLeft, overpayment);
+            batch.add(new LoanRequest(owner, loan));
+            if (batch.size() == IMPORT_BATCH) {
+                flushBatch();
+            }
+        }
+
+        // Method to match the loan type field against the type names without creating a String
+        private LoanType loanType(ByteBuffer buffer) throws IOException {
+            int start = fieldStarts[3];
+            int length = fieldEnds[3] - start;
+            for (int code = 0; code < LoanType.values().length; code++) {
+                String name = LoanType.fromCode(code).getDisplayName();
+                if (name.length() != length) {
+                    continue;
+                }
+                boolean match = true;
+                for (int i = 0; match && i < length; i++) {
+                    match = Character.toLowerCase((char) buffer.get(start + i)) == Character.toLowerCase(name.charAt(i));
+                }
+                if (match) {
+                    return LoanType.fromCode(code);
+                }
+            }
+            throw malformed("unknown loan type");
+        }
+
+        // Method to find the field boundaries of a CSV line
+        private void splitCsv(ByteBuffer buffer, int start, int end) throws IOException {
+            int field = 0;
+            fieldStarts[0] = start;
+            for (int i = start; i < end; i++) {
+                if (buffer.get(i) == ',') {
+                    if (field == FIELD_COUNT - 1) {
+                        throw malformed("too many fields");
+                    }
+                    fieldEnds[field++] = i;
+                    fieldStarts[field] = i + 1;
+                }
+            }
+            if (field != FIELD_COUNT - 1) {
+                throw malformed("expected " + FIELD_COUNT + " fields");
+            }
+            fieldEnds[field] = end;
+        }
+
+        // Method to find the field boundaries of a fixed-width line, trimming the padding
+        private void splitFixed(ByteBuffer buffer, int start, int end) throws IOException {
+            int position = start;
+            for (int field = 0; field < FIELD_COUNT; field++) {
+                int fieldEnd = Math.min(position + WIDTHS[field], end);
+                int s = position;
+                int e = fieldEnd;
+                while (s < e && buffer.get(s) == ' ') {
+                    s++;
+                }
+                while (e > s && buffer.get(e - 1) == ' ') {
+                    e--;
+                }
+                fieldStarts[field] = s;
+                fieldEnds[field] = e;
+                position = fieldEnd;
+            }
+            if (fieldEnds[0] == fieldStarts[0]) {
+                throw malformed("customer ID is empty");
+            }
+        }
+
+        // Method to parse an optionally signed integer field
+        private long parseLong(ByteBuffer buffer, int field) throws IOException {
+            int i = fieldStarts[field];
+            int end = fieldEnds[field];
+            boolean negative = i < end && buffer.get(i) == '-';
+            if (negative) {
+                i++;
+            }
+            if (i == end || end - i > 18) {
+                throw malformed("field " + (field + 1) + " is not a whole number");
+            }
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw malformed("field " + (field + 1) + " is not a whole number");
+                }
+                value = value * 10 + digit;
+            }
+            return negative ? -value : value;
+        }
+
+        // Method to parse an optionally signed decimal field such as -12.345 or 1.5E7
+        // Digits are collected into a long and scaled once by an exact power of ten, which rounds correctly while the
+        // mantissa fits 53 bits; longer values, like the 17 digits Double.toString may write, go to Double.parseDouble
+        private double parseDouble(ByteBuffer buffer, int field) throws IOException {
+            int start = fieldStarts[field];
+            int end = fieldEnds[field];
+            int i = start;
+            boolean negative = i < end && buffer.get(i) == '-';
+            if (negative) {
+                i++;
+            }
+            long mantissa = 0;
+            int digits = 0;
+            boolean exact = true; // False once the digits no longer fit the mantissa
+            int scale = -1; // Digits after the decimal point, -1 until a point is seen
+            for (; i < end; i++) {
+                byte b = buffer.get(i);
+                if (b == '.' && scale < 0) {
+                    scale = 0;
+                    continue;
+                }
+                if ((b == 'E' || b == 'e') && digits > 0) {
+                    break;
+                }
+                int digit = b - '0';
+                if (digit < 0 || digit > 9) {
+                    throw malformed("field " + (field + 1) + " is not a decimal number");
+                }
+                exact &= mantissa <= (MAX_EXACT_MANTISSA - digit) / 10;
+                mantissa = mantissa * 10 + digit;
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            }
+            if (digits == 0) {
+                throw malformed("field " + (field + 1) + " is not a decimal number");
+            }
+            int exponent = i < end ? (int) parseExponent(buffer, i + 1, end, field) : 0;
+            int power = exponent - Math.max(scale, 0);
+            if (!exact || power < -22 || power > 22) {
+                byte[] text = new byte[end - start];
+                for (int j = 0; j < text.length; j++) {
+                    text[j] = buffer.get(start + j);
+                }
+                return Double.parseDouble(new String(text, StandardCharsets.US_ASCII)); // Only the bytes checked above
+            }
+            double value = power < 0 ? mantissa / EXACT_POWERS_OF_TEN[-power] : mantissa * EXACT_POWERS_OF_TEN[power];
+            return negative ? -value : value;
+        }
+
+        // Method to parse the optionally signed exponent after the E of a decimal field
+        private long parseExponent(ByteBuffer buffer, int i, int end, int field) throws IOException {
+            boolean negative = i < end && buffer.get(i) == '-';
+            if (negative) {
+                i++;
+            }
+            if (i == end || end - i > 3) {
+                throw malformed("field " + (field + 1) + " is not a decimal number");
+            }
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw malformed("field " + (field + 1) + " is not a decimal number");
+                }
+                value = value * 10 + digit;
+            }
+            return negative ? -value : value;
+        }
+
+        // Method to hand the queued loans to the bank
+        private void flushBatch() {
+            added += bank.addLoans(batch);
+            batch.clear();
+        }
+
+        // Method to add the last partial batch, returns the number of loans added
+        long finish() {
+            flushBatch();
+            return added;
+        }
+
+        // Method to create the exception for a malformed line
+        private IOException malformed(String problem) {
+            return new IOException("Malformed line " + lineNumber + ": " + problem);
+        }
+    }
+
+    // Method to format a value with a fixed number of decimals into a byte array, returns the number of bytes
+    static int formatFixed(double value, int decimals, byte[] out) {
+        long scaled = Math.round(Math.abs(value) * POWERS_OF_TEN[decimals]);
+        int length = 0;
+        if (value < 0 && scaled != 0) {
+            out[length++] = '-';
+        }
+        long whole = scaled / POWERS_OF_TEN[decimals];
+        long fraction = scaled % POWERS_OF_TEN[decimals];
+        // Whole part, written backwards into the tail of the array and then moved forward
+        int digitsStart = out.length;
+        do {
+            out[--digitsStart] = (byte) ('0' + whole % 10);
+            whole /= 10;
+        } while (whole > 0);
+        while (digitsStart < out.length) {
+            out[length++] = out[digitsStart++];
+        }
+        if (decimals > 0) {
+            out[length++] = '.';
+            for (int d = decimals - 1; d >= 0; d--) {
+                out[length + d] = (byte) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            length += decimals;
+        }
+        return length;
+    }
+}
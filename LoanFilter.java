@@ -0,0 +1,42 @@
+// Immutable filter for customer and loan listings, applied before any loan is copied or formatted
+// Start from LoanFilter.ALL and narrow it, for example LoanFilter.ALL.withType(LoanType.AUTO).withMinBalance(10)
+final class LoanFilter {
+    public static final LoanFilter ALL = new LoanFilter(null, Double.NEGATIVE_INFINITY, null);
+
+    // Member variables
+    private final LoanType type; // Only loans of this type, or null for every type
+    private final double minBalance; // Only loans with at least this amount left
+    private final Boolean eligible; // Only customers with this eligibility, or null for every customer
+
+    // Constructor
+    private LoanFilter(LoanType type, double minBalance, Boolean eligible) {
+        this.type = type;
+        this.minBalance = minBalance;
+        this.eligible = eligible;
+    }
+
+    // Methods to create a narrower copy of this filter
+    public LoanFilter withType(LoanType type) { return new LoanFilter(type, minBalance, eligible); }
+    public LoanFilter withMinBalance(double minBalance) { return new LoanFilter(type, minBalance, eligible); }
+    public LoanFilter withEligibility(boolean eligible) { return new LoanFilter(type, minBalance, eligible); }
+
+    // Method to check if the filter selects loans at all, otherwise customers are listed whatever loans they have
+    public boolean filtersLoans() {
+        return type != null || minBalance != Double.NEGATIVE_INFINITY;
+    }
+
+    // Method to check a customer's eligibility against the filter, called while holding the customer's lock
+    public boolean matches(Customer customer) {
+        return matchesEligibility(customer.isEligible());
+    }
+
+    // Method to check an eligibility decision already made against the filter
+    public boolean matchesEligibility(boolean customerEligible) {
+        return eligible == null || customerEligible == eligible;
+    }
+
+    // Method to check a loan against the filter
+    public boolean matches(Loan loan) {
+        return (type == null || type == loan.getType()) && loan.getAmountLeft() >= minBalance;
+    }
+}
@@ -0,0 +1,164 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+// Secondary indexes over the loans of a bank, answering type, balance and term queries without a full scan
+// - one bitmap per loan type over the record key space
+// - per loan type, a navigable set ordered by amount left and one ordered by loan term left (ties broken by record key)
+// Queries for one type read one contiguous range; queries over every type merge the per-type ranges
+// The bank updates the indexes under the owning customer's lock: a changed loan is removed, mutated and re-added
+// Queries return record keys and are weakly consistent, like iterating a concurrent collection
+class LoanIndexes {
+    private static final int WORDS = (IdCodec.RECORD_KEY_SPACE + 63) >>> 6;
+
+    // Member variables
+    private final AtomicLongArray[] typeBitmaps = new AtomicLongArray[LoanType.values().length];
+    private final AtomicInteger[] typeCounts = new AtomicInteger[LoanType.values().length];
+    private final List<ConcurrentSkipListSet<BalanceEntry>> byBalance = new ArrayList<>(typeBitmaps.length);
+    private final List<ConcurrentSkipListSet<Long>> byTerm = new ArrayList<>(typeBitmaps.length); // Packed term and key
+
+    // Constructor
+    public LoanIndexes() {
+        for (int i = 0; i < typeBitmaps.length; i++) {
+            typeBitmaps[i] = new AtomicLongArray(WORDS);
+            typeCounts[i] = new AtomicInteger();
+            byBalance.add(new ConcurrentSkipListSet<>());
+            byTerm.add(new ConcurrentSkipListSet<>());
+        }
+    }
+
+    // Method to index a loan with its current field values
+    public void add(Loan loan) {
+        int key = loan.getRecordKey();
+        int type = loan.getType().ordinal();
+        typeBitmaps[type].getAndAccumulate(key >>> 6, 1L << key, (word, bit) -> word | bit);
+        typeCounts[type].incrementAndGet();
+        byBalance.get(type).add(new BalanceEntry(loan.getAmountLeft(), key));
+        byTerm.get(type).add(termEntry(loan.getLoanTermLeft(), key));
+    }
+
+    // Method to remove a loan, which must still hold the field values it was indexed with
+    public void remove(Loan loan) {
+        int key = loan.getRecordKey();
+        int type = loan.getType().ordinal();
+        typeBitmaps[type].getAndAccumulate(key >>> 6, ~(1L << key), (word, mask) -> word & mask);
+        typeCounts[type].decrementAndGet();
+        byBalance.get(type).remove(new BalanceEntry(loan.getAmountLeft(), key));
+        byTerm.get(type).remove(termEntry(loan.getLoanTermLeft(), key));
+    }
+
+    // Method to count the loans of a type
+    public int count(LoanType type) {
+        return typeCounts[type.ordinal()].get();
+    }
+
+    // Method to check if a record key is indexed under a type
+    public boolean hasType(int recordKey, LoanType type) {
+        return (typeBitmaps[type.ordinal()].get(recordKey >>> 6) & (1L << recordKey)) != 0;
+    }
+
+    // Method to list the record keys of every loan of a type, in record key order
+    public List<Integer> keysOfType(LoanType type) {
+        AtomicLongArray bitmap = typeBitmaps[type.ordinal()];
+        List<Integer> keys = new ArrayList<>(count(type));
+        for (int index = 0; index < WORDS; index++) {
+            long word = bitmap.get(index);
+            while (word != 0) {
+                keys.add((index << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1; // Clear the lowest set bit
+            }
+        }
+        return keys;
+    }
+
+    // Method to list the record keys with a term left between min and max (inclusive), ordered by term left
+    // Pass a null type to search every type
+    public List<Integer> keysByTerm(LoanType type, int minTermLeft, int maxTermLeft, int limit) {
+        List<Integer> keys = new ArrayList<>();
+        if (minTermLeft > maxTermLeft) {
+            return keys;
+        }
+        List<Iterator<Long>> ranges = new ArrayList<>();
+        for (int t = 0; t < byTerm.size(); t++) {
+            if (type == null || type.ordinal() == t) {
+                ranges.add(byTerm.get(t).subSet(termEntry(minTermLeft, 0), true,
+                        termEntry(maxTermLeft, IdCodec.RECORD_KEY_SPACE), false).iterator());
+            }
+        }
+        merge(ranges, Comparator.naturalOrder(), limit, entry -> keys.add((int) (entry & 0xFFFFFFFFL)));
+        return keys;
+    }
+
+    // Method to list the record keys with an amount left between min and max (inclusive)
+    // Ordered by amount left, highest first when descending is true; pass a null type to search every type
+    public List<Integer> keysByBalance(LoanType type, double minAmountLeft, double maxAmountLeft, boolean descending,
+                                       int limit) {
+        List<Integer> keys = new ArrayList<>();
+        if (!(minAmountLeft <= maxAmountLeft)) {
+            return keys;
+        }
+        List<Iterator<BalanceEntry>> ranges = new ArrayList<>();
+        for (int t = 0; t < byBalance.size(); t++) {
+            if (type == null || type.ordinal() == t) {
+                NavigableSet<BalanceEntry> range = byBalance.get(t).subSet(new BalanceEntry(minAmountLeft, Integer.MIN_VALUE), true,
+                        new BalanceEntry(maxAmountLeft, Integer.MAX_VALUE), true);
+                ranges.add(descending ? range.descendingIterator() : range.iterator());
+            }
+        }
+        Comparator<BalanceEntry> order = Comparator.naturalOrder();
+        merge(ranges, descending ? order.reversed() : order, limit, entry -> keys.add(entry.recordKey));
+        return keys;
+    }
+
+    // Method to walk several ordered iterators as one ordered sequence, stopping after limit entries
+    private static <T> void merge(List<Iterator<T>> sources, Comparator<? super T> order, int limit, Consumer<T> sink) {
+        List<T> heads = new ArrayList<>(sources.size()); // Next entry of each source, null once it is exhausted
+        for (Iterator<T> source : sources) {
+            heads.add(source.hasNext() ? source.next() : null);
+        }
+        for (int taken = 0; taken < limit; taken++) {
+            int best = -1;
+            for (int i = 0; i < heads.size(); i++) {
+                if (heads.get(i) != null && (best < 0 || order.compare(heads.get(i), heads.get(best)) < 0)) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                return; // Every source is exhausted
+            }
+            sink.accept(heads.get(best));
+            Iterator<T> source = sources.get(best);
+            heads.set(best, source.hasNext() ? source.next() : null);
+        }
+    }
+
+    // Method to pack a term and a record key into one long that sorts by term and then by key
+    private static long termEntry(int loanTermLeft, int recordKey) {
+        return ((long) loanTermLeft << 32) | recordKey;
+    }
+
+    // Entry of the balance index, ordered by amount left and then by record key
+    private static final class BalanceEntry implements Comparable<BalanceEntry> {
+        final double amountLeft;
+        final int recordKey;
+
+        // Constructor
+        BalanceEntry(double amountLeft, int recordKey) {
+            this.amountLeft = amountLeft;
+            this.recordKey = recordKey;
+        }
+
+        // Method to order entries by amount left and then by record key
+        @Override
+        public int compareTo(BalanceEntry other) {
+            int byAmount = Double.compare(amountLeft, other.amountLeft);
+            return byAmount != 0 ? byAmount : Integer.compare(recordKey, other.recordKey);
+        }
+    }
+}
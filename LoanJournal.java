@@ -0,0 +1,397 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+// Append-only binary journal of every XYZBank mutation
+// Each record is framed as [int length][body][int CRC32 of body], so a torn write at the tail is detected on replay
+// Records are encoded into a direct buffer and written in groups, the FsyncPolicy decides when they are forced to disk
+// The bank logs each mutation before applying it: when a log method throws (the journal is closed or a write failed,
+// after which it refuses every record and fails every caller whose record was not written), the bank leaves the
+// mutation unapplied. A record whose write failed may still have reached the disk, so recovery can replay it although
+// the bank never applied it
+class LoanJournal implements AutoCloseable {
+    private static final int MAGIC = 0x584A524E; // "XJRN", marks the start of a journal file
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 8; // Magic and format version
+    private static final int BUFFER_BYTES = 1 << 16; // Size of each of the two group commit buffers
+    private static final int MAX_RECORD_BYTES = 4 + 2 + 255 + 33 + 4; // Largest framed record: an ADD_LOAN with a 255-byte ID
+
+    // Record types
+    private static final byte REGISTER = 1;
+    private static final byte ADD_LOAN = 2;
+    private static final byte REMOVE_LOAN = 3;
+    private static final byte UPDATE_INCOME = 4;
+    private static final byte UPDATE_LOAN = 5;
+
+    // Member variables
+    private final FileChannel channel; // Journal file opened for appending
+    private final FsyncPolicy policy; // When writes are forced to disk
+    private final CRC32 crc = new CRC32(); // Reused checksum, only touched while holding the journal's lock
+    private ByteBuffer active = ByteBuffer.allocateDirect(BUFFER_BYTES); // Buffer new records are encoded into
+    private ByteBuffer spare = ByteBuffer.allocateDirect(BUFFER_BYTES); // Buffer being written, or free for the next swap
+    private long appendedSeq; // Sequence number of the last encoded record
+    private long flushedSeq; // Sequence number of the last record written (and forced, unless the policy is NEVER)
+    private boolean flushing; // True while one thread is writing a buffer to the file
+    private final Thread flusher; // Background group commit thread, null for the SYNC policy
+    private volatile boolean closed;
+    private IOException failure; // First write error, after which the journal refuses new records
+
+    // Constructor, use open to create a journal
+    private LoanJournal(FileChannel channel, FsyncPolicy policy, long commitIntervalMillis) {
+        this.channel = channel;
+        this.policy = policy;
+        if (policy == FsyncPolicy.SYNC) {
+            this.flusher = null; // Writers commit their own records
+        } else {
+            this.flusher = new Thread(() -> runFlusher(commitIntervalMillis), "loan-journal-flusher");
+            this.flusher.setDaemon(true);
+            this.flusher.start();
+        }
+    }
+
+    // Method to open a journal for appending, creating the file with its header if it does not exist yet
+    public static LoanJournal open(Path file, FsyncPolicy policy, long commitIntervalMillis) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        return open(channel, policy, commitIntervalMillis);
+    }
+
+    // Method to open a journal on a channel that is already open, XYZBankChecks passes one that fails on demand
+    static LoanJournal open(FileChannel channel, FsyncPolicy policy, long commitIntervalMillis) throws IOException {
+        if (channel.size() < HEADER_BYTES) {
+            writeHeader(channel);
+        }
+        channel.position(channel.size());
+        return new LoanJournal(channel, policy, commitIntervalMillis);
+    }
+
+    // Method to replay every complete record of a journal file into a bank, returns the number of records applied
+    // A torn or corrupt record ends the replay and the file is cut back to the last good record
+    public static int replay(Path file, XYZBank bank) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            CRC32 checksum = new CRC32();
+            channel.read(buffer, 0);
+            buffer.flip();
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException("Not a loan journal: " + file);
+            }
+            long goodEnd = HEADER_BYTES; // File offset just after the last good record
+            int applied = 0;
+            while (true) {
+                if (buffer.remaining() < MAX_RECORD_BYTES) {
+                    // Refill, keeping the unread bytes at the front of the buffer
+                    long readFrom = goodEnd + buffer.remaining();
+                    buffer.compact();
+                    channel.read(buffer, readFrom);
+                    buffer.flip();
+                }
+                if (buffer.remaining() < 4) {
+                    break;
+                }
+                int start = buffer.position();
+                int length = buffer.getInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES || buffer.remaining() < length + 4) {
+                    break; // Torn tail
+                }
+                int bodyStart = start + 4;
+                int dataLimit = buffer.limit();
+                buffer.limit(bodyStart + length); // Checksum exactly the body
+                checksum.reset();
+                checksum.update(buffer);
+                buffer.limit(dataLimit);
+                if ((int) checksum.getValue() != buffer.getInt(bodyStart + length)) {
+                    break; // Corrupt record
+                }
+                buffer.position(bodyStart);
+                apply(buffer, bank);
+                buffer.position(bodyStart + length + 4);
+                goodEnd += 4 + length + 4;
+                applied++;
+            }
+            if (channel.size() > goodEnd) {
+                channel.truncate(goodEnd); // Drop the unreadable tail so new records follow the last good one
+            }
+            return applied;
+        }
+    }
+
+    // Method to log a customer registration
+    public void logRegister(String customerID, double income) {
+        commitIfSync(append(REGISTER, customerID, 0, income, 0, null));
+    }
+
+    // Method to log a loan added to a customer
+    public void logAddLoan(String customerID, Loan loan) {
+        commitIfSync(append(ADD_LOAN, customerID, loan.getRecordKey(), 0, 0, loan));
+    }
+
+    // Method to log a loan removed from a customer
+    public void logRemoveLoan(String customerID, int recordKey) {
+        commitIfSync(append(REMOVE_LOAN, customerID, recordKey, 0, 0, null));
+    }
+
+    // Method to log a customer's new income
+    public void logUpdateIncome(String customerID, double newIncome) {
+        commitIfSync(append(UPDATE_INCOME, customerID, 0, newIncome, 0, null));
+    }
+
+    // Method to log the amount and term a loan is about to be given
+    public void logUpdateLoan(String customerID, int recordKey, double newAmountLeft, int newLoanTermLeft) {
+        commitIfSync(append(UPDATE_LOAN, customerID, recordKey, newAmountLeft, newLoanTermLeft, null));
+    }
+
+    // Method to write every record appended so far, forcing it to disk unless the policy is NEVER
+    public void commit() {
+        long target;
+        synchronized (this) {
+            target = appendedSeq;
+        }
+        awaitFlushed(target);
+    }
+
+    // Method to empty the journal after its contents have been captured in a snapshot
+    // The caller must make sure no mutation is logged at the same time
+    public void truncate() throws IOException {
+        commit();
+        synchronized (this) {
+            channel.truncate(HEADER_BYTES);
+            channel.position(HEADER_BYTES);
+            channel.force(true);
+        }
+    }
+
+    // Method to commit outstanding records and close the file
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (flusher != null) {
+            LockSupport.unpark(flusher); // Not an interrupt, which would close the channel if it came during a write
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            commit();
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Method to encode one record into the active buffer, returns its sequence number
+    private long append(byte type, String customerID, int recordKey, double amount, int loanTermLeft, Loan loan) {
+        byte[] id = customerID.getBytes(StandardCharsets.UTF_8);
+        if (id.length > 255) {
+            throw new IllegalArgumentException("Customer ID too long for the journal: " + customerID);
+        }
+        while (true) {
+            long pending;
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("Loan journal is closed");
+                }
+                if (failure != null) {
+                    throw new UncheckedIOException("Loan journal failed, records can no longer be made durable", failure);
+                }
+                if (active.remaining() >= MAX_RECORD_BYTES) {
+                    int start = active.position();
+                    active.position(start + 4); // Length is filled in once the body is encoded
+                    active.put(type).put((byte) id.length).put(id);
+                    switch (type) {
+                        case REGISTER:
+                        case UPDATE_INCOME:
+                            active.putDouble(amount);
+                            break;
+                        case ADD_LOAN:
+                            active.putInt(loan.getRecordKey())
+                                    .put((byte) loan.getType().ordinal())
+                                    .putDouble(loan.getInterestRate())
+                                    .putDouble(loan.getAmountLeft())
+                                    .putInt(loan.getLoanTermLeft())
+                                    .putDouble(loan.getOverpayment());
+                            break;
+                        case UPDATE_LOAN:
+                            active.putInt(recordKey)
+                                    .putDouble(amount)
+                                    .putInt(loanTermLeft);
+                            break;
+                        default:
+                            active.putInt(recordKey);
+                    }
+                    int end = active.position();
+                    active.putInt(start, end - start - 4);
+                    active.limit(end).position(start + 4); // Checksum exactly the body
+                    crc.reset();
+                    crc.update(active);
+                    active.limit(active.capacity());
+                    active.putInt((int) crc.getValue());
+                    return ++appendedSeq;
+                }
+                pending = appendedSeq;
+            }
+            awaitFlushed(pending); // Active buffer is full, write it out and try again
+        }
+    }
+
+    // Method to wait for a record to be committed when the policy requires it
+    // The wait ignores interrupts: the record is already buffered and will reach the file, so giving up here would
+    // make the bank skip a mutation the journal holds; the interrupt is restored once the record is written
+    private void commitIfSync(long seq) {
+        if (policy == FsyncPolicy.SYNC) {
+            awaitFlushed(seq, false);
+        }
+    }
+
+    // Method to make sure every record up to seq has been written
+    private void awaitFlushed(long seq) {
+        awaitFlushed(seq, true);
+    }
+
+    // Method to make sure every record up to seq has been written, giving up when interrupted if interruptible
+    // One thread at a time swaps the buffers and writes; records appended meanwhile go out with the next write
+    private void awaitFlushed(long seq, boolean interruptible) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                ByteBuffer toWrite;
+                long covers;
+                synchronized (this) {
+                    while (flushing && flushedSeq < seq) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            if (interruptible) {
+                                Thread.currentThread().interrupt();
+                                throw new IllegalStateException("Interrupted while committing the loan journal", e);
+                            }
+                            interrupted = true; // Keep waiting
+                        }
+                    }
+                    if (flushedSeq >= seq) {
+                        return;
+                    }
+                    if (failure != null) {
+                        // The record was in a buffer whose write failed, so it is lost: a later write must not
+                        // count it as written
+                        throw new UncheckedIOException("Loan journal failed, records can no longer be made durable",
+                                failure);
+                    }
+                    flushing = true;
+                    toWrite = active;
+                    active = spare;
+                    spare = null;
+                    covers = appendedSeq;
+                }
+                if (Thread.interrupted()) {
+                    interrupted = true; // A pending interrupt would close the channel in the middle of the write
+                }
+                boolean written = false;
+                try {
+                    toWrite.flip();
+                    while (toWrite.hasRemaining()) {
+                        channel.write(toWrite);
+                    }
+                    if (policy != FsyncPolicy.NEVER) {
+                        channel.force(false);
+                    }
+                    written = true;
+                } catch (IOException e) {
+                    synchronized (this) {
+                        failure = e;
+                    }
+                    throw new UncheckedIOException(e);
+                } finally {
+                    synchronized (this) {
+                        toWrite.clear();
+                        spare = toWrite;
+                        flushing = false;
+                        if (written) {
+                            flushedSeq = covers;
+                        }
+                        notifyAll();
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Method run by the background thread to commit buffered records every interval
+    // The thread stops at the first failed write, since the journal refuses every record after it
+    private void runFlusher(long commitIntervalMillis) {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(commitIntervalMillis);
+        while (true) {
+            LockSupport.parkNanos(this, intervalNanos);
+            if (closed) {
+                return; // close() commits what is left
+            }
+            try {
+                commit();
+            } catch (UncheckedIOException e) {
+                System.err.println("Loan journal commit failed, no further records will be written: "
+                        + e.getCause().getMessage());
+                return;
+            }
+        }
+    }
+
+    // Method to write the file header
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(FORMAT_VERSION);
+        header.flip();
+        channel.write(header, 0);
+        channel.force(true);
+    }
+
+    // Method to apply one decoded record to a bank
+    private static void apply(ByteBuffer body, XYZBank bank) {
+        byte type = body.get();
+        byte[] id = new byte[body.get() & 0xFF];
+        body.get(id);
+        String customerID = new String(id, StandardCharsets.UTF_8);
+        switch (type) {
+            case REGISTER:
+                bank.registerNewCustomer(customerID, body.getDouble());
+                break;
+            case UPDATE_INCOME:
+                bank.updateCustomerIncome(customerID, body.getDouble());
+                break;
+            case ADD_LOAN:
+                String recordID = IdCodec.recordId(body.getInt());
+                LoanType loanType = LoanType.fromCode(body.get());
+                double interestRate = body.getDouble();
+                double amountLeft = body.getDouble();
+                int loanTermLeft = body.getInt();
+                double overpayment = body.getDouble();
+                bank.addLoanToCustomer(customerID, loanType.create(recordID, interestRate, amountLeft, loanTermLeft, overpayment));
+                break;
+            case REMOVE_LOAN:
+                bank.removeLoanFromCustomer(customerID, IdCodec.recordId(body.getInt()));
+                break;
+            case UPDATE_LOAN:
+                String updatedRecordID = IdCodec.recordId(body.getInt());
+                double newAmountLeft = body.getDouble();
+                bank.updateLoan(customerID, updatedRecordID, newAmountLeft, body.getInt());
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+}
@@ -0,0 +1,26 @@
+// A loan to be added to a customer, used for batch ingestion through XYZBank.addLoans
+class LoanRequest {
+    // Member variables
+    private final String customerID; // ID of the customer receiving the loan
+    private final Loan loan; // Loan to add
+
+    // Constructor
+    public LoanRequest(String customerID, Loan loan) {
+        this.customerID = customerID;
+        this.loan = loan;
+    }
+
+    // Method to build a request directly from loan fields, using the loan type name as the factory key
+    public static LoanRequest of(String customerID, String loanType, String recordID, double interestRate,
+                                 double amountLeft, int loanTermLeft, double overpayment) {
+        LoanType type = LoanType.fromName(loanType);
+        if (type == null) {
+            throw new IllegalArgumentException("Unsupported loan type: " + loanType);
+        }
+        return new LoanRequest(customerID, type.create(recordID, interestRate, amountLeft, loanTermLeft, overpayment));
+    }
+
+    // Getter methods
+    public String getCustomerID() { return customerID; }
+    public Loan getLoan() { return loan; }
+}
@@ -0,0 +1,43 @@
+// Enum of the supported loan types, also acting as the factory for Loan objects through Loan.create
+enum LoanType {
+    AUTO("Auto"),
+    BUILDER("Builder"),
+    PERSONAL("Personal"),
+    MORTGAGE("Mortgage"),
+    OTHER("Other");
+
+    private static final LoanType[] BY_CODE = values(); // Shared copy of values(), which clones on every call
+
+    // Member variables
+    private final String displayName; // Name returned by Loan.getLoanType and shown to users
+
+    // Constructor
+    LoanType(String displayName) {
+        this.displayName = displayName;
+    }
+
+    // Getter method for displayName
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    // Method to look up a loan type by its compact code (its ordinal)
+    public static LoanType fromCode(int code) {
+        return BY_CODE[code];
+    }
+
+    // Method to look up a loan type by name (case-insensitive), returns null if the name is not a known type
+    public static LoanType fromName(String name) {
+        for (LoanType type : BY_CODE) {
+            if (type.displayName.equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    // Method to create a loan of this type without any console input, see Loan.create
+    public Loan create(String recordID, double interestRate, double amountLeft, int loanTermLeft, double overpayment) {
+        return Loan.create(this, recordID, interestRate, amountLeft, loanTermLeft, overpayment);
+    }
+}
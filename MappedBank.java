@@ -0,0 +1,282 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bank served from a MappedSnapshot, with the changes since the snapshot kept in an XYZBank overlay
+// - reads of a customer nobody changed go straight to the mapped file
+// - the first change to a snapshot customer copies that customer and its loans into the overlay (copy-on-write),
+//   from then on the overlay owns the customer; customers registered after the snapshot only live in the overlay
+// - a record ID is taken if the overlay has it, or if the snapshot has it and its owner was not copied yet
+// - the records cap is enforced here for snapshot and overlay together
+// writeSnapshot merges both into a new snapshot file, so the overlay does not have to grow forever
+class MappedBank {
+    private static final int STRIPES = 64; // Number of locks guarding the copies into the overlay, a power of two
+
+    // Member variables
+    private final MappedSnapshot snapshot;
+    private final XYZBank overlay = new XYZBank(IdCodec.RECORD_KEY_SPACE, false); // The cap is enforced here
+    private final AtomicLongArray copied; // Bitset over the snapshot customer rows already copied into the overlay
+    private final Object[] copyLocks = new Object[STRIPES];
+    private final AtomicInteger currentNumberOfRecords;
+    private final AtomicInteger newCustomers = new AtomicInteger(); // Customers registered after the snapshot
+
+    // Constructor
+    public MappedBank(MappedSnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.copied = new AtomicLongArray((snapshot.getCustomerCount() + 63) >>> 6);
+        this.currentNumberOfRecords = new AtomicInteger(snapshot.getLoanCount());
+        for (int i = 0; i < STRIPES; i++) {
+            copyLocks[i] = new Object();
+        }
+    }
+
+    // Method to map a snapshot file and serve a bank from it
+    public static MappedBank open(Path file) throws IOException {
+        return new MappedBank(MappedSnapshot.open(file));
+    }
+
+    // Getter methods
+    public MappedSnapshot getSnapshot() { return snapshot; }
+    public int getCurrentNumberOfRecords() { return currentNumberOfRecords.get(); }
+    public int getMaxRecordsAllowed() { return snapshot.getMaxRecordsAllowed(); }
+    public int getCustomerCount() { return snapshot.getCustomerCount() + newCustomers.get(); }
+
+    // Method to check if a snapshot customer row has been copied into the overlay
+    private boolean isCopied(int customer) {
+        return (copied.get(customer >>> 6) & 1L << customer) != 0;
+    }
+
+    // Method to copy a snapshot customer and its loans into the overlay, unless it is there already
+    // The copy is only marked done once complete, so until then readers keep using the snapshot row
+    private void copyToOverlay(int customer) {
+        if (isCopied(customer)) {
+            return;
+        }
+        synchronized (copyLocks[customer & (STRIPES - 1)]) {
+            if (isCopied(customer)) {
+                return;
+            }
+            String customerID = IdCodec.customerId(snapshot.getCustomerKey(customer));
+            overlay.registerNewCustomer(customerID, snapshot.getAnnualIncome(customer));
+            int first = snapshot.getFirstLoan(customer);
+            for (int loan = first; loan < first + snapshot.getLoanCount(customer); loan++) {
+                overlay.addLoanToCustomer(customerID, snapshot.getLoan(loan)); // A few loans, cheaper than a batch
+            }
+            copied.getAndUpdate(customer >>> 6, bits -> bits | 1L << customer);
+        }
+    }
+
+    // Method to find the snapshot row serving a customer, returns -1 if the overlay owns the customer or nobody does
+    private int snapshotRow(String customerID) {
+        int customer = snapshot.findCustomer(IdCodec.customerKey(customerID));
+        return customer >= 0 && !isCopied(customer) ? customer : -1;
+    }
+
+    // Method to find the customer owning a record in the snapshot, returns -1 if the snapshot does not decide
+    // (the record is not in the snapshot, or its owner has been copied and the overlay now knows the record)
+    private int snapshotOwner(int recordKey) {
+        int loan = recordKey == IdCodec.INVALID ? -1 : snapshot.findRecord(recordKey);
+        if (loan < 0) {
+            return -1;
+        }
+        int owner = snapshot.getOwner(loan);
+        return isCopied(owner) ? -1 : owner;
+    }
+
+    // Method to check if a customer is registered
+    public boolean hasCustomer(String customerID) {
+        return snapshot.findCustomer(IdCodec.customerKey(customerID)) >= 0 || overlay.hasCustomer(customerID);
+    }
+
+    // Method to check if a record ID is used by any customer
+    public boolean hasRecord(String recordID) {
+        return snapshotOwner(IdCodec.recordKey(recordID)) >= 0 || overlay.hasRecord(recordID);
+    }
+
+    // Method to register a new customer in the overlay, unless the snapshot has it already
+    public BankResult registerNewCustomer(String customerID, double income) {
+        if (snapshot.findCustomer(IdCodec.customerKey(customerID)) >= 0) {
+            return BankResult.CUSTOMER_EXISTS;
+        }
+        BankResult result = overlay.registerNewCustomer(customerID, income);
+        if (result.isSuccess()) {
+            newCustomers.incrementAndGet();
+        }
+        return result;
+    }
+
+    // Method to add a loan to a customer, copying a snapshot customer into the overlay first
+    public BankResult addLoanToCustomer(String customerID, Loan loan) {
+        int customer = snapshot.findCustomer(IdCodec.customerKey(customerID));
+        if (customer < 0 && !overlay.hasCustomer(customerID)) {
+            return BankResult.CUSTOMER_NOT_FOUND; // Same order of checks as XYZBank.addLoanToCustomer
+        }
+        if (!reserveRecord()) {
+            return BankResult.LIMIT_REACHED;
+        }
+        if (snapshotOwner(loan.getRecordKey()) >= 0) {
+            currentNumberOfRecords.decrementAndGet();
+            return BankResult.DUPLICATE_RECORD;
+        }
+        if (customer >= 0) {
+            copyToOverlay(customer);
+        }
+        BankResult result = overlay.addLoanToCustomer(customerID, loan);
+        if (!result.isSuccess()) {
+            currentNumberOfRecords.decrementAndGet(); // Give the slot back
+        }
+        return result;
+    }
+
+    // Method to reserve one slot under the records cap
+    private boolean reserveRecord() {
+        while (true) {
+            int current = currentNumberOfRecords.get();
+            if (current >= snapshot.getMaxRecordsAllowed()) {
+                return false;
+            }
+            if (currentNumberOfRecords.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Method to remove a loan from a customer, releasing its slot
+    // A snapshot customer is only copied if the record is really theirs
+    public BankResult removeLoanFromCustomer(String customerID, String recordID) {
+        BankResult rejected = prepareLoanChange(customerID, recordID);
+        if (rejected != null) {
+            return rejected;
+        }
+        BankResult result = overlay.removeLoanFromCustomer(customerID, recordID);
+        if (result.isSuccess()) {
+            currentNumberOfRecords.decrementAndGet();
+        }
+        return result;
+    }
+
+    // Method to change the amount and term left of one of a customer's loans
+    public BankResult updateLoan(String customerID, String recordID, double newAmountLeft, int newLoanTermLeft) {
+        BankResult rejected = prepareLoanChange(customerID, recordID);
+        return rejected != null ? rejected : overlay.updateLoan(customerID, recordID, newAmountLeft, newLoanTermLeft);
+    }
+
+    // Method to check a change to one of a snapshot customer's loans and copy the customer if it goes ahead
+    // Returns the rejection, or null if the overlay can now handle the change
+    private BankResult prepareLoanChange(String customerID, String recordID) {
+        int customer = snapshotRow(customerID);
+        if (customer < 0) {
+            return null; // The overlay owns the customer, or reports that it does not exist
+        }
+        if (snapshotOwner(IdCodec.recordKey(recordID)) != customer) {
+            return BankResult.RECORD_NOT_FOUND;
+        }
+        copyToOverlay(customer);
+        return null;
+    }
+
+    // Method to update a customer's income, copying a snapshot customer into the overlay first
+    public BankResult updateCustomerIncome(String customerID, double newIncome) {
+        int customer = snapshotRow(customerID);
+        if (customer >= 0) {
+            copyToOverlay(customer);
+        }
+        return overlay.updateCustomerIncome(customerID, newIncome);
+    }
+
+    // Method to capture a customer with all of their loans, returns null if the customer is not registered
+    public CustomerListing getCustomerListing(String customerID) {
+        int customer = snapshotRow(customerID);
+        return customer >= 0 ? snapshot.getCustomerListing(customer, policy()) : overlay.getCustomerListing(customerID);
+    }
+
+    // Method to print details of a specific customer to the given destination
+    public void printCustomerDetails(String customerID, Appendable out) {
+        int customer = snapshotRow(customerID);
+        if (customer >= 0) {
+            snapshot.printCustomerDetails(customer, policy(), out);
+        } else {
+            overlay.printCustomerDetails(customerID, out);
+        }
+    }
+
+    // Method to get the eligibility policy in force, the overlay's
+    private EligibilityPolicy policy() {
+        return overlay.getEligibilityEvaluator().getPolicy();
+    }
+
+    // Method to switch to a new eligibility policy for snapshot and overlay customers alike
+    public void setEligibilityPolicy(EligibilityPolicy policy) {
+        overlay.applyEligibilityPolicy(policy);
+    }
+
+    // Method to write snapshot and overlay merged into a new snapshot file, which a new MappedBank can then serve
+    // Like the customer listing this is not one atomic picture: each customer is captured as it is when reached
+    public void writeSnapshot(Path file) throws IOException {
+        MappedSnapshot.write(new MergedCustomers(), snapshot.getMaxRecordsAllowed(), file);
+    }
+
+    // Iterator over every customer in customer ID order: snapshot rows not copied, merged with the overlay customers
+    // A snapshot row found copied is read from the overlay there and then, as the overlay iterator may already be past it
+    // A customer copied while the iterator runs can then show up on both sides, so keys not above the last one are skipped
+    private final class MergedCustomers implements Iterator<CustomerListing> {
+        private final Iterator<CustomerListing> overlayCustomers = overlay.listCustomers(null, LoanFilter.ALL).iterator();
+        private CustomerListing nextOverlay; // Next overlay customer, or null when the overlay is done
+        private int nextRow; // Next snapshot row to look at
+        private int lastKey = -1; // Key of the last customer returned
+        private CustomerListing pending; // Next customer to return, or null at the end
+
+        // Constructor
+        MergedCustomers() {
+            nextOverlay = overlayCustomers.hasNext() ? overlayCustomers.next() : null;
+            pending = advance();
+        }
+
+        // Method to find the next customer to return, or null at the end
+        private CustomerListing advance() {
+            while (nextOverlay != null || nextRow < snapshot.getCustomerCount()) {
+                int overlayKey = nextOverlay != null ? IdCodec.customerKey(nextOverlay.getCustomerId()) : Integer.MAX_VALUE;
+                CustomerListing listing = null;
+                int key;
+                if (nextRow < snapshot.getCustomerCount() && snapshot.getCustomerKey(nextRow) < overlayKey) {
+                    int row = nextRow++;
+                    key = snapshot.getCustomerKey(row);
+                    if (!isCopied(row)) {
+                        listing = snapshot.getCustomerListing(row, policy());
+                    } else { // The overlay owns the customer now
+                        listing = overlay.getCustomerListing(IdCodec.customerId(key));
+                    }
+                } else {
+                    key = overlayKey;
+                    listing = nextOverlay;
+                    nextOverlay = overlayCustomers.hasNext() ? overlayCustomers.next() : null;
+                }
+                if (listing != null && key > lastKey) {
+                    lastKey = key;
+                    return listing;
+                }
+            }
+            return null;
+        }
+
+        // Method to check if there is another customer
+        @Override
+        public boolean hasNext() {
+            return pending != null;
+        }
+
+        // Method to get the next customer
+        @Override
+        public CustomerListing next() {
+            if (pending == null) {
+                throw new NoSuchElementException();
+            }
+            CustomerListing listing = pending;
+            pending = advance();
+            return listing;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// Read-only snapshot of a loan book in a binary file that is memory-mapped and queried in place
+// Opening only maps the file and checks its header, so it takes the same time for any book size; nothing is
+// deserialized, every query reads the fields it needs from the mapped pages and the OS pages them in on first use
+// File layout (little-endian), all rows of fixed size:
+// - header (64 bytes): magic, version, records limit, customer count, loan count, section offsets and file length
+// - customers (32 bytes each), sorted by customer key: key, first loan, loan count, annual income, total amount left
+// - loans (40 bytes each), grouped by customer and sorted by record key within a customer:
+//   record key, customer row, loan term left, loan type code, interest rate, amount left, overpayment
+// - record index: one int per possible record key (4 MB), holding the loan row + 1, or 0 for a free record ID
+// Customers are found by binary search, records with one read; the pages of the index that only hold free record
+// IDs are never written, so they stay holes in the file on most file systems
+class MappedSnapshot {
+    private static final int MAGIC = 0x584D4150; // "XMAP", marks the start of a mapped snapshot file
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int CUSTOMER_BYTES = 32;
+    private static final int LOAN_BYTES = 40;
+    private static final int INDEX_BYTES = 4 * IdCodec.RECORD_KEY_SPACE;
+
+    // Member variables
+    private final MappedByteBuffer buffer;
+    private final int maxRecordsAllowed;
+    private final int customerCount;
+    private final int loanCount;
+    private final int loansOffset;
+    private final int indexOffset;
+
+    // Constructor, use open to map a file
+    private MappedSnapshot(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        this.maxRecordsAllowed = buffer.getInt(8);
+        this.customerCount = buffer.getInt(12);
+        this.loanCount = buffer.getInt(16);
+        this.loansOffset = (int) buffer.getLong(32);
+        this.indexOffset = (int) buffer.getLong(40);
+    }
+
+    // Method to map a snapshot file and check its header
+    public static MappedSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a mapped bank snapshot: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size); // Stays valid after close
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a mapped bank snapshot: " + file);
+            }
+            long customers = buffer.getInt(12);
+            long loans = buffer.getInt(16);
+            long loansOffset = HEADER_BYTES + customers * CUSTOMER_BYTES;
+            long indexOffset = loansOffset + loans * LOAN_BYTES;
+            if (customers < 0 || loans < 0 || buffer.getLong(24) != HEADER_BYTES || buffer.getLong(32) != loansOffset
+                    || buffer.getLong(40) != indexOffset || buffer.getLong(48) != size
+                    || indexOffset + INDEX_BYTES != size) {
+                throw new IOException("Corrupt mapped bank snapshot: " + file);
+            }
+            return new MappedSnapshot(buffer);
+        }
+    }
+
+    // Method to write a snapshot of every customer and loan of a bank
+    // Customers are captured one at a time under their locks, like the customer listing
+    public static void write(XYZBank bank, Path file) throws IOException {
+        write(bank.listCustomers(null, LoanFilter.ALL).iterator(), bank.getMaxRecordsAllowed(), file);
+    }
+
+    // Method to write a snapshot from customers in customer ID order, each with all of its loans in record ID order
+    // The file is written under a temporary name, forced and then renamed over the old one, so readers never see half a file
+    public static void write(Iterator<CustomerListing> customers, int maxRecords, Path file) throws IOException {
+        List<CustomerListing> listings = new ArrayList<>();
+        long loans = 0;
+        while (customers.hasNext()) {
+            CustomerListing listing = customers.next();
+            listings.add(listing);
+            loans += listing.getLoans().size();
+        }
+        long loansOffset = HEADER_BYTES + (long) listings.size() * CUSTOMER_BYTES;
+        long indexOffset = loansOffset + loans * LOAN_BYTES;
+        long size = indexOffset + INDEX_BYTES;
+        if (size > Integer.MAX_VALUE) { // Far above the key spaces of IdCodec
+            throw new IOException("Book too large for one mapped snapshot: " + size + " bytes");
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(0, MAGIC);
+            out.putInt(4, VERSION);
+            out.putInt(8, maxRecords);
+            out.putInt(12, listings.size());
+            out.putInt(16, (int) loans);
+            out.putLong(24, HEADER_BYTES);
+            out.putLong(32, loansOffset);
+            out.putLong(40, indexOffset);
+            out.putLong(48, size);
+            int loan = 0;
+            for (int c = 0; c < listings.size(); c++) {
+                CustomerListing listing = listings.get(c);
+                int row = HEADER_BYTES + c * CUSTOMER_BYTES;
+                out.putInt(row, IdCodec.customerKey(listing.getCustomerId()));
+                out.putInt(row + 4, loan);
+                out.putInt(row + 8, listing.getLoans().size());
+                out.putDouble(row + 16, listing.getAnnualIncome());
+                out.putDouble(row + 24, listing.getTotalAmountLeft());
+                for (Loan each : listing.getLoans()) {
+                    int loanRow = (int) loansOffset + loan * LOAN_BYTES;
+                    out.putInt(loanRow, each.getRecordKey());
+                    out.putInt(loanRow + 4, c);
+                    out.putInt(loanRow + 8, each.getLoanTermLeft());
+                    out.putInt(loanRow + 12, each.getType().ordinal());
+                    out.putDouble(loanRow + 16, each.getInterestRate());
+                    out.putDouble(loanRow + 24, each.getAmountLeft());
+                    out.putDouble(loanRow + 32, each.getOverpayment());
+                    out.putInt((int) indexOffset + each.getRecordKey() * 4, loan + 1);
+                    loan++;
+                }
+            }
+            out.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Getter methods for the header
+    public int getMaxRecordsAllowed() { return maxRecordsAllowed; }
+    public int getCustomerCount() { return customerCount; }
+    public int getLoanCount() { return loanCount; }
+
+    // Method to find the row of a customer key, returns -1 if the snapshot has no such customer
+    public int findCustomer(int customerKey) {
+        int low = 0;
+        int high = customerCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int key = buffer.getInt(HEADER_BYTES + mid * CUSTOMER_BYTES);
+            if (key < customerKey) {
+                low = mid + 1;
+            } else if (key > customerKey) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // Method to find the loan row of a record key, returns -1 if the snapshot has no such record
+    public int findRecord(int recordKey) {
+        if (recordKey < 0 || recordKey >= IdCodec.RECORD_KEY_SPACE) {
+            return -1;
+        }
+        return buffer.getInt(indexOffset + recordKey * 4) - 1;
+    }
+
+    // Getter methods for the fields of a customer row
+    public int getCustomerKey(int customer) { return buffer.getInt(HEADER_BYTES + customer * CUSTOMER_BYTES); }
+    public int getFirstLoan(int customer) { return buffer.getInt(HEADER_BYTES + customer * CUSTOMER_BYTES + 4); }
+    public int getLoanCount(int customer) { return buffer.getInt(HEADER_BYTES + customer * CUSTOMER_BYTES + 8); }
+    public double getAnnualIncome(int customer) { return buffer.getDouble(HEADER_BYTES + customer * CUSTOMER_BYTES + 16); }
+    public double getTotalAmountLeft(int customer) { return buffer.getDouble(HEADER_BYTES + customer * CUSTOMER_BYTES + 24); }
+
+    // Getter methods for the fields of a loan row
+    public int getRecordKey(int loan) { return buffer.getInt(loansOffset + loan * LOAN_BYTES); }
+    public int getOwner(int loan) { return buffer.getInt(loansOffset + loan * LOAN_BYTES + 4); } // Customer row
+    public int getLoanTermLeft(int loan) { return buffer.getInt(loansOffset + loan * LOAN_BYTES + 8); }
+    public LoanType getLoanType(int loan) { return LoanType.fromCode(buffer.getInt(loansOffset + loan * LOAN_BYTES + 12)); }
+    public double getInterestRate(int loan) { return buffer.getDouble(loansOffset + loan * LOAN_BYTES + 16); }
+    public double getAmountLeft(int loan) { return buffer.getDouble(loansOffset + loan * LOAN_BYTES + 24); }
+    public double getOverpayment(int loan) { return buffer.getDouble(loansOffset + loan * LOAN_BYTES + 32); }
+
+    // Method to create a Loan object from a loan row
+    public Loan getLoan(int loan) {
+        return getLoanType(loan).create(IdCodec.recordId(getRecordKey(loan)), getInterestRate(loan), getAmountLeft(loan),
+                getLoanTermLeft(loan), getOverpayment(loan));
+    }
+
+    // Method to capture a customer row with all of its loans, judging eligibility under a policy
+    public CustomerListing getCustomerListing(int customer, EligibilityPolicy policy) {
+        int first = getFirstLoan(customer);
+        int count = getLoanCount(customer);
+        List<Loan> loans = new ArrayList<>(count);
+        for (int loan = first; loan < first + count; loan++) {
+            loans.add(getLoan(loan));
+        }
+        double income = getAnnualIncome(customer);
+        double total = getTotalAmountLeft(customer);
+        return new CustomerListing(IdCodec.customerId(getCustomerKey(customer)), income, total,
+                policy.isEligible(income, total), loans);
+    }
+
+    // Method to print a customer row like Customer.printCustomerDetails, reading the loans in place
+    public void printCustomerDetails(int customer, EligibilityPolicy policy, Appendable out) {
+        ReportRenderer renderer = new ReportRenderer(out, ReportFormat.TEXT);
+        renderer.beginStatement(IdCodec.customerId(getCustomerKey(customer)),
+                policy.isEligible(getAnnualIncome(customer), getTotalAmountLeft(customer)));
+        int first = getFirstLoan(customer);
+        for (int loan = first; loan < first + getLoanCount(customer); loan++) {
+            renderer.statementLoan(getRecordKey(loan), getLoanType(loan).getDisplayName(),
+                    getInterestRate(loan), getAmountLeft(loan), getLoanTermLeft(loan));
+        }
+        renderer.endStatement();
+        renderer.flush();
+    }
+}
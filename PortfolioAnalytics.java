@@ -0,0 +1,111 @@
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Portfolio-wide aggregate queries, computed as parallel reductions
+// Each worker fills its own Accumulator and the partial results are merged, so no shared state is contended
+class PortfolioAnalytics {
+    private static final int CHUNK_ROWS = 1 << 16; // Rows per parallel task when summarising a ColumnarLoanStore
+
+    // Constructor, the class only has static methods
+    private PortfolioAnalytics() {
+    }
+
+    // Method to summarise a live bank, walking customers in parallel
+    // Each customer is read under its own lock, so the figures for one customer are always consistent
+    public static PortfolioSummary summarize(XYZBank bank) {
+        return bank.getCustomers().parallelStream()
+                .collect(Accumulator::new, Accumulator::addCustomer, Accumulator::merge)
+                .toSummary();
+    }
+
+    // Method to summarise several banks as one book, such as the shards of a ShardedBank
+    public static PortfolioSummary summarize(List<XYZBank> banks) {
+        return banks.stream().flatMap(bank -> bank.getCustomers().stream()).parallel()
+                .collect(Accumulator::new, Accumulator::addCustomer, Accumulator::merge)
+                .toSummary();
+    }
+
+    // Method to summarise a columnar store, walking row chunks in parallel
+    // The store holds no policy, so pass the one of the bank it was copied from to get the same figures as summarize(bank)
+    public static PortfolioSummary summarize(ColumnarLoanStore store, EligibilityPolicy policy) {
+        int size = store.size();
+        byte[] types = store.typeCodeColumn();
+        double[] rates = store.interestRateColumn();
+        double[] balances = store.balanceColumn();
+        int[] terms = store.termColumn();
+        int chunks = (size + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        Accumulator loans = IntStream.range(0, chunks).parallel()
+                .collect(Accumulator::new, (accumulator, chunk) -> {
+                    int end = Math.min(size, (chunk + 1) * CHUNK_ROWS);
+                    for (int row = chunk * CHUNK_ROWS; row < end; row++) {
+                        accumulator.addLoan(types[row], rates[row], balances[row], terms[row]);
+                    }
+                }, Accumulator::merge);
+
+        // Eligibility needs each customer's total balance; summing by ordinal is one cheap sequential pass
+        int customerCount = store.customerCount();
+        double[] owed = new double[customerCount];
+        int[] owners = store.customerOrdinalColumn();
+        for (int row = 0; row < size; row++) {
+            owed[owners[row]] += balances[row];
+        }
+        double[] incomes = store.incomeColumn();
+        loans.customerCount = customerCount;
+        loans.ineligibleCustomerCount = IntStream.range(0, customerCount).parallel()
+                .filter(ordinal -> !policy.isEligible(incomes[ordinal], owed[ordinal]))
+                .count();
+        return loans.toSummary();
+    }
+
+    // Mutable partial result of one worker
+    private static final class Accumulator {
+        private long customerCount;
+        private long ineligibleCustomerCount;
+        private final long[] loanCounts = new long[LoanType.values().length];
+        private final double[] amountLeftTotals = new double[LoanType.values().length];
+        private final double[] rateWeightedAmounts = new double[LoanType.values().length];
+        private final long[] termDistribution = new long[PortfolioSummary.MAX_TERM_BUCKET + 1];
+
+        // Method to add one customer and all of its loans
+        void addCustomer(Customer customer) {
+            synchronized (customer) {
+                customerCount++;
+                if (!customer.isEligible()) {
+                    ineligibleCustomerCount++;
+                }
+                for (Loan loan : customer.getCreditRecords()) {
+                    addLoan(loan.getType().ordinal(), loan.getInterestRate(),
+                            loan.getAmountLeft(), loan.getLoanTermLeft());
+                }
+            }
+        }
+
+        // Method to add one loan
+        void addLoan(int typeCode, double interestRate, double amountLeft, int loanTermLeft) {
+            loanCounts[typeCode]++;
+            amountLeftTotals[typeCode] += amountLeft;
+            rateWeightedAmounts[typeCode] += interestRate * amountLeft;
+            termDistribution[Math.max(0, Math.min(loanTermLeft, PortfolioSummary.MAX_TERM_BUCKET))]++;
+        }
+
+        // Method to fold another worker's partial result into this one
+        void merge(Accumulator other) {
+            customerCount += other.customerCount;
+            ineligibleCustomerCount += other.ineligibleCustomerCount;
+            for (int i = 0; i < loanCounts.length; i++) {
+                loanCounts[i] += other.loanCounts[i];
+                amountLeftTotals[i] += other.amountLeftTotals[i];
+                rateWeightedAmounts[i] += other.rateWeightedAmounts[i];
+            }
+            for (int i = 0; i < termDistribution.length; i++) {
+                termDistribution[i] += other.termDistribution[i];
+            }
+        }
+
+        // Method to freeze the accumulated figures
+        PortfolioSummary toSummary() {
+            return new PortfolioSummary(customerCount, ineligibleCustomerCount, loanCounts, amountLeftTotals,
+                    rateWeightedAmounts, termDistribution);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.Arrays;
+
+// Immutable result of a portfolio-wide aggregation, see PortfolioAnalytics
+class PortfolioSummary {
+    // Loans with this many years or more left share the last bucket of the term distribution
+    static final int MAX_TERM_BUCKET = 50;
+
+    // Member variables, per-type arrays are indexed by LoanType code
+    private final long customerCount;
+    private final long ineligibleCustomerCount; // Customers failing checkEligibility
+    private final long[] loanCounts;
+    private final double[] amountLeftTotals;
+    private final double[] rateWeightedAmounts; // Sum of interestRate * amountLeft, for the weighted average rate
+    private final long[] termDistribution; // Number of loans by years left, 0 to MAX_TERM_BUCKET
+
+    // Constructor
+    PortfolioSummary(long customerCount, long ineligibleCustomerCount, long[] loanCounts, double[] amountLeftTotals,
+                     double[] rateWeightedAmounts, long[] termDistribution) {
+        this.customerCount = customerCount;
+        this.ineligibleCustomerCount = ineligibleCustomerCount;
+        this.loanCounts = loanCounts;
+        this.amountLeftTotals = amountLeftTotals;
+        this.rateWeightedAmounts = rateWeightedAmounts;
+        this.termDistribution = termDistribution;
+    }
+
+    // Getter methods for the customer figures
+    public long getCustomerCount() { return customerCount; }
+    public long getIneligibleCustomerCount() { return ineligibleCustomerCount; }
+
+    // Method to get the number of loans in the book
+    public long getLoanCount() {
+        return Arrays.stream(loanCounts).sum();
+    }
+
+    // Method to get the number of loans of one type
+    public long getLoanCount(LoanType type) {
+        return loanCounts[type.ordinal()];
+    }
+
+    // Method to get the total amount left over all loans
+    public double getTotalAmountLeft() {
+        return Arrays.stream(amountLeftTotals).sum();
+    }
+
+    // Method to get the total amount left over the loans of one type
+    public double getTotalAmountLeft(LoanType type) {
+        return amountLeftTotals[type.ordinal()];
+    }
+
+    // Method to get the average amount left per loan, 0 for an empty book
+    public double getAverageAmountLeft() {
+        long count = getLoanCount();
+        return count == 0 ? 0 : getTotalAmountLeft() / count;
+    }
+
+    // Method to get the average amount left per loan of one type, 0 if there are none
+    public double getAverageAmountLeft(LoanType type) {
+        long count = loanCounts[type.ordinal()];
+        return count == 0 ? 0 : amountLeftTotals[type.ordinal()] / count;
+    }
+
+    // Method to get the interest rate averaged over all loans, weighted by amount left
+    public double getWeightedAverageInterestRate() {
+        double total = getTotalAmountLeft();
+        return total == 0 ? 0 : Arrays.stream(rateWeightedAmounts).sum() / total;
+    }
+
+    // Method to get the interest rate averaged over the loans of one type, weighted by amount left
+    public double getWeightedAverageInterestRate(LoanType type) {
+        double total = amountLeftTotals[type.ordinal()];
+        return total == 0 ? 0 : rateWeightedAmounts[type.ordinal()] / total;
+    }
+
+    // Method to get the number of loans with the given number of years left (the last bucket includes longer terms)
+    public long getLoansWithTermLeft(int years) {
+        return termDistribution[Math.max(0, Math.min(years, MAX_TERM_BUCKET))];
+    }
+
+    // Method to get a copy of the term distribution, indexed by years left
+    public long[] getTermDistribution() {
+        return termDistribution.clone();
+    }
+}
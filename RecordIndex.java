@@ -0,0 +1,230 @@
+import java.util.Arrays;
+
+// Bank-wide index from record ID to the owning customer and loan
+// Record IDs are always 6 digits, so they are stored as primitive int keys in open-addressing tables
+// The index is split into lock stripes chosen by record ID, so threads working on different records rarely contend
+class RecordIndex {
+    private static final int EMPTY = IdCodec.INVALID; // Marker for an unused slot (record keys are never negative)
+    private static final int MIN_CAPACITY = 16; // Smallest table size, always a power of two
+    private static final int STRIPES = 64; // Number of independently locked segments, always a power of two
+
+    // Member variables
+    private final Segment[] segments = new Segment[STRIPES]; // One open-addressing table per stripe
+
+    // Constructor
+    public RecordIndex() {
+        for (int i = 0; i < STRIPES; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    // Getter method for the number of indexed records
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    // Method to grow the tables once so that the given number of extra records fit without rehashing
+    public void ensureCapacity(int extraRecords) {
+        int perSegment = extraRecords / STRIPES + 1; // Record IDs spread evenly over the stripes
+        for (Segment segment : segments) {
+            segment.ensureCapacity(perSegment);
+        }
+    }
+
+    // Method to check if a record ID is already in use
+    public boolean contains(String recordID) {
+        int key = IdCodec.recordKey(recordID);
+        return key != EMPTY && segmentFor(key).contains(key);
+    }
+
+    // Method to get the loan stored under a record ID, or null if there is none
+    public Loan getLoan(String recordID) {
+        int key = IdCodec.recordKey(recordID);
+        return key != EMPTY ? segmentFor(key).getLoan(key) : null;
+    }
+
+    // Method to get the loan stored under a record key, or null if there is none
+    public Loan getLoan(int recordKey) {
+        return recordKey >= 0 ? segmentFor(recordKey).getLoan(recordKey) : null;
+    }
+
+    // Method to get the customer owning a record ID, or null if there is none
+    public Customer getOwner(String recordID) {
+        int key = IdCodec.recordKey(recordID);
+        return key != EMPTY ? segmentFor(key).getOwner(key) : null;
+    }
+
+    // Method to get the customer owning a record key, or null if there is none
+    public Customer getOwner(int recordKey) {
+        return recordKey >= 0 ? segmentFor(recordKey).getOwner(recordKey) : null;
+    }
+
+    // Method to index a loan, returns false if the record ID is already in use
+    // The check and the insert happen atomically, so two threads can never claim the same record ID
+    public boolean put(Customer owner, Loan loan) {
+        int key = loan.getRecordKey();
+        return segmentFor(key).put(key, owner, loan);
+    }
+
+    // Method to remove a record ID from the index, returns the removed loan or null
+    public Loan remove(String recordID) {
+        int key = IdCodec.recordKey(recordID);
+        return key != EMPTY ? segmentFor(key).remove(key) : null;
+    }
+
+    // Method to remove a record key from the index, returns the removed loan or null
+    public Loan remove(int recordKey) {
+        return recordKey >= 0 ? segmentFor(recordKey).remove(recordKey) : null;
+    }
+
+    // Method to pick the stripe for a key
+    private Segment segmentFor(int key) {
+        return segments[(mix(key) >>> 26) & (STRIPES - 1)]; // High bits, the low bits choose the slot inside the segment
+    }
+
+    // Method to spread sequential record IDs across the table
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // One lock stripe: an open-addressing table guarded by its own monitor
+    private static final class Segment {
+        // Member variables
+        private int[] keys; // Record IDs stored in each slot
+        private Customer[] owners; // Customer owning the loan in each slot
+        private Loan[] loans; // Loan stored in each slot
+        private int size; // Number of records currently indexed
+
+        // Constructor
+        Segment() {
+            allocate(MIN_CAPACITY);
+        }
+
+        // Getter method for the number of records in this segment
+        synchronized int size() {
+            return size;
+        }
+
+        // Method to grow the table once so that the given number of extra records fit without rehashing
+        synchronized void ensureCapacity(int extraRecords) {
+            long needed = (long) size + extraRecords;
+            int capacity = keys.length;
+            while (needed * 4 > (long) capacity * 3) {
+                capacity *= 2;
+            }
+            if (capacity != keys.length) {
+                allocate(capacity);
+            }
+        }
+
+        // Method to check if a key is present
+        synchronized boolean contains(int key) {
+            return slotOf(key) >= 0;
+        }
+
+        // Method to get the loan stored under a key, or null if there is none
+        synchronized Loan getLoan(int key) {
+            int slot = slotOf(key);
+            return slot >= 0 ? loans[slot] : null;
+        }
+
+        // Method to get the customer stored under a key, or null if there is none
+        synchronized Customer getOwner(int key) {
+            int slot = slotOf(key);
+            return slot >= 0 ? owners[slot] : null;
+        }
+
+        // Method to insert a key, returns false if it is already present
+        synchronized boolean put(int key, Customer owner, Loan loan) {
+            if ((size + 1) * 4 > keys.length * 3) { // Keep the load factor below 0.75
+                allocate(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (keys[slot] != EMPTY) {
+                if (keys[slot] == key) {
+                    return false; // Duplicate record ID
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            owners[slot] = owner;
+            loans[slot] = loan;
+            size++;
+            return true;
+        }
+
+        // Method to remove a key, returns the removed loan or null
+        synchronized Loan remove(int key) {
+            int slot = slotOf(key);
+            if (slot < 0) {
+                return null;
+            }
+            Loan removed = loans[slot];
+            // Shift later entries of the probe chain back so lookups never hit a hole
+            int mask = keys.length - 1;
+            int hole = slot;
+            int next = (hole + 1) & mask;
+            while (keys[next] != EMPTY) {
+                int home = mix(keys[next]) & mask;
+                // Move the entry if its home slot is not cyclically between the hole and its current slot
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    owners[hole] = owners[next];
+                    loans[hole] = loans[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            keys[hole] = EMPTY;
+            owners[hole] = null;
+            loans[hole] = null;
+            size--;
+            return removed;
+        }
+
+        // Method to find the slot holding a key, returns -1 if the key is not present
+        private int slotOf(int key) {
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (keys[slot] != EMPTY) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        // Method to (re)allocate the table and reinsert existing entries
+        private void allocate(int capacity) {
+            int[] oldKeys = keys;
+            Customer[] oldOwners = owners;
+            Loan[] oldLoans = loans;
+            keys = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+            owners = new Customer[capacity];
+            loans = new Loan[capacity];
+            if (oldKeys == null) {
+                return;
+            }
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = mix(oldKeys[i]) & mask;
+                    while (keys[slot] != EMPTY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    owners[slot] = oldOwners[i];
+                    loans[slot] = oldLoans[i];
+                }
+            }
+        }
+    }
+}
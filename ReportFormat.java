@@ -0,0 +1,6 @@
+// Enum of the layouts ReportRenderer writes reports in
+enum ReportFormat {
+    TEXT, // Space padded tables for the console, as printed by the menu
+    CSV, // Comma separated, one line per loan with a header line
+    JSON // One JSON document per report
+}
@@ -0,0 +1,6 @@
+// Enum controlling how much XYZBank reports after each operation
+enum ReportMode {
+    QUIET, // No output at all, the default for programmatic callers
+    SUMMARY, // Status messages plus the record counts after each new loan
+    FULL // Status messages plus every customer's details after each new loan (the original menu behaviour)
+}
@@ -0,0 +1,415 @@
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+// Renderer of customer statements and bank reports as TEXT, CSV or JSON
+// Rows are formatted straight into one reusable StringBuilder, which goes to the destination in chunks of about
+// 64K characters: no format string is parsed, no double is boxed and the destination sees one write per chunk
+// TEXT prints amounts and rates with two decimals exactly like %.2f does (half up on the shortest decimal form of the
+// double), always with a '.' whatever the default locale; CSV and JSON are read by programs, so they carry the values
+// at full precision, as the shortest decimal form that reads back to the same double
+// A customer without loans is one row with empty loan fields in CSV, in a report and in a statement alike
+// Bank reports: beginReport or beginPage, customer for each customer, endReport
+// Statements (one customer, as Customer.printCustomerDetails prints it): beginStatement, statementLoan, endStatement
+// Call flush at the end, the renderer does not close its destination
+class ReportRenderer implements Flushable {
+    private static final int CHUNK = 1 << 16; // Characters buffered before they are written out
+    private static final double FAST_LIMIT = 1e10; // Below this, two decimals are computed without a Formatter
+    private static final String NEW_LINE = System.lineSeparator();
+    private static final String REPORT_SEPARATOR = "================================";
+    private static final String CUSTOMER_SEPARATOR = "--------------------------------";
+    private static final String REPORT_HEADER = String.format("%-10s %-15s %-10s %-10s %-8s",
+            "RecordID", "LoanType", "IntRate", "AmountLeft", "TimeLeft");
+    private static final String STATEMENT_HEADER = String.format("%-12s %-15s %-12s %-15s %-18s",
+            "Record ID", "Loan Type", "Interest Rate", "Amount Left", "Loan Term Left");
+    private static final String CSV_HEADER = "CustomerID,Eligible,RecordID,LoanType,InterestRate,AmountLeft,LoanTermLeft";
+
+    // Member variables
+    private final ReportFormat format;
+    private final Appendable out; // Destination, or null when writing to a channel
+    private final WritableByteChannel channel; // Destination, or null when writing to an Appendable
+    private final StringBuilder text = new StringBuilder(256); // Grows up to about one chunk and is then reused
+    private char[] chars; // Copy of the text for a Writer, as large as the text has grown
+    private CharsetEncoder encoder; // UTF-8 encoder for a channel, created on the first chunk
+    private ByteBuffer bytes; // Encoded chunk for a channel
+    private String statementCustomer; // Customer of the statement being written, for the CSV rows
+    private boolean statementEligible;
+    private boolean firstItem; // No customer, or no loan of the current customer, written yet (for JSON commas)
+
+    // Constructor for any Appendable destination, such as a Writer, a PrintStream or a StringBuilder
+    public ReportRenderer(Appendable out, ReportFormat format) {
+        this.out = out;
+        this.channel = null;
+        this.format = format;
+    }
+
+    // Constructor for a channel such as a FileChannel, written as UTF-8
+    public ReportRenderer(WritableByteChannel channel, ReportFormat format) {
+        this.out = null;
+        this.channel = channel;
+        this.format = format;
+    }
+
+    // Method to start a report of the whole bank with its record counts
+    public void beginReport(int maxRecords, int registeredRecords) {
+        switch (format) {
+            case TEXT:
+                text.append("Maximum number of Records: ").append(maxRecords).append(NEW_LINE);
+                text.append("Registered records: ").append(registeredRecords).append(NEW_LINE);
+                text.append(REPORT_SEPARATOR).append(NEW_LINE);
+                break;
+            case CSV:
+                text.append(CSV_HEADER).append(NEW_LINE);
+                break;
+            default:
+                text.append("{\"maxRecords\":").append(maxRecords);
+                text.append(",\"registeredRecords\":").append(registeredRecords).append(",\"customers\":[");
+                break;
+        }
+        firstItem = true;
+    }
+
+    // Method to start a report of some customers, without record counts
+    public void beginPage() {
+        if (format == ReportFormat.CSV) {
+            text.append(CSV_HEADER).append(NEW_LINE);
+        } else if (format == ReportFormat.JSON) {
+            text.append("{\"customers\":[");
+        }
+        firstItem = true;
+    }
+
+    // Method to write one customer of a report with its loans
+    public void customer(CustomerListing listing) {
+        customer(listing.getCustomerId(), listing.isEligible(), listing.getLoans());
+    }
+
+    // Method to write one customer of a report with its loans, in the order given
+    // The loans are only read during the call, so a caller may pass a live customer's loans while holding its lock
+    public void customer(String customerID, boolean eligible, List<Loan> loans) {
+        switch (format) {
+            case TEXT:
+                text.append("CustomerID: ").append(customerID).append(NEW_LINE);
+                // Check if customer has any loans before attempting to print them
+                if (loans.isEmpty()) {
+                    text.append("No loans found for this customer.").append(NEW_LINE);
+                } else {
+                    text.append(REPORT_HEADER).append(NEW_LINE);
+                    for (Loan loan : loans) {
+                        int start = text.length();
+                        appendRecordId(loan.getRecordKey());
+                        pad(start, 10).append(' ');
+                        start = text.length();
+                        pad(text.append(loan.getLoanType()), start, 15).append(' ');
+                        start = text.length();
+                        appendDecimal(loan.getInterestRate());
+                        pad(start, 10).append(' ');
+                        start = text.length();
+                        appendDecimal(loan.getAmountLeft());
+                        pad(start, 10).append(' ');
+                        start = text.length();
+                        text.append(loan.getLoanTermLeft());
+                        pad(start, 8).append(NEW_LINE);
+                    }
+                }
+                text.append(CUSTOMER_SEPARATOR).append(NEW_LINE);
+                break;
+            case CSV:
+                if (loans.isEmpty()) {
+                    appendCsvWithoutLoans(customerID, eligible);
+                }
+                for (Loan loan : loans) {
+                    appendCsvRow(customerID, eligible, loan.getRecordKey(), loan.getLoanType(),
+                            loan.getInterestRate(), loan.getAmountLeft(), loan.getLoanTermLeft());
+                }
+                break;
+            default:
+                text.append(firstItem ? "" : ",").append(NEW_LINE);
+                beginJsonCustomer(customerID, eligible);
+                for (Loan loan : loans) {
+                    appendJsonLoan(loan.getRecordKey(), loan.getLoanType(), loan.getInterestRate(), loan.getAmountLeft(),
+                            loan.getLoanTermLeft());
+                }
+                text.append("]}");
+                firstItem = false;
+                break;
+        }
+        flushIfFull();
+    }
+
+    // Method to end a report started with beginReport or beginPage
+    public void endReport() {
+        if (format == ReportFormat.JSON) {
+            text.append(NEW_LINE).append("]}").append(NEW_LINE);
+        }
+    }
+
+    // Method to start a statement of one customer
+    public void beginStatement(String customerID, boolean eligible) {
+        switch (format) {
+            case TEXT:
+                text.append("Maximum number of Records: ").append(NEW_LINE);
+                text.append("Registered records: ").append(NEW_LINE);
+                text.append(REPORT_SEPARATOR).append(NEW_LINE);
+                text.append("Eligible to arrange new loans - ").append(eligible).append(NEW_LINE);
+                text.append("CustomerID: ").append(customerID).append(NEW_LINE);
+                text.append(STATEMENT_HEADER).append(NEW_LINE);
+                break;
+            case CSV:
+                text.append(CSV_HEADER).append(NEW_LINE);
+                statementCustomer = customerID;
+                statementEligible = eligible;
+                firstItem = true;
+                break;
+            default:
+                beginJsonCustomer(customerID, eligible);
+                break;
+        }
+    }
+
+    // Method to write one loan of the statement started with beginStatement
+    public void statementLoan(int recordKey, String loanType, double interestRate, double amountLeft, int loanTermLeft) {
+        switch (format) {
+            case TEXT:
+                int start = text.length();
+                appendRecordId(recordKey);
+                pad(start, 12).append(' ');
+                start = text.length();
+                pad(text.append(loanType), start, 15).append(' ');
+                start = text.length();
+                appendDecimal(interestRate);
+                pad(start, 12).append(" £");
+                start = text.length();
+                appendDecimal(amountLeft);
+                pad(start, 15).append(' ');
+                start = text.length();
+                text.append(loanTermLeft);
+                pad(start, 18).append(NEW_LINE);
+                break;
+            case CSV:
+                appendCsvRow(statementCustomer, statementEligible, recordKey, loanType, interestRate, amountLeft,
+                        loanTermLeft);
+                firstItem = false;
+                break;
+            default:
+                appendJsonLoan(recordKey, loanType, interestRate, amountLeft, loanTermLeft);
+                break;
+        }
+        flushIfFull();
+    }
+
+    // Method to end the statement started with beginStatement
+    public void endStatement() {
+        if (format == ReportFormat.JSON) {
+            text.append("]}").append(NEW_LINE);
+        } else if (format == ReportFormat.CSV && firstItem) {
+            appendCsvWithoutLoans(statementCustomer, statementEligible); // Same row as a report writes for the customer
+        }
+        statementCustomer = null;
+    }
+
+    // Method to write the CSV line of a customer without loans, with the loan fields left empty
+    private void appendCsvWithoutLoans(String customerID, boolean eligible) {
+        appendCsv(customerID).append(',').append(eligible).append(",,,,,").append(NEW_LINE);
+    }
+
+    // Method to write a CSV line for one loan
+    private void appendCsvRow(String customerID, boolean eligible, int recordKey, String loanType, double interestRate,
+                              double amountLeft, int loanTermLeft) {
+        appendCsv(customerID).append(',').append(eligible).append(',');
+        appendRecordId(recordKey);
+        appendCsv(text.append(','), loanType).append(',').append(interestRate).append(',').append(amountLeft);
+        text.append(',').append(loanTermLeft).append(NEW_LINE);
+    }
+
+    // Method to write the start of a JSON customer object, up to the opening bracket of its loans
+    private void beginJsonCustomer(String customerID, boolean eligible) {
+        text.append("{\"customerId\":");
+        appendJsonString(customerID);
+        text.append(",\"eligible\":").append(eligible).append(",\"loans\":[");
+        firstItem = true;
+    }
+
+    // Method to write one JSON loan object
+    private void appendJsonLoan(int recordKey, String loanType, double interestRate, double amountLeft, int loanTermLeft) {
+        text.append(firstItem ? "{\"recordId\":\"" : ",{\"recordId\":\"");
+        appendRecordId(recordKey);
+        text.append("\",\"loanType\":");
+        appendJsonString(loanType);
+        text.append(",\"interestRate\":");
+        appendJsonNumber(interestRate);
+        text.append(",\"amountLeft\":");
+        appendJsonNumber(amountLeft);
+        text.append(",\"loanTermLeft\":").append(loanTermLeft).append('}');
+        firstItem = false;
+    }
+
+    // Method to write a number in JSON at full precision; JSON has no NaN or infinities, so those become null
+    private void appendJsonNumber(double value) {
+        if (Double.isFinite(value)) {
+            text.append(value); // Like Double.toString, whose exponent form such as 1.0E10 is valid JSON
+        } else {
+            text.append("null");
+        }
+    }
+
+    // Method to write a JSON string with quotes, escaping what JSON requires
+    private void appendJsonString(String value) {
+        text.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                text.append('\\').append(c);
+            } else if (c < ' ') {
+                text.append(String.format("\\u%04x", (int) c));
+            } else {
+                text.append(c);
+            }
+        }
+        text.append('"');
+    }
+
+    // Method to write a CSV field, quoted only if it holds a comma, a quote or a line break
+    private StringBuilder appendCsv(String value) {
+        return appendCsv(text, value);
+    }
+
+    // Method to write a CSV field to the text, returns the text
+    private static StringBuilder appendCsv(StringBuilder text, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return text.append('"').append(value.replace("\"", "\"\"")).append('"');
+            }
+        }
+        return text.append(value);
+    }
+
+    // Method to write a record key as its 6-digit record ID, without creating the String
+    private void appendRecordId(int recordKey) {
+        for (int divisor = 100_000; divisor > 0; divisor /= 10) {
+            text.append((char) ('0' + recordKey / divisor % 10));
+        }
+    }
+
+    // Method to pad the text with spaces so what was written since start is at least width characters
+    private StringBuilder pad(int start, int width) {
+        return pad(text, start, width);
+    }
+
+    // Method to pad a text with spaces so what was written since start is at least width characters, returns the text
+    private static StringBuilder pad(StringBuilder text, int start, int width) {
+        for (int i = text.length() - start; i < width; i++) {
+            text.append(' ');
+        }
+        return text;
+    }
+
+    // Method to write a value with two decimals, the way %.2f does, for TEXT
+    private void appendDecimal(double value) {
+        if (!(Math.abs(value) < FAST_LIMIT)) {
+            text.append(String.format(Locale.ROOT, "%.2f", value)); // NaN, infinities and huge values, rare
+            return;
+        }
+        if (Double.doubleToRawLongBits(value) < 0) {
+            text.append('-'); // Also for -0.0 and values rounding to zero, like %.2f
+        }
+        long cents = toCents(Math.abs(value));
+        text.append(cents / 100).append('.');
+        int fraction = (int) (cents % 100);
+        text.append((char) ('0' + fraction / 10)).append((char) ('0' + fraction % 10));
+    }
+
+    // Method to round a non-negative value below FAST_LIMIT to a whole number of hundredths, half up like %.2f
+    // %.2f rounds the shortest decimal form of the double (the digits of Double.toString), not its exact binary value;
+    // they differ when that form is a half-way point x.xx5, which %.2f rounds up even if the double lies just below it
+    private static long toCents(double value) {
+        double scaled = value * 100;
+        long whole = (long) scaled;
+        double fraction = scaled - whole; // Exact below 2^52
+        if (Math.abs(fraction - 0.5) > 1e-3) {
+            return fraction < 0.5 ? whole : whole + 1; // Clear of any half-way point
+        }
+        if ((2 * whole + 1) / 200.0 == value) {
+            return whole + 1; // The value is the closest double to a half-way point, so that is its decimal form
+        }
+        // Otherwise the exact product decides, the rounded one can land on the half-way point
+        return fraction > 0.5 || fraction == 0.5 && Math.fma(value, 100, -scaled) > 0 ? whole + 1 : whole;
+    }
+
+    // Method to write the text out once a chunk is full
+    private void flushIfFull() {
+        if (text.length() >= CHUNK) {
+            writeText();
+        }
+    }
+
+    // Method to write out everything rendered so far
+    @Override
+    public void flush() {
+        writeText();
+    }
+
+    // Method to write the text to the destination and empty it, rethrowing I/O failures unchecked
+    private void writeText() {
+        if (text.length() == 0) {
+            return;
+        }
+        try {
+            if (channel != null) {
+                writeToChannel();
+            } else if (out instanceof Writer) {
+                if (chars == null || chars.length < text.length()) {
+                    chars = new char[text.capacity()];
+                }
+                text.getChars(0, text.length(), chars, 0);
+                ((Writer) out).write(chars, 0, text.length());
+            } else {
+                out.append(text);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        text.setLength(0);
+    }
+
+    // Method to encode the text as UTF-8 into the channel
+    private void writeToChannel() throws IOException {
+        if (encoder == null) {
+            encoder = StandardCharsets.UTF_8.newEncoder();
+            bytes = ByteBuffer.allocateDirect(4 * CHUNK);
+        }
+        CharBuffer pending = CharBuffer.wrap(text);
+        encoder.reset();
+        CoderResult result;
+        do {
+            result = encoder.encode(pending, bytes, true);
+            if (result.isError()) {
+                result.throwException();
+            }
+            drainBytes();
+        } while (result.isOverflow());
+        while (encoder.flush(bytes).isOverflow()) {
+            drainBytes();
+        }
+        drainBytes();
+    }
+
+    // Method to write the encoded bytes to the channel
+    private void drainBytes() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
@@ -0,0 +1,69 @@
+// Immutable aggregates of one StressScenario run by StressTestEngine
+class ScenarioResult {
+    // Member variables, per-type arrays are indexed by LoanType code
+    private final StressScenario scenario;
+    private final long customerCount;
+    private final long ineligibleCustomerCount; // Customers failing checkEligibility under the scenario
+    private final long newlyIneligibleCount; // Eligible under the baseline, ineligible under the scenario
+    private final double[] amountLeftTotals; // Exposure today
+    private final double[] projectedInterest; // Interest the loans accrue over the projection
+    private final double[] projectedBalances; // Amount left on the whole book at the end of each projected year
+
+    // Constructor
+    ScenarioResult(StressScenario scenario, long customerCount, long ineligibleCustomerCount, long newlyIneligibleCount,
+                   double[] amountLeftTotals, double[] projectedInterest, double[] projectedBalances) {
+        this.scenario = scenario;
+        this.customerCount = customerCount;
+        this.ineligibleCustomerCount = ineligibleCustomerCount;
+        this.newlyIneligibleCount = newlyIneligibleCount;
+        this.amountLeftTotals = amountLeftTotals;
+        this.projectedInterest = projectedInterest;
+        this.projectedBalances = projectedBalances;
+    }
+
+    // Getter methods for the customer figures
+    public StressScenario getScenario() { return scenario; }
+    public long getCustomerCount() { return customerCount; }
+    public long getIneligibleCustomerCount() { return ineligibleCustomerCount; }
+    public long getNewlyIneligibleCount() { return newlyIneligibleCount; }
+
+    // Method to get the total exposure to a loan type: amount left today plus the interest projected on it
+    public double getExposure(LoanType type) {
+        return amountLeftTotals[type.ordinal()] + projectedInterest[type.ordinal()];
+    }
+
+    // Method to get the total exposure over all loan types
+    public double getTotalExposure() {
+        double total = 0;
+        for (LoanType type : LoanType.values()) {
+            total += getExposure(type);
+        }
+        return total;
+    }
+
+    // Method to get the interest projected on the loans of a type over the projection
+    public double getProjectedInterest(LoanType type) {
+        return projectedInterest[type.ordinal()];
+    }
+
+    // Method to get the number of projected years
+    public int getProjectionYears() {
+        return projectedBalances.length;
+    }
+
+    // Method to get the amount left on the whole book at the end of a projected year, from 1 to getProjectionYears()
+    public double getProjectedBalance(int year) {
+        if (year < 1 || year > projectedBalances.length) {
+            throw new IllegalArgumentException("Year must be between 1 and " + projectedBalances.length + ": " + year);
+        }
+        return projectedBalances[year - 1];
+    }
+
+    // Method to describe the result on one line
+    @Override
+    public String toString() {
+        return String.format("%s - ineligible %d of %d (%d newly), exposure %.2f, balance after 1 year %.2f",
+                scenario, ineligibleCustomerCount, customerCount, newlyIneligibleCount, getTotalExposure(),
+                projectedBalances.length > 0 ? projectedBalances[0] : 0.0);
+    }
+}
@@ -0,0 +1,202 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+// Bank partitioned into independent XYZBank shards by customer ID, with a router in front of them
+// - operations on one customer go to the shard owning that customer, chosen by hashing the packed customer key
+// - record IDs stay unique bank-wide through one shared claim table from record key to owning shard
+// - the records cap is enforced here for the whole bank; each shard only sees its own part of the book
+// - bank-wide queries (counts, listing pages, portfolio summary, accrual) run on every shard in parallel and are merged
+// Shards share nothing else, so they never contend with each other
+class ShardedBank {
+    private static final int UNCLAIMED = 0; // Claim table value of a free record ID, otherwise shard + 1
+
+    // Member variables
+    private final XYZBank[] shards;
+    private final AtomicIntegerArray recordShards = new AtomicIntegerArray(IdCodec.RECORD_KEY_SPACE); // 4 MB
+    private final AtomicInteger currentNumberOfRecords = new AtomicInteger();
+    private final int maxRecordsAllowed;
+
+    // Constructor, the shards keep no secondary loan indexes
+    public ShardedBank(int shardCount, int maxRecords) {
+        this(shardCount, maxRecords, false);
+    }
+
+    // Constructor choosing whether the shards keep the secondary loan indexes
+    public ShardedBank(int shardCount, int maxRecords, boolean secondaryIndexes) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        }
+        this.maxRecordsAllowed = maxRecords;
+        this.shards = new XYZBank[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new XYZBank(IdCodec.RECORD_KEY_SPACE, secondaryIndexes); // The cap is enforced by the router
+        }
+    }
+
+    // Getter methods for the shards
+    public int getShardCount() { return shards.length; }
+    public XYZBank getShard(int shard) { return shards[shard]; }
+    public List<XYZBank> getShards() { return Collections.unmodifiableList(Arrays.asList(shards)); }
+
+    // Getter methods for the bank-wide record counts
+    public int getCurrentNumberOfRecords() { return currentNumberOfRecords.get(); }
+    public int getMaxRecordsAllowed() { return maxRecordsAllowed; }
+
+    // Method to find the shard owning a customer ID
+    // Malformed IDs go to shard 0, which rejects them like an unsharded bank would
+    public int shardOf(String customerID) {
+        int key = IdCodec.customerKey(customerID);
+        if (key == IdCodec.INVALID) {
+            return 0;
+        }
+        int h = key * 0x9E3779B9; // Spread neighbouring IDs over every shard
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+
+    // Method to get the shard owning a customer ID
+    private XYZBank shardFor(String customerID) {
+        return shards[shardOf(customerID)];
+    }
+
+    // Method to register a new customer on its shard
+    public BankResult registerNewCustomer(String customerID, double income) {
+        return shardFor(customerID).registerNewCustomer(customerID, income);
+    }
+
+    // Method to check if a customer is registered
+    public boolean hasCustomer(String customerID) {
+        return shardFor(customerID).hasCustomer(customerID);
+    }
+
+    // Method to add a loan to a customer, claiming its record ID and a record slot bank-wide first
+    public BankResult addLoanToCustomer(String customerID, Loan loan) {
+        int shard = shardOf(customerID);
+        if (!shards[shard].hasCustomer(customerID)) {
+            return BankResult.CUSTOMER_NOT_FOUND; // Same order of checks as XYZBank.addLoanToCustomer
+        }
+        if (!reserveRecord()) {
+            return BankResult.LIMIT_REACHED;
+        }
+        int recordKey = loan.getRecordKey();
+        if (!recordShards.compareAndSet(recordKey, UNCLAIMED, shard + 1)) {
+            currentNumberOfRecords.decrementAndGet();
+            return BankResult.DUPLICATE_RECORD;
+        }
+        BankResult result = shards[shard].addLoanToCustomer(customerID, loan);
+        if (!result.isSuccess()) {
+            recordShards.set(recordKey, UNCLAIMED); // Give the claim and the slot back
+            currentNumberOfRecords.decrementAndGet();
+        }
+        return result;
+    }
+
+    // Method to reserve one slot under the bank-wide records cap
+    private boolean reserveRecord() {
+        while (true) {
+            int current = currentNumberOfRecords.get();
+            if (current >= maxRecordsAllowed) {
+                return false;
+            }
+            if (currentNumberOfRecords.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Method to remove a loan from a customer, releasing its record ID and slot
+    public BankResult removeLoanFromCustomer(String customerID, String recordID) {
+        BankResult result = shardFor(customerID).removeLoanFromCustomer(customerID, recordID);
+        if (result.isSuccess()) {
+            recordShards.set(IdCodec.recordKey(recordID), UNCLAIMED);
+            currentNumberOfRecords.decrementAndGet();
+        }
+        return result;
+    }
+
+    // Method to update a customer's income
+    public BankResult updateCustomerIncome(String customerID, double newIncome) {
+        return shardFor(customerID).updateCustomerIncome(customerID, newIncome);
+    }
+
+    // Method to change the amount and term left of one of a customer's loans
+    public BankResult updateLoan(String customerID, String recordID, double newAmountLeft, int newLoanTermLeft) {
+        return shardFor(customerID).updateLoan(customerID, recordID, newAmountLeft, newLoanTermLeft);
+    }
+
+    // Method to capture a customer with all of their loans, returns null if the customer is not registered
+    public CustomerListing getCustomerListing(String customerID) {
+        return shardFor(customerID).getCustomerListing(customerID);
+    }
+
+    // Method to get the shard holding a record ID, returns null if the record does not exist
+    private XYZBank shardOfRecord(String recordID) {
+        int recordKey = IdCodec.recordKey(recordID);
+        int claim = recordKey == IdCodec.INVALID ? UNCLAIMED : recordShards.get(recordKey);
+        return claim == UNCLAIMED ? null : shards[claim - 1];
+    }
+
+    // Method to check if a record ID is used by any customer
+    public boolean hasRecord(String recordID) {
+        XYZBank shard = shardOfRecord(recordID);
+        return shard != null && shard.hasRecord(recordID); // A claim whose add is still running is not a record yet
+    }
+
+    // Method to find the customer owning a record ID, returns null if the record does not exist
+    public Customer findCustomerByRecordId(String recordID) {
+        XYZBank shard = shardOfRecord(recordID);
+        return shard != null ? shard.findCustomerByRecordId(recordID) : null;
+    }
+
+    // Method to count the customers of every shard
+    public int getCustomerCount() {
+        return IntStream.range(0, shards.length).parallel().map(i -> shards[i].getCustomerCount()).sum();
+    }
+
+    // Method to count the loans of a type on every shard, which must keep the secondary indexes
+    public int countLoans(LoanType type) {
+        return IntStream.range(0, shards.length).parallel().map(i -> shards[i].countLoans(type)).sum();
+    }
+
+    // Method to get one page of customers matching a filter, in customer ID order across all shards
+    // Every shard returns its own first page after the cursor; the pages are merged and cut to the page size
+    public CustomerPage listCustomers(String afterCustomerID, int pageSize, LoanFilter filter) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        CustomerPage[] pages = new CustomerPage[shards.length];
+        IntStream.range(0, shards.length).parallel()
+                .forEach(i -> pages[i] = shards[i].listCustomers(afterCustomerID, pageSize, filter));
+        List<CustomerListing> merged = new ArrayList<>();
+        boolean more = false;
+        for (CustomerPage page : pages) {
+            merged.addAll(page.getCustomers());
+            more |= page.hasNext();
+        }
+        merged.sort((a, b) -> a.getCustomerId().compareTo(b.getCustomerId())); // Upper-case IDs sort like their keys
+        if (merged.size() > pageSize) {
+            merged = new ArrayList<>(merged.subList(0, pageSize));
+            more = true;
+        }
+        return new CustomerPage(merged, more ? merged.get(merged.size() - 1).getCustomerId() : null);
+    }
+
+    // Method to compute loan and eligibility aggregates over every shard
+    public PortfolioSummary getPortfolioSummary() {
+        return PortfolioAnalytics.summarize(getShards());
+    }
+
+    // Method to apply one period of interest on every shard, returns the total interest added
+    public double accrueInterest() {
+        return IntStream.range(0, shards.length).parallel().mapToDouble(i -> shards[i].accrueInterest()).sum();
+    }
+
+    // Method to switch every shard to a new eligibility policy, returns the number of ineligible customers
+    public long applyEligibilityPolicy(EligibilityPolicy policy) {
+        return IntStream.range(0, shards.length).parallel().mapToLong(i -> shards[i].applyEligibilityPolicy(policy)).sum();
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.Arrays;
+
+// Immutable what-if scenario for StressTestEngine: interest rate shocks by loan type and an income shock
+// Scenarios are built from the unstressed baseline by chaining with-methods, for example
+// StressScenario.baseline("rates +2%").withRateShock(2.0, LoanType.MORTGAGE, LoanType.BUILDER)
+class StressScenario {
+    // Member variables
+    private final String name;
+    private final double[] rateShocks; // Percentage points added to the interest rate, indexed by LoanType code
+    private final double incomeFactor; // Multiplier applied to every customer's annual income
+
+    // Constructor, use baseline and the with-methods to create scenarios
+    private StressScenario(String name, double[] rateShocks, double incomeFactor) {
+        this.name = name;
+        this.rateShocks = rateShocks;
+        this.incomeFactor = incomeFactor;
+    }
+
+    // Method to create a scenario that changes nothing
+    public static StressScenario baseline(String name) {
+        return new StressScenario(name, new double[LoanType.values().length], 1.0);
+    }
+
+    // Method to add percentage points to the interest rate of loans of the given types, all types if none are given
+    // Rates never go below zero
+    public StressScenario withRateShock(double percentagePoints, LoanType... types) {
+        double[] shocks = Arrays.copyOf(rateShocks, rateShocks.length);
+        for (LoanType type : types.length == 0 ? LoanType.values() : types) {
+            shocks[type.ordinal()] += percentagePoints;
+        }
+        return new StressScenario(name, shocks, incomeFactor);
+    }
+
+    // Method to change every customer's income by a percentage, such as -15 for a 15% drop
+    public StressScenario withIncomeChange(double percent) {
+        if (percent <= -100) {
+            throw new IllegalArgumentException("Income change must be above -100%: " + percent);
+        }
+        return new StressScenario(name, rateShocks, incomeFactor * (1 + percent / 100));
+    }
+
+    // Getter methods
+    public String getName() { return name; }
+    public double getRateShock(LoanType type) { return rateShocks[type.ordinal()]; }
+    public double getIncomeFactor() { return incomeFactor; }
+
+    // Method to get the stressed interest rate of a loan type from its current rate
+    double stressedRate(int typeCode, double interestRate) {
+        return Math.max(0, interestRate + rateShocks[typeCode]);
+    }
+
+    // Method to describe the scenario
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(name).append(':');
+        for (LoanType type : LoanType.values()) {
+            if (rateShocks[type.ordinal()] != 0) {
+                text.append(' ').append(type.getDisplayName()).append(String.format(" %+.2f%%", rateShocks[type.ordinal()]));
+            }
+        }
+        if (incomeFactor != 1.0) {
+            text.append(String.format(" income %+.1f%%", (incomeFactor - 1) * 100));
+        }
+        return text.toString();
+    }
+}
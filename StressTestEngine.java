@@ -0,0 +1,123 @@
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Engine running what-if StressScenarios against a columnar snapshot of the loan book
+// The snapshot is only read, so scenarios never touch live Loan or Customer objects and any number run at once:
+// each scenario is one pass over the loan columns, and scenarios run in parallel on the common pool
+// Every loan is projected year by year with the arithmetic of AccrualEngine (interest at the stressed rate, the level
+// payment for the remaining term, then the overpayment), rewritten so that a year costs one division instead of a
+// Math.pow: with d = (1 + rate)^-term the payment leaves balance * (1 - d * (1 + rate)) / (1 - d), and d only
+// gains a factor (1 + rate) from one year to the next
+// Eligibility is judged on the amount left after the first projected year, so rate shocks count as well as income
+// shocks; the unstressed baseline is judged the same way and customers flipping are counted against it
+class StressTestEngine {
+    // Member variables
+    private final ColumnarLoanStore store; // Snapshot the scenarios run against, never written
+    private final EligibilityPolicy policy;
+    private final int projectionYears;
+    private final boolean[] baselineEligible; // By customer ordinal
+
+    // Constructor
+    public StressTestEngine(ColumnarLoanStore store, EligibilityPolicy policy, int projectionYears) {
+        if (projectionYears <= 0) {
+            throw new IllegalArgumentException("Projection must cover at least one year: " + projectionYears);
+        }
+        this.store = store;
+        this.policy = policy;
+        this.projectionYears = projectionYears;
+        this.baselineEligible = new boolean[store.customerCount()];
+        project(StressScenario.baseline("baseline"), baselineEligible);
+    }
+
+    // Method to copy a bank into a columnar snapshot and create an engine under the bank's eligibility policy
+    public static StressTestEngine from(XYZBank bank, int projectionYears) {
+        return new StressTestEngine(ColumnarLoanStore.from(bank), bank.getEligibilityEvaluator().getPolicy(),
+                projectionYears);
+    }
+
+    // Getter method for the number of projected years
+    public int getProjectionYears() {
+        return projectionYears;
+    }
+
+    // Method to run one scenario on the calling thread
+    public ScenarioResult run(StressScenario scenario) {
+        return project(scenario, null);
+    }
+
+    // Method to run many scenarios in parallel, returns their results in the order of the scenarios
+    public List<ScenarioResult> runAll(List<StressScenario> scenarios) {
+        return scenarios.parallelStream().map(this::run).collect(Collectors.toList());
+    }
+
+    // Method to project every loan under a scenario and aggregate the results
+    // If eligibleOut is not null, it receives each customer's eligibility under the scenario
+    private ScenarioResult project(StressScenario scenario, boolean[] eligibleOut) {
+        int size = store.size();
+        byte[] types = store.typeCodeColumn();
+        double[] rates = store.interestRateColumn();
+        double[] balances = store.balanceColumn();
+        double[] overpayments = store.overpaymentColumn();
+        int[] terms = store.termColumn();
+        int[] owners = store.customerOrdinalColumn();
+        int typeCount = LoanType.values().length;
+        double[] amountLeftTotals = new double[typeCount];
+        double[] projectedInterest = new double[typeCount];
+        double[] projectedBalances = new double[projectionYears];
+        double[] owedAfterFirstYear = new double[store.customerCount()];
+
+        for (int row = 0; row < size; row++) {
+            int type = types[row];
+            double balance = balances[row];
+            int term = terms[row];
+            double rate = scenario.stressedRate(type, rates[row]) / 100;
+            double overpayment = overpayments[row];
+            double growth = 1 + rate;
+            double discount = Math.pow(growth, -term);
+            double interestTotal = 0;
+            amountLeftTotals[type] += balance;
+            int year = 0;
+            while (year < projectionYears && term > 0 && balance > 0) {
+                // The factor only depends on the term, so its division stays off the chain of balances
+                double factor = rate == 0 ? (double) (term - 1) / term : (1 - discount * growth) / (1 - discount);
+                interestTotal += balance * rate;
+                double next = balance * factor - overpayment;
+                balance = term == 1 || next < 0 ? 0 : next; // The last payment clears the loan
+                discount *= growth;
+                term--;
+                projectedBalances[year++] += balance;
+                if (year == 1) {
+                    owedAfterFirstYear[owners[row]] += balance;
+                }
+            }
+            if (year == 0) {
+                owedAfterFirstYear[owners[row]] += balance; // Paid off, or a balance without term left that never changes
+            }
+            if (balance > 0) {
+                for (; year < projectionYears; year++) {
+                    projectedBalances[year] += balance;
+                }
+            }
+            projectedInterest[type] += interestTotal;
+        }
+
+        double[] incomes = store.incomeColumn();
+        double incomeFactor = scenario.getIncomeFactor();
+        long ineligible = 0;
+        long newlyIneligible = 0;
+        for (int ordinal = 0; ordinal < owedAfterFirstYear.length; ordinal++) {
+            boolean eligible = policy.isEligible(incomes[ordinal] * incomeFactor, owedAfterFirstYear[ordinal]);
+            if (!eligible) {
+                ineligible++;
+                if (baselineEligible[ordinal]) {
+                    newlyIneligible++;
+                }
+            }
+            if (eligibleOut != null) {
+                eligibleOut[ordinal] = eligible;
+            }
+        }
+        return new ScenarioResult(scenario, owedAfterFirstYear.length, ineligible, newlyIneligible, amountLeftTotals,
+                projectedInterest, projectedBalances);
+    }
+}
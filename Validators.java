@@ -0,0 +1,69 @@
+// Input checks shared by the interactive menu and the XYZBank API
+// Every check walks the characters by hand, so it neither compiles a regex nor allocates
+final class Validators {
+    private static final int MAX_INT_DIGITS = 9; // Any 9-digit number fits in an int
+
+    // Constructor, the class only has static methods
+    private Validators() {
+    }
+
+    // Method to check a customer ID: 3 upper-case letters followed by 3 digits, such as ABC123
+    public static boolean isValidCustomerId(CharSequence customerID) {
+        if (customerID == null || customerID.length() != 6) {
+            return false;
+        }
+        for (int i = 0; i < 3; i++) {
+            char c = customerID.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                return false;
+            }
+        }
+        return isDigits(customerID, 3, 6);
+    }
+
+    // Method to check a record ID: exactly 6 digits
+    public static boolean isValidRecordId(CharSequence recordID) {
+        return IdCodec.recordKey(recordID) != IdCodec.INVALID;
+    }
+
+    // Method to check an amount typed by a user: digits with an optional fractional part, such as 1200 or 1200.50
+    public static boolean isValidAmount(CharSequence amount) {
+        if (amount == null) {
+            return false;
+        }
+        int point = -1;
+        for (int i = 0; i < amount.length(); i++) {
+            if (amount.charAt(i) == '.') {
+                point = i;
+                break;
+            }
+        }
+        if (point < 0) {
+            return amount.length() > 0 && isDigits(amount, 0, amount.length());
+        }
+        return point > 0 && point < amount.length() - 1
+                && isDigits(amount, 0, point) && isDigits(amount, point + 1, amount.length());
+    }
+
+    // Method to check a whole number that Integer.parseInt accepts, such as the maximum number of records
+    public static boolean isWholeNumber(CharSequence number) {
+        return number != null && number.length() > 0 && number.length() <= MAX_INT_DIGITS
+                && isDigits(number, 0, number.length());
+    }
+
+    // Method to check a loan type name (case-insensitive)
+    public static boolean isValidLoanType(String loanType) {
+        return LoanType.fromName(loanType) != null;
+    }
+
+    // Method to check that the characters from start (inclusive) to end (exclusive) are all ASCII digits
+    private static boolean isDigits(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,24 +1,69 @@
 // Import statements
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Scanner;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 // Class definition for XYZBank
+// The bank can be shared between threads: every operation on one customer runs under that customer's lock,
+// the record index is lock-striped and the records cap is enforced with an atomic reservation
 public class XYZBank {
-    // Map to store customers with their IDs
-    private Map<String, Customer> customers = new HashMap<>();
+    private static final int CONSOLE_PAGE_SIZE = 20; // Customers per page when the menu lists all customers
+
+    // Table to store customers by their packed customer ID (see IdCodec)
+    private final CustomerTable customers = new CustomerTable();
+    // Bank-wide index from record ID to the owning customer and loan
+    private final RecordIndex recordIndex = new RecordIndex();
+    // Secondary indexes on loan type, amount left and term left, null when they are turned off
+    private final LoanIndexes loanIndexes;
     // Variables to track current number of records and maximum allowed records
-    private int currentNumberOfRecords=0;
-    private int maxRecordsAllowed;
+    private final AtomicInteger currentNumberOfRecords = new AtomicInteger();
+    private final int maxRecordsAllowed;
+    // Reporting settings, quiet by default so programmatic callers pay no console I/O
+    private volatile ReportMode reportMode = ReportMode.QUIET;
+    private volatile Appendable reportOut = System.out;
+    // Journal every mutation is logged to, null when the bank is not persistent
+    private volatile LoanJournal journal;
+    // Feed every mutation is published to, null when nobody follows the bank
+    private volatile ChangeFeed changeFeed;
+    // Customer versions kept for snapshot readers, null until the first snapshot is opened
+    private volatile BankVersions versions;
+    // Operation counters and latency histograms
+    private final BankMetrics metrics = new BankMetrics(this);
+    // Eligibility policy shared by all customers of this bank, with the metrics of their cached decisions
+    private final EligibilityEvaluator eligibility = new EligibilityEvaluator(EligibilityPolicy.DEFAULT);
+    // Mutations hold the read side while a journal is attached, a checkpoint holds the write side
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
 
     // Getter method for currentNumberOfRecords
     public int getCurrentNumberOfRecords() {
-        return currentNumberOfRecords;
+        return currentNumberOfRecords.get();
     }
 
-    // Constructor for XYZBank class
+    // Constructor for XYZBank class, without the secondary loan indexes
     public XYZBank(int maxRecords) {
+        this(maxRecords, false);
+    }
+
+    // Constructor choosing whether the secondary loan indexes are kept, which costs time on every write
+    // Only banks created with them can answer countLoans, findLoansByType, findLoansByTerm, findLoansByBalance and topBalances
+    public XYZBank(int maxRecords, boolean secondaryIndexes) {
         this.maxRecordsAllowed = maxRecords;
+        this.loanIndexes = secondaryIndexes ? new LoanIndexes() : null;
     }
 
     // Getter method for maxRecordsAllowed
@@ -26,103 +71,779 @@ public class XYZBank {
         return maxRecordsAllowed;
     }
 
-    // Method to add a loan to a customer
-    public boolean addLoanToCustomer(String customerID, Loan loan) {
-        // Check if maximum records limit reached
-        if (currentNumberOfRecords >= maxRecordsAllowed) {
-            System.out.println("Cannot add more loans, maximum records limit reached.");
-            return false;
+    // Method to reserve up to the requested number of record slots, returns how many were reserved
+    // The compare-and-set loop keeps the cap exact however many threads add loans at once
+    private int reserveRecords(int requested) {
+        while (true) {
+            int current = currentNumberOfRecords.get();
+            int granted = Math.min(requested, maxRecordsAllowed - current);
+            if (granted <= 0) {
+                return 0;
+            }
+            if (currentNumberOfRecords.compareAndSet(current, current + granted)) {
+                return granted;
+            }
+        }
+    }
+
+    // Method to give back record slots that were reserved but not used
+    private void releaseRecords(int count) {
+        if (count > 0) {
+            currentNumberOfRecords.addAndGet(-count);
+        }
+    }
+
+    // Getter method for reportMode
+    public ReportMode getReportMode() {
+        return reportMode;
+    }
+
+    // Method to choose how much the bank reports and where the output goes
+    // The caller owns the destination, so a buffered Writer can be flushed once after a bulk operation
+    public void setReportMode(ReportMode reportMode, Appendable reportOut) {
+        this.reportMode = reportMode;
+        this.reportOut = reportOut;
+    }
+
+    // Method to start logging every mutation to a journal, null detaches the current one
+    void attachJournal(LoanJournal journal) {
+        this.journal = journal;
+    }
+
+    // Method to publish every mutation from now on to a change feed, null detaches the current one
+    public void setChangeFeed(ChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+
+    // Getter method for the attached change feed, null if there is none
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    // Getter method for the lock a checkpoint holds to see no mutation half-applied
+    Lock checkpointLock() {
+        return checkpointLock.writeLock();
+    }
+
+    // Getter method for a read-only copy of all customers
+    Collection<Customer> getCustomers() {
+        return Collections.unmodifiableList(customers.values());
+    }
+
+    // Method to look up a customer by ID in either case, returns null if the ID is unknown or malformed
+    private Customer lookupCustomer(String customerID) {
+        return customers.get(IdCodec.customerKey(customerID));
+    }
+
+    // Method to check if a customer is registered
+    public boolean hasCustomer(String customerID) {
+        long start = metrics.start(BankOperation.LOOKUP);
+        boolean found = lookupCustomer(customerID) != null;
+        metrics.record(BankOperation.LOOKUP, start);
+        return found;
+    }
+
+    // Getter method for the number of registered customers
+    public int getCustomerCount() {
+        return customers.size();
+    }
+
+    // Getter method for the operation metrics of this bank
+    public BankMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Method to enter a mutation, returns the lock to release or null when no journal is attached
+    private Lock beginMutation() {
+        if (journal == null) {
+            return null; // Without a journal there are no checkpoints to wait for
         }
+        Lock lock = checkpointLock.readLock();
+        lock.lock();
+        return lock;
+    }
+
+    // Method to leave a mutation started with beginMutation
+    private static void endMutation(Lock lock) {
+        if (lock != null) {
+            lock.unlock();
+        }
+    }
+
+    // Method to write a status message to the report destination unless the bank is quiet
+    private void report(String message) {
+        if (reportMode != ReportMode.QUIET) {
+            writeLine(reportOut, message);
+        }
+    }
+
+    // Method to write the record counts header to a destination
+    private void writeSummary(Appendable out) {
+        writeLine(out, "Maximum number of Records: " + maxRecordsAllowed);
+        writeLine(out, "Registered records: " + currentNumberOfRecords.get());
+        writeLine(out, "================================");
+    }
+
+    // Method to write one line to a destination, rethrowing I/O failures unchecked
+    static void writeLine(Appendable out, String line) {
+        try {
+            out.append(line).append(System.lineSeparator());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Method to check if a record ID is already used by any customer
+    public boolean hasRecord(String recordID) {
+        long start = metrics.start(BankOperation.LOOKUP);
+        boolean found = recordIndex.contains(recordID);
+        metrics.record(BankOperation.LOOKUP, start);
+        return found;
+    }
+
+    // Method to find the customer owning a record ID, returns null if the record does not exist
+    public Customer findCustomerByRecordId(String recordID) {
+        long start = metrics.start(BankOperation.LOOKUP);
+        Customer owner = recordIndex.getOwner(recordID);
+        metrics.record(BankOperation.LOOKUP, start);
+        return owner;
+    }
+
+    // Method to add a loan to a customer
+    public BankResult addLoanToCustomer(String customerID, Loan loan) {
+        long start = metrics.start(BankOperation.ADD_LOAN);
+        BankResult result = addLoan(customerID, loan);
+        metrics.record(BankOperation.ADD_LOAN, start, result);
+        return result;
+    }
+
+    // Method holding the work of addLoanToCustomer
+    private BankResult addLoan(String customerID, Loan loan) {
         // Get the customer object using customer ID
-        Customer customer = customers.get(customerID);
-        // Add the loan to customer's credit records
-        customer.getCreditRecords().add(loan);
-        // Attempt to add loan to customer
-        if (customer.addLoan(loan)) { // Corrected to use addLoan method
-            currentNumberOfRecords++; // Increment currentNumberOfRecords
-            System.out.println("Loan successfully added.");
-            printAllCustomersDetails(); // Print details after adding the loan
-            return true;
-        } else {
-            System.out.println("Loan addition failed due to eligibility criteria.");
-            return false;
+        Customer customer = lookupCustomer(customerID);
+        if (customer == null) {
+            report(BankResult.CUSTOMER_NOT_FOUND.getMessage());
+            return BankResult.CUSTOMER_NOT_FOUND;
+        }
+        // Reserve a record slot, which fails if maximum records limit reached
+        if (reserveRecords(1) == 0) {
+            report(BankResult.LIMIT_REACHED.getMessage());
+            return BankResult.LIMIT_REACHED;
+        }
+        Lock mutation = beginMutation();
+        try {
+            synchronized (customer) {
+                // Index the record ID bank-wide, which fails if it is already used by any customer
+                if (!recordIndex.put(customer, loan)) {
+                    releaseRecords(1); // Give the reserved slot back
+                    report(BankResult.DUPLICATE_RECORD.getMessage());
+                    return BankResult.DUPLICATE_RECORD;
+                }
+                logAddLoan(customer, loan);
+                // Add the loan to customer's credit records
+                customer.addLoan(loan);
+                indexLoan(loan);
+                publishLoan(ChangeType.LOAN_ADDED, customerID, loan);
+                commitLoanVersion(customer, loan);
+            }
+        } finally {
+            endMutation(mutation);
+        }
+        report("Loan successfully added.");
+        // Report the state of the bank according to the reporting mode
+        if (reportMode == ReportMode.SUMMARY) {
+            writeSummary(reportOut);
+        } else if (reportMode == ReportMode.FULL) {
+            printAllCustomersDetails(reportOut);
+        }
+        return BankResult.SUCCESS;
+    }
+
+    // Method to add a loan to the secondary indexes, called while holding the owning customer's lock
+    private void indexLoan(Loan loan) {
+        if (loanIndexes != null) {
+            loanIndexes.add(loan);
         }
     }
 
+    // Method to remove a loan from the secondary indexes before it changes or leaves the bank
+    // Called while holding the owning customer's lock, with the loan still holding its indexed values
+    private void unindexLoan(Loan loan) {
+        if (loanIndexes != null) {
+            loanIndexes.remove(loan);
+        }
+    }
+
+    // Method to log a new loan before it is added, if a journal is attached, called while holding the customer's lock
+    // The record ID is already claimed and a slot reserved: if the journal refuses the record, both are given back and
+    // the failure is rethrown, so the bank never holds a loan the journal does not
+    private void logAddLoan(Customer customer, Loan loan) {
+        LoanJournal journal = this.journal;
+        if (journal != null) {
+            try {
+                journal.logAddLoan(customer.getCustomerId(), loan);
+            } catch (RuntimeException e) {
+                recordIndex.remove(loan.getRecordKey());
+                releaseRecords(1);
+                throw e;
+            }
+        }
+    }
+
+    // Method to publish a loan event if a change feed is attached, called while holding the customer's lock
+    // The key comes from the caller's ID: the customer's own ID string is usually not in the cache
+    private void publishLoan(ChangeType type, String customerID, Loan loan) {
+        ChangeFeed feed = this.changeFeed;
+        if (feed != null) {
+            feed.publishLoan(type, IdCodec.customerKey(customerID), loan);
+        }
+    }
+
+    // Method to commit a customer's new version after a loan was added or changed, if snapshots are in use
+    // Called while holding the customer's lock
+    private void commitLoanVersion(Customer customer, Loan loan) {
+        BankVersions versions = this.versions;
+        if (versions != null) {
+            versions.commitLoan(customer, loan);
+        }
+    }
+
+    // Method to add a batch of loans without any console interaction
+    // Each request is validated on its own; invalid ones are skipped and the number of loans added is returned
+    // If the journal refuses a loan, the batch stops with its exception and the loans added before it stay
+    public int addLoans(Collection<LoanRequest> requests) {
+        long start = metrics.start(BankOperation.ADD_LOANS);
+        int added = addLoanBatch(requests);
+        metrics.record(BankOperation.ADD_LOANS, start);
+        return added;
+    }
+
+    // Method holding the work of addLoans
+    private int addLoanBatch(Collection<LoanRequest> requests) {
+        // Size the index once per batch for the loans that can still fit
+        recordIndex.ensureCapacity(Math.max(0, Math.min(requests.size(), maxRecordsAllowed - currentNumberOfRecords.get())));
+        int added = 0;
+        for (LoanRequest request : requests) {
+            // Skip invalid loans, unknown customers and record IDs already used in the bank or earlier in this batch
+            if (request == null || !isValidLoan(request.getLoan())) {
+                continue;
+            }
+            Customer customer = lookupCustomer(request.getCustomerID());
+            Loan loan = request.getLoan();
+            if (customer == null) {
+                continue;
+            }
+            // Reserve one slot per loan, so rejected requests never hold slots that concurrent adds could use
+            if (reserveRecords(1) == 0) {
+                break; // Maximum records limit reached, the rest of the batch is rejected
+            }
+            Lock mutation = beginMutation();
+            try {
+                synchronized (customer) {
+                    if (!recordIndex.put(customer, loan)) {
+                        releaseRecords(1); // Give the reserved slot back
+                        continue;
+                    }
+                    logAddLoan(customer, loan);
+                    customer.addLoan(loan);
+                    indexLoan(loan);
+                    publishLoan(ChangeType.LOAN_ADDED, request.getCustomerID(), loan);
+                    commitLoanVersion(customer, loan);
+                }
+            } finally {
+                endMutation(mutation);
+            }
+            added++;
+        }
+        return added;
+    }
+
+    // Method to check a loan of a batch the way the menu checks typed values: a positive interest rate, amount left and
+    // term, and an overpayment that is not negative; NaN and infinite values are rejected as well
+    private static boolean isValidLoan(Loan loan) {
+        return loan != null
+                && Double.isFinite(loan.getInterestRate()) && loan.getInterestRate() > 0
+                && Double.isFinite(loan.getAmountLeft()) && loan.getAmountLeft() > 0
+                && loan.getLoanTermLeft() > 0
+                && Double.isFinite(loan.getOverpayment()) && loan.getOverpayment() >= 0;
+    }
+
     // Method to register a new customer
-    public void registerNewCustomer(String customerID, double income) {
-        String upperCaseCustomerID = customerID.toUpperCase();
-        // Check if customer already exists
-        if (customers.containsKey(upperCaseCustomerID)) {
-            System.out.println("Customer with ID " + upperCaseCustomerID + " already exists.");
-        } else {
-            // Add new customer to the map
-            customers.put(upperCaseCustomerID, new Customer(upperCaseCustomerID, income));
-            System.out.println("Customer registered successfully.");
+    public BankResult registerNewCustomer(String customerID, double income) {
+        long start = metrics.start(BankOperation.REGISTER_CUSTOMER);
+        BankResult result = registerCustomer(customerID, income);
+        metrics.record(BankOperation.REGISTER_CUSTOMER, start, result);
+        return result;
+    }
+
+    // Method holding the work of registerNewCustomer
+    private BankResult registerCustomer(String customerID, double income) {
+        int key = IdCodec.customerKey(customerID);
+        if (key == IdCodec.INVALID) {
+            report(BankResult.INVALID_CUSTOMER_ID.getMessage());
+            return BankResult.INVALID_CUSTOMER_ID;
+        }
+        // Keep the caller's String when it is already upper case, otherwise rebuild it from the key
+        String upperCaseCustomerID = Validators.isValidCustomerId(customerID) ? customerID : IdCodec.customerId(key);
+        Customer customer = new Customer(upperCaseCustomerID, income, eligibility);
+        Lock mutation = beginMutation();
+        try {
+            // Hold the new customer's lock so no loan for it can be logged before its registration
+            synchronized (customer) {
+                // Add new customer to the map unless one with this ID already exists
+                if (customers.putIfAbsent(key, customer) != null) {
+                    report("Customer with ID " + upperCaseCustomerID + " already exists.");
+                    return BankResult.CUSTOMER_EXISTS;
+                }
+                LoanJournal journal = this.journal;
+                if (journal != null) {
+                    try {
+                        journal.logRegister(upperCaseCustomerID, income);
+                    } catch (RuntimeException e) {
+                        customers.remove(key, customer); // The journal refused the registration, so undo it
+                        throw e;
+                    }
+                }
+                ChangeFeed feed = this.changeFeed;
+                if (feed != null) {
+                    feed.publishRegister(key, income);
+                }
+                BankVersions versions = this.versions;
+                if (versions != null) {
+                    versions.commitCapture(customer);
+                }
+            }
+        } finally {
+            endMutation(mutation);
+        }
+        report("Customer registered successfully.");
+        return BankResult.SUCCESS;
+    }
+
+    // Getter method for the eligibility policy and its cache metrics
+    public EligibilityEvaluator getEligibilityEvaluator() {
+        return eligibility;
+    }
+
+    // Method to replace the eligibility policy and re-evaluate every customer against it in parallel
+    // Returns the number of customers that are not eligible under the new policy
+    public long applyEligibilityPolicy(EligibilityPolicy policy) {
+        eligibility.setPolicy(policy); // Invalidates every cached decision
+        return customers.values().parallelStream().filter(customer -> !customer.isEligible()).count();
+    }
+
+    // Method to count the loans of a type using the secondary indexes
+    public int countLoans(LoanType type) {
+        return requireLoanIndexes().count(type);
+    }
+
+    // Method to find every loan of a type, ordered by record ID
+    public List<Loan> findLoansByType(LoanType type) {
+        return resolveLoans(requireLoanIndexes().keysOfType(type));
+    }
+
+    // Method to find the loans with a term left between min and max (inclusive), ordered by term left
+    // Pass a null type to search every type, for example findLoansByTerm(LoanType.MORTGAGE, 21, Integer.MAX_VALUE)
+    public List<Loan> findLoansByTerm(LoanType type, int minTermLeft, int maxTermLeft) {
+        return resolveLoans(requireLoanIndexes().keysByTerm(type, minTermLeft, maxTermLeft, Integer.MAX_VALUE));
+    }
+
+    // Method to find the loans with an amount left between min and max (inclusive), ordered by amount left
+    public List<Loan> findLoansByBalance(LoanType type, double minAmountLeft, double maxAmountLeft) {
+        return resolveLoans(requireLoanIndexes().keysByBalance(type, minAmountLeft, maxAmountLeft, false, Integer.MAX_VALUE));
+    }
+
+    // Method to find the k loans with the highest amount left, highest first; pass a null type for every type
+    public List<Loan> topBalances(LoanType type, int k) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        return resolveLoans(requireLoanIndexes().keysByBalance(type, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, true, k));
+    }
+
+    // Method to get the secondary indexes, failing if the bank was created without them
+    private LoanIndexes requireLoanIndexes() {
+        if (loanIndexes == null) {
+            throw new IllegalStateException("This bank was created without secondary loan indexes");
         }
+        return loanIndexes;
+    }
+
+    // Method to turn record keys from an index query into loans, skipping loans removed since the query ran
+    // Each loan is copied under its owner's lock, like CustomerListing.of, so callers never see a live Loan change
+    // under them; a loan that moved to another customer since the query ran is skipped as well
+    private List<Loan> resolveLoans(List<Integer> recordKeys) {
+        List<Loan> loans = new ArrayList<>(recordKeys.size());
+        for (int recordKey : recordKeys) {
+            Customer owner = recordIndex.getOwner(recordKey);
+            if (owner == null) {
+                continue;
+            }
+            synchronized (owner) {
+                // Loans join and leave the index under their owner's lock, so this lookup is stable while it is held
+                Loan loan = recordIndex.getLoan(recordKey);
+                if (loan != null && recordIndex.getOwner(recordKey) == owner) {
+                    loans.add(loan.copy());
+                }
+            }
+        }
+        return loans;
+    }
+
+    // Method to compute loan and eligibility aggregates over the whole book
+    public PortfolioSummary getPortfolioSummary() {
+        return PortfolioAnalytics.summarize(this);
+    }
+
+    // Method to capture a customer with all of their loans, returns null if the customer is not registered
+    public CustomerListing getCustomerListing(String customerID) {
+        long start = metrics.start(BankOperation.LOOKUP);
+        Customer customer = lookupCustomer(customerID);
+        CustomerListing listing = customer != null ? CustomerListing.of(customer, LoanFilter.ALL) : null;
+        metrics.record(BankOperation.LOOKUP, start);
+        return listing;
     }
 
     // Method to print details of a specific customer
     public void printCustomerDetails(String customerID) {
+        printCustomerDetails(customerID, System.out);
+    }
+
+    // Method to print details of a specific customer to the given destination
+    public void printCustomerDetails(String customerID, Appendable out) {
+        printCustomerDetails(customerID, out, ReportFormat.TEXT);
+    }
+
+    // Method to print details of a specific customer to the given destination in a report format
+    // An unknown customer is reported in TEXT only, CSV and JSON output stays empty
+    public void printCustomerDetails(String customerID, Appendable out, ReportFormat format) {
         // Retrieve customer object using customerID
-        Customer customer = customers.get(customerID.toUpperCase());
+        Customer customer = lookupCustomer(customerID);
         if (customer != null) {
             // Print details of the customer
-            customer.printCustomerDetails();
-        } else {
-            System.out.println("Customer not found.");
+            customer.printCustomerDetails(out, format);
+        } else if (format == ReportFormat.TEXT) {
+            writeLine(out, "Customer not found.");
         }
     }
 
     // Method to print details of all customers
     public void printAllCustomersDetails() {
-        System.out.println("Maximum number of Records: " + maxRecordsAllowed);
-        System.out.println("Registered records: " + currentNumberOfRecords);
-        System.out.println("================================");
-
-        for (Customer customer : customers.values()) {
-            System.out.println("CustomerID: " + customer.getCustomerId());
-            // Check if customer has any loans before attempting to print them
-            if (customer.getCreditRecords().isEmpty()) {
-                System.out.println("No loans found for this customer.");
-            } else {
-                System.out.printf("%-10s %-15s %-10s %-10s %-8s%n",
-                        "RecordID", "LoanType", "IntRate", "AmountLeft", "TimeLeft");
+        printAllCustomersDetails(System.out);
+    }
+
+    // Method to print details of all customers to the given destination, in customer ID order
+    // Once snapshots are in use the report is printed from one, so it shows the whole bank as of one moment while
+    // writers carry on; until then each customer is printed as it is when reached, under its own lock
+    public void printAllCustomersDetails(Appendable out) {
+        printAllCustomersDetails(out, ReportFormat.TEXT);
+    }
+
+    // Method to print details of all customers to the given destination in a report format
+    // A report never switches versioning on by itself, so a bank that only prints reports keeps writing without versions
+    public void printAllCustomersDetails(Appendable out, ReportFormat format) {
+        ReportRenderer renderer = new ReportRenderer(out, format);
+        if (versions == null) {
+            // Each customer writes itself from its own loans under its lock, so nothing is copied
+            renderer.beginReport(maxRecordsAllowed, getCurrentNumberOfRecords());
+            for (Iterator<Customer> inOrder = new CustomerIterator(0); inOrder.hasNext(); ) {
+                inOrder.next().writeReportEntry(renderer);
+            }
+            renderer.endReport();
+        } else {
+            try (BankSnapshot snapshot = openSnapshot()) {
+                snapshot.renderReport(renderer);
+            }
+        }
+        renderer.flush();
+    }
+
+    // Method to open a point-in-time view of the whole bank, to be closed when done (see BankSnapshot)
+    // The first snapshot switches versioning on for the rest of the bank's life: from then on every mutation commits a
+    // version of its customer, which costs time and memory on every write even after the snapshot is closed
+    public BankSnapshot openSnapshot() {
+        return new BankSnapshot(startVersions(), customers, eligibility, maxRecordsAllowed);
+    }
 
-                for (Loan loan : customer.getCreditRecords()) {
-                    System.out.printf("%-10s %-15s %-10.2f %-10.2f %-8d%n",
-                            loan.getRecordID(), loan.getLoanType(),
-                            loan.getInterestRate(), loan.getAmountLeft(), loan.getLoanTermLeft());
+    // Method to switch versioning on if it is off, capturing every customer under its lock
+    // Mutations check for versions while holding the customer's lock, so each one is either captured here or
+    // commits its own version; a snapshot waits here until every customer has a version
+    private synchronized BankVersions startVersions() {
+        if (versions == null) {
+            BankVersions started = new BankVersions();
+            versions = started;
+            for (Customer customer : customers.values()) {
+                synchronized (customer) {
+                    if (customer.getLatestVersion() == null) {
+                        started.commitCapture(customer);
+                    }
                 }
             }
-            System.out.println("--------------------------------");
+        }
+        return versions;
+    }
+
+    // Method to print one page of customers matching a filter, returns the cursor for the next page or null
+    public String printCustomersPage(String afterCustomerID, int pageSize, LoanFilter filter, Appendable out) {
+        CustomerPage page = listCustomers(afterCustomerID, pageSize, filter);
+        ReportRenderer renderer = new ReportRenderer(out, ReportFormat.TEXT);
+        renderer.beginPage();
+        for (CustomerListing listing : page.getCustomers()) {
+            renderer.customer(listing);
+        }
+        renderer.endReport();
+        renderer.flush();
+        return page.getNextCursor();
+    }
+
+    // Method to get one page of customers matching a filter, in customer ID order
+    // Pass null to start from the beginning, then the page's next cursor to continue
+    public CustomerPage listCustomers(String afterCustomerID, int pageSize, LoanFilter filter) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        Iterator<CustomerListing> listings = listCustomers(afterCustomerID, filter).iterator();
+        List<CustomerListing> page = new ArrayList<>(pageSize);
+        while (page.size() < pageSize && listings.hasNext()) {
+            page.add(listings.next());
+        }
+        String nextCursor = listings.hasNext() ? page.get(page.size() - 1).getCustomerId() : null;
+        return new CustomerPage(page, nextCursor);
+    }
+
+    // Method to stream the customers matching a filter lazily, in customer ID order, starting after a customer ID
+    // Each customer is captured under its lock only when the stream reaches it; pass null to start from the beginning
+    public Stream<CustomerListing> listCustomers(String afterCustomerID, LoanFilter filter) {
+        int firstKey = 0;
+        if (afterCustomerID != null) {
+            int afterKey = IdCodec.customerKey(afterCustomerID);
+            if (afterKey == IdCodec.INVALID) {
+                throw new IllegalArgumentException("Invalid cursor: " + afterCustomerID);
+            }
+            firstKey = afterKey + 1;
+        }
+        Iterator<Customer> inOrder = new CustomerIterator(firstKey);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(inOrder,
+                        Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false)
+                .map(customer -> CustomerListing.of(customer, filter))
+                .filter(Objects::nonNull);
+    }
+
+    // Method to stream the loans matching a filter lazily, ordered by customer ID and then record ID
+    // The loans are copies taken under each customer's lock, changing them does not change the bank
+    public Stream<Loan> listLoans(String afterCustomerID, LoanFilter filter) {
+        return listCustomers(afterCustomerID, filter).flatMap(listing -> listing.getLoans().stream());
+    }
+
+    // Iterator over the registered customers in customer ID order, starting at a customer key
+    private final class CustomerIterator implements Iterator<Customer> {
+        private int nextKey; // Key of the next customer, or -1 at the end
+
+        // Constructor
+        CustomerIterator(int firstKey) {
+            nextKey = customers.nextKey(firstKey);
+        }
+
+        // Method to check if there is another customer
+        @Override
+        public boolean hasNext() {
+            return nextKey >= 0;
+        }
+
+        // Method to get the next customer
+        @Override
+        public Customer next() {
+            if (nextKey < 0) {
+                throw new NoSuchElementException();
+            }
+            Customer customer = customers.get(nextKey);
+            nextKey = customers.nextKey(nextKey + 1);
+            return customer;
         }
     }
 
     // Method to update customer's income
-    public void updateCustomerIncome(String customerID, double newIncome) {
+    public BankResult updateCustomerIncome(String customerID, double newIncome) {
+        long start = metrics.start(BankOperation.UPDATE_INCOME);
+        BankResult result = updateIncome(customerID, newIncome);
+        metrics.record(BankOperation.UPDATE_INCOME, start, result);
+        return result;
+    }
+
+    // Method holding the work of updateCustomerIncome
+    private BankResult updateIncome(String customerID, double newIncome) {
         // Retrieve customer object using customerID
-        Customer customer = customers.get(customerID.toUpperCase());
-        if (customer != null) {
-            // Update customer's income
-            customer.updateIncome(newIncome);
-        } else {
-            System.out.println("Customer not found.");
+        Customer customer = lookupCustomer(customerID);
+        if (customer == null) {
+            report(BankResult.CUSTOMER_NOT_FOUND.getMessage());
+            return BankResult.CUSTOMER_NOT_FOUND;
+        }
+        Lock mutation = beginMutation();
+        try {
+            synchronized (customer) {
+                // Log the change first, a failure leaves the income as it was
+                LoanJournal journal = this.journal;
+                if (journal != null) {
+                    journal.logUpdateIncome(customer.getCustomerId(), newIncome);
+                }
+                // Update customer's income
+                customer.updateIncome(newIncome);
+                ChangeFeed feed = this.changeFeed;
+                if (feed != null) {
+                    feed.publishIncome(IdCodec.customerKey(customerID), newIncome);
+                }
+                BankVersions versions = this.versions;
+                if (versions != null) {
+                    versions.commitIncome(customer);
+                }
+            }
+        } finally {
+            endMutation(mutation);
+        }
+        return BankResult.SUCCESS;
+    }
+
+    // Method to change the amount and term left on one of a customer's loans
+    public BankResult updateLoan(String customerID, String recordID, double newAmountLeft, int newLoanTermLeft) {
+        long start = metrics.start(BankOperation.UPDATE_LOAN);
+        BankResult result = changeLoan(customerID, recordID, newAmountLeft, newLoanTermLeft);
+        metrics.record(BankOperation.UPDATE_LOAN, start, result);
+        return result;
+    }
+
+    // Method holding the work of updateLoan
+    private BankResult changeLoan(String customerID, String recordID, double newAmountLeft, int newLoanTermLeft) {
+        // Retrieve customer object using customerID
+        Customer customer = lookupCustomer(customerID);
+        if (customer == null) {
+            report(BankResult.CUSTOMER_NOT_FOUND.getMessage());
+            return BankResult.CUSTOMER_NOT_FOUND;
+        }
+        Lock mutation = beginMutation();
+        try {
+            synchronized (customer) {
+                // Only update the record if it belongs to this customer
+                Loan loan = recordIndex.getOwner(recordID) == customer ? recordIndex.getLoan(recordID) : null;
+                if (loan == null) {
+                    report(BankResult.RECORD_NOT_FOUND.getMessage());
+                    return BankResult.RECORD_NOT_FOUND;
+                }
+                LoanJournal journal = this.journal;
+                if (journal != null) {
+                    journal.logUpdateLoan(customer.getCustomerId(), loan.getRecordKey(), newAmountLeft, newLoanTermLeft);
+                }
+                unindexLoan(loan);
+                customer.updateLoan(recordID, newAmountLeft, newLoanTermLeft);
+                indexLoan(loan);
+                publishLoan(ChangeType.LOAN_UPDATED, customerID, loan);
+                commitLoanVersion(customer, loan);
+            }
+        } finally {
+            endMutation(mutation);
+        }
+        return BankResult.SUCCESS;
+    }
+
+    // Method to advance every loan in the bank by one accrual period, returns the total interest accrued
+    // Customers are processed in parallel, each under its own lock, with the AccrualEngine kernel
+    public double accrueInterest() {
+        return customers.values().parallelStream().mapToDouble(this::accrueInterest).sum();
+    }
+
+    // Method to advance one customer's loans by one accrual period, returns the interest accrued
+    private double accrueInterest(Customer customer) {
+        Lock mutation = beginMutation();
+        try {
+            synchronized (customer) {
+                ArrayList<Loan> loans = customer.getCreditRecords();
+                int count = loans.size();
+                double[] rates = new double[count];
+                double[] balances = new double[count];
+                double[] overpayments = new double[count];
+                int[] terms = new int[count];
+                for (int i = 0; i < count; i++) {
+                    Loan loan = loans.get(i);
+                    rates[i] = loan.getInterestRate();
+                    balances[i] = loan.getAmountLeft();
+                    overpayments[i] = loan.getOverpayment();
+                    terms[i] = loan.getLoanTermLeft();
+                }
+                double interest = AccrualEngine.advanceRange(rates, balances, overpayments, terms, 0, count);
+                LoanJournal journal = this.journal;
+                if (journal != null) {
+                    for (int i = 0; i < count; i++) {
+                        journal.logUpdateLoan(customer.getCustomerId(), loans.get(i).getRecordKey(), balances[i], terms[i]);
+                    }
+                }
+                for (Loan loan : loans) {
+                    unindexLoan(loan);
+                }
+                customer.applyAccrual(balances, terms);
+                for (Loan loan : loans) {
+                    indexLoan(loan);
+                }
+                for (Loan loan : loans) {
+                    publishLoan(ChangeType.LOAN_UPDATED, customer.getCustomerId(), loan);
+                }
+                BankVersions versions = this.versions;
+                if (versions != null) {
+                    versions.commitCapture(customer); // Every loan changed
+                }
+                return interest;
+            }
+        } finally {
+            endMutation(mutation);
         }
     }
 
     // Method to remove a loan from a customer
-    public void removeLoanFromCustomer(String customerID, String recordID) {
+    public BankResult removeLoanFromCustomer(String customerID, String recordID) {
+        long start = metrics.start(BankOperation.REMOVE_LOAN);
+        BankResult result = removeLoan(customerID, recordID);
+        metrics.record(BankOperation.REMOVE_LOAN, start, result);
+        return result;
+    }
+
+    // Method holding the work of removeLoanFromCustomer
+    private BankResult removeLoan(String customerID, String recordID) {
         // Retrieve customer object using customerID
-        Customer customer = customers.get(customerID.toUpperCase());
-        if (customer != null) {
-            // Remove the loan with specified recordID
-            customer.removeLoan(recordID);
-            // Decrement currentNumberOfRecords
-            currentNumberOfRecords--;
-        } else {
-            System.out.println("Customer not found.");
+        Customer customer = lookupCustomer(customerID);
+        if (customer == null) {
+            report(BankResult.CUSTOMER_NOT_FOUND.getMessage());
+            return BankResult.CUSTOMER_NOT_FOUND;
+        }
+        Lock mutation = beginMutation();
+        try {
+            synchronized (customer) {
+                // Only remove the record if it belongs to this customer
+                if (recordIndex.getOwner(recordID) != customer) {
+                    report(BankResult.RECORD_NOT_FOUND.getMessage());
+                    return BankResult.RECORD_NOT_FOUND;
+                }
+                // Log the removal first, a failure leaves the loan and the record count as they were
+                LoanJournal journal = this.journal;
+                if (journal != null) {
+                    journal.logRemoveLoan(customer.getCustomerId(), IdCodec.recordKey(recordID));
+                }
+                // Remove the loan with specified recordID from the customer and the bank-wide indexes
+                Loan removed = customer.removeLoan(recordID);
+                unindexLoan(removed);
+                recordIndex.remove(recordID);
+                ChangeFeed feed = this.changeFeed;
+                if (feed != null) {
+                    feed.publishRemoveLoan(IdCodec.customerKey(customerID), removed.getRecordKey());
+                }
+                BankVersions versions = this.versions;
+                if (versions != null) {
+                    versions.commitRemoval(customer, removed.getRecordKey());
+                }
+            }
+        } finally {
+            endMutation(mutation);
         }
+        releaseRecords(1); // Decrement currentNumberOfRecords only for a loan that was really removed
+        report("Loan successfully removed.");
+        return BankResult.SUCCESS;
     }
 
     // Main method
@@ -134,7 +855,7 @@ public class XYZBank {
             // Prompt user to enter maximum number of loan records
             System.out.print("Enter maximum number of loan records: ");
             String maxRecordsInput = scanner.nextLine();
-            if (maxRecordsInput.matches("\\d+")) {
+            if (Validators.isWholeNumber(maxRecordsInput)) {
                 // Input is a valid number, convert to integer
                 maxRecords = Integer.parseInt(maxRecordsInput);
                 break; // Exit loop if input is valid
@@ -144,7 +865,25 @@ public class XYZBank {
         }
 
         // Create XYZBank object with maximum records limit
-        XYZBank bank = new XYZBank(maxRecords);
+        // With a directory argument the bank is kept in a BankStore, so every change is journaled and survives a restart
+        BankStore store = null;
+        XYZBank bank;
+        if (args.length > 0) {
+            try {
+                store = BankStore.open(Path.of(args[0]), maxRecords, FsyncPolicy.SYNC, 10);
+            } catch (IOException e) {
+                System.err.println("Cannot open bank store " + args[0] + ": " + e.getMessage());
+                scanner.close();
+                return;
+            }
+            bank = store.getBank();
+            System.out.println("Opened bank store " + args[0] + " with " + bank.getCurrentNumberOfRecords()
+                    + " of " + bank.getMaxRecordsAllowed() + " loan records.");
+        } else {
+            bank = new XYZBank(maxRecords);
+        }
+        // The interactive menu keeps reporting everything to the console
+        bank.setReportMode(ReportMode.FULL, System.out);
         boolean exit = false;
         while (!exit) {
             // Display menu options
@@ -173,7 +912,7 @@ public class XYZBank {
                 do {
                     System.out.print("Enter Customer ID: "); // Prompt user to enter customer ID
                     customerId = scanner.next().toUpperCase(); // Read customer ID from input and convert to uppercase
-                    if (!isValidCustomerId(customerId)) { // Check if the entered customer ID is valid
+                    if (!Validators.isValidCustomerId(customerId)) { // Check if the entered customer ID is valid
                         System.out.println("Invalid Customer ID format. Customer ID should be 3 letters followed by 3 numbers."); // Inform user about invalid format
                         tryAgain = true; // Set flag to true to reattempt input
                     } else {
@@ -187,7 +926,7 @@ public class XYZBank {
                 double income = 0; // Variable to store annual income, initialized to a default value
                 while (true) { // Loop until valid input is received
                     String incomeInput = scanner.nextLine(); // Read user input for annual income
-                    if (incomeInput.matches("\\d+(\\.\\d+)?")) { // Check if input is a valid number
+                    if (Validators.isValidAmount(incomeInput)) { // Check if input is a valid number
                         income = Double.parseDouble(incomeInput); // Parse input as double
                         break; // Exit loop if input is valid
                     } else {
@@ -206,7 +945,7 @@ public class XYZBank {
                 while (!validCustomerIdFormat) {
                     System.out.print("Enter Customer ID for Loan: ");
                     custIdForLoan = scanner.nextLine().toUpperCase(); // Convert to uppercase
-                    if (!isValidCustomerId(custIdForLoan)) {
+                    if (!Validators.isValidCustomerId(custIdForLoan)) {
                         System.out.println("Invalid Customer ID format. Customer ID should be 3 letters followed by 3 numbers.");
                     } else {
                         validCustomerIdFormat = true; // Exit loop if ID is valid
@@ -218,21 +957,14 @@ public class XYZBank {
                 do {
                     System.out.print("Enter Record ID (6 digits only): ");
                     recordId = scanner.nextLine();
-                    if (!recordId.matches("\\d{6}")) {
+                    if (!Validators.isValidRecordId(recordId)) {
                         System.out.println("Invalid Record ID. Please enter a 6-digit numeric value.");
                     }
-                } while (!recordId.matches("\\d{6}"));
+                } while (!Validators.isValidRecordId(recordId));
             
-                // Check for duplicate records
-                boolean duplicate = false;
-                for (Customer customer : bank.customers.values()) {
-                    if (customer.hasLoanWithRecordId(recordId)) {
-                        duplicate = true;
-                        break;
-                    }
-                }
+                // Check for duplicate records using the bank-wide record index
                 // If duplicate record found, prompt user and continue to next iteration
-                if (duplicate) {
+                if (bank.hasRecord(recordId)) {
                     System.out.println("Record with the same Record ID already exists for another customer.");
                     break;
                 }
@@ -242,10 +974,8 @@ public class XYZBank {
                 while (!validLoanType) {
                     System.out.print("Enter Loan Type (Auto, Builder, etc.): ");
                     loanType = scanner.nextLine();
-                    // Assuming you have a predefined list of valid loan types
-                    if (loanType.equalsIgnoreCase("Auto") || loanType.equalsIgnoreCase("Builder") ||
-                        loanType.equalsIgnoreCase("Personal") || loanType.equalsIgnoreCase("Mortgage") ||
-                        loanType.equalsIgnoreCase("Other")) {
+                    // Check the entered name against the supported loan types
+                    if (Validators.isValidLoanType(loanType)) {
                         validLoanType = true;
                     } else {
                         System.out.println("Invalid loan type. Please enter Auto, Builder, Personal, Mortgage, or Other.");
@@ -311,25 +1041,9 @@ public class XYZBank {
                         System.out.println("Invalid input. Please enter a numeric value.");
                     }
                 }
-                if ("Auto".equalsIgnoreCase(loanType)){ // Check if the loan type is "Auto" (case-insensitive)
-                    // If the loan type is "Auto", create a new AutoLoan object and add it to the customer's loans
-                    bank.addLoanToCustomer(custIdForLoan, new AutoLoan(recordId, interestRate, amountLeft, loanTermLeft));
-                } else if ("Builder".equalsIgnoreCase(loanType)){ // Check if the loan type is "Builder" (case-insensitive)
-                    // If the loan type is "Builder", create a new BuilderLoan object and add it to the customer's loans
-                    bank.addLoanToCustomer(custIdForLoan, new BuilderLoan(recordId, interestRate, amountLeft, loanTermLeft, overpayment));
-                } else if ("Personal".equalsIgnoreCase(loanType)){ // Check if the loan type is "Personal" (case-insensitive)
-                    // If the loan type is "Personal", create a new PersonalLoan object and add it to the customer's loans
-                    bank.addLoanToCustomer(custIdForLoan, new PersonalLoan(recordId, interestRate, amountLeft, loanTermLeft));
-                } else if ("Mortgage".equalsIgnoreCase(loanType)){ // Check if the loan type is "Mortgage" (case-insensitive)
-                    // If the loan type is "Mortgage", create a new MortgageLoan object and add it to the customer's loans
-                    bank.addLoanToCustomer(custIdForLoan, new MortgageLoan(recordId, interestRate, amountLeft, loanTermLeft, overpayment));
-                } else if ("Other".equalsIgnoreCase(loanType)){ // Check if the loan type is "Other" (case-insensitive)
-                    // If the loan type is "Other", create a new OtherLoan object and add it to the customer's loans
-                    bank.addLoanToCustomer(custIdForLoan, new OtherLoan(recordId, interestRate, amountLeft, loanTermLeft));
-                } else {
-                    // If the loan type is not recognized, inform the user that it's unsupported
-                    System.out.println("Unsupported loan type. Please enter a valid loan type.");
-                }
+                // Create the loan of the selected type and add it to the customer's loans
+                Loan newLoan = LoanType.fromName(loanType).create(recordId, interestRate, amountLeft, loanTermLeft, overpayment);
+                bank.addLoanToCustomer(custIdForLoan, newLoan);
                 break; // Exit the switch statement after processing the loan type
             case 3: // Handling the case to print customer details
                 String customerIdToPrint; // Initialize variable to store customer ID
@@ -337,7 +1051,7 @@ public class XYZBank {
                 do {
                     System.out.print("Enter Customer ID to Print Details: "); // Prompt user to enter customer ID
                     customerIdToPrint = scanner.nextLine().toUpperCase(); // Read input and convert to uppercase
-                    validCustomerId = customerIdToPrint.matches("[A-Z]{3}\\d{3}"); // Check if the entered customer ID matches the required format
+                    validCustomerId = Validators.isValidCustomerId(customerIdToPrint); // Check if the entered customer ID matches the required format
                     if (!validCustomerId) {
                         System.out.println("Invalid Customer ID format. Customer ID should be 3 letters followed by 3 numbers."); // Inform user about invalid format
                     }
@@ -345,7 +1059,17 @@ public class XYZBank {
                 bank.printCustomerDetails(customerIdToPrint); // Print details of the customer with the provided ID
                 break; // Exit the switch statement after printing customer details
             case 4: // Handling the case to print details of all customers
-                bank.printAllCustomersDetails(); // Invoke the method to print details of all customers
+                bank.writeSummary(System.out); // Print the record counts header once
+                String cursor = null; // Customer ID the next page starts after
+                do {
+                    cursor = bank.printCustomersPage(cursor, CONSOLE_PAGE_SIZE, LoanFilter.ALL, System.out); // Print one page
+                    if (cursor != null) {
+                        System.out.print("Press Enter for more customers, or q to stop: ");
+                        if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                            break; // Stop listing
+                        }
+                    }
+                } while (cursor != null); // Continue until the last page has been printed
                 break; // Exit the switch statement after printing all customer details
             
             case 5: // Handling the case to update customer income
@@ -353,7 +1077,7 @@ public class XYZBank {
                 do {
                     System.out.print("Enter Customer ID to Update Income: "); // Prompt user to enter customer ID
                     customerIdToUpdate = scanner.nextLine().toUpperCase(); // Read input and convert to uppercase
-                    validCustomerId = customerIdToUpdate.matches("[A-Z]{3}\\d{3}"); // Check if the entered customer ID matches the required format
+                    validCustomerId = Validators.isValidCustomerId(customerIdToUpdate); // Check if the entered customer ID matches the required format
                     if (!validCustomerId) {
                         System.out.println("Invalid Customer ID format. Customer ID should be 3 letters followed by 3 numbers."); // Inform user about invalid format
                     }
@@ -363,7 +1087,7 @@ public class XYZBank {
                 while (true) {
                     System.out.print("Enter New Income: "); // Prompt user to enter new income value
                     String incomeInput = scanner.nextLine(); // Read user input
-                    if (incomeInput.matches("\\d+(\\.\\d+)?")) {
+                    if (Validators.isValidAmount(incomeInput)) {
                         // Input is a valid number
                         newIncome = Double.parseDouble(incomeInput); // Convert input to double
                         break; // Exit loop if input is valid
@@ -379,10 +1103,10 @@ public class XYZBank {
                 do {
                     System.out.print("Enter Customer ID to Remove Loan From: "); // Prompt user to enter the customer ID
                     customerIdToRemoveLoan = scanner.nextLine().toUpperCase(); // Read input and convert to uppercase
-                    validCustomerId = customerIdToRemoveLoan.matches("[A-Z]{3}\\d{3}"); // Check if the entered customer ID matches the required format
+                    validCustomerId = Validators.isValidCustomerId(customerIdToRemoveLoan); // Check if the entered customer ID matches the required format
                     if (!validCustomerId) {
                         System.out.println("Invalid Customer ID format. Customer ID should be 3 letters followed by 3 numbers."); // Inform the user about the invalid format
-                    } else if (!bank.customers.containsKey(customerIdToRemoveLoan)) {
+                    } else if (!bank.hasCustomer(customerIdToRemoveLoan)) {
                         System.out.println("Customer with ID " + customerIdToRemoveLoan + " does not exist."); // Inform the user if the customer does not exist
                         validCustomerId = false;
                     }
@@ -393,18 +1117,11 @@ public class XYZBank {
                 do {
                     System.out.print("Enter Record ID of Loan to Remove: "); // Prompt user to enter the loan record ID
                     loanRecordId = scanner.nextLine(); // Read user input
-                    validLoanRecordId = loanRecordId.matches("\\d{6}"); // Check if the entered loan record ID matches the required format
+                    validLoanRecordId = Validators.isValidRecordId(loanRecordId); // Check if the entered loan record ID matches the required format
                     if (!validLoanRecordId) {
                         System.out.println("Invalid Record ID format. Please enter a 6-digit numeric value."); // Inform the user about the invalid format
                     } else {
-                        boolean loanExists = false;
-                        for (Customer customer : bank.customers.values()) {
-                            if (customer.hasLoanWithRecordId(loanRecordId)) {
-                                loanExists = true;
-                                break;
-                            }
-                        }
-                        if (!loanExists) {
+                        if (!bank.hasRecord(loanRecordId)) {
                             System.out.println("Loan with Record ID " + loanRecordId + " does not exist."); // Inform the user if the loan does not exist
                             validLoanRecordId = false;
                         }
@@ -417,6 +1134,13 @@ public class XYZBank {
             case 7: // Case statement to handle exiting the program
                 System.out.println("Exiting..."); // Inform the user about the program exiting
                 scanner.close(); // Close the scanner to release system resources
+                if (store != null) {
+                    try {
+                        store.close(); // Commit the journal before exiting
+                    } catch (IOException e) {
+                        System.err.println("Cannot close bank store: " + e.getMessage());
+                    }
+                }
                 return; // Return from the main method, effectively exiting the program
             
             default: // Default case for handling invalid choices
@@ -425,15 +1149,6 @@ public class XYZBank {
     }
 }
 
-    // Validation method for record ID
-    private static boolean isValidRecordID(String recordID) {
-        return recordID.matches("\\d+");
-    }
-    
-    // Validation method for customer ID
-    private static boolean isValidCustomerId(String customerId) {
-        return customerId.matches("[A-Z]{3}\\d{3}");
-    }
 
     
 
@@ -0,0 +1,896 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+
+// Benchmark harness for the core XYZBank operations
+// Usage: java XYZBankBenchmark [suite] [book sizes...], for example: java XYZBankBenchmark core 1000 100000
+// Every benchmark reports the average time per operation and the bytes allocated per operation
+class XYZBankBenchmark {
+    private static final int RECORD_ID_SPACE = 1_000_000; // Record IDs are 6 digits, so a book holds at most this many loans
+    private static final int LOANS_PER_CUSTOMER = 4; // Loans given to each generated customer
+    private static final int[] DEFAULT_SIZES = {1_000, 10_000, 100_000, 900_000};
+    private static final int WARM_UP_SIZE = 20_000; // Book size of the unreported pass that lets the JIT compile everything
+
+    private static boolean reporting; // False while the warm-up pass runs
+
+    // Blackhole for measured results: every result is folded into a static field, which the JIT cannot drop, and objects
+    // are compared with a volatile field, which keeps them from being scalar-replaced away
+    private static long consumed;
+    private static volatile Object objectSink = new Object(); // Never equal to a result, but the JIT cannot know that
+
+    // Allocation counter of the current thread, the same source the JMH GC profiler reads
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Main method
+    public static void main(String[] args) {
+        String suite = args.length > 0 ? args[0] : "core";
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        if (!runSuite(suite, WARM_UP_SIZE)) {
+            System.out.println("Unknown suite: " + suite);
+            return;
+        }
+        reporting = true;
+        System.out.printf("%-32s %10s %10s %12s %12s%n", "Benchmark", "Book size", "Ops", "ns/op", "bytes/op");
+        for (int size : sizes) {
+            if (size >= RECORD_ID_SPACE) {
+                System.out.println("Skipping book size " + size + ": record IDs only allow " + RECORD_ID_SPACE + " loans.");
+                continue;
+            }
+            runSuite(suite, size);
+        }
+    }
+
+    // Method to run one suite at one book size, returns false if the suite name is unknown
+    private static boolean runSuite(String suite, int size) {
+        switch (suite) {
+            case "core":
+                benchCoreOperations(size);
+                return true;
+            case "recovery":
+                benchRecovery(size);
+                return true;
+            case "memory":
+                benchMemory(size);
+                return true;
+            case "analytics":
+                benchAnalytics(size);
+                return true;
+            case "accrual":
+                benchAccrual(size);
+                return true;
+            case "io":
+                benchImportExport(size);
+                return true;
+            case "validation":
+                benchValidation(size);
+                return true;
+            case "eligibility":
+                benchEligibility(size);
+                return true;
+            case "listing":
+                benchListing(size);
+                return true;
+            case "indexes":
+                benchIndexes(size);
+                return true;
+            case "metrics":
+                benchMetrics(size);
+                return true;
+            case "server":
+                benchServer(size);
+                return true;
+            case "sharding":
+                benchSharding(size);
+                return true;
+            case "feed":
+                benchChangeFeed(size);
+                return true;
+            case "mapped":
+                benchMappedSnapshot(size);
+                return true;
+            case "stress":
+                benchStressScenarios(size);
+                return true;
+            case "snapshots":
+                benchSnapshots(size);
+                return true;
+            case "reports":
+                benchReports(size);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Suite measuring the XYZBank operations used by the menu at the given book size
+    private static void benchCoreOperations(int size) {
+        XYZBank bank = newBook(size);
+        int customerCount = customerCount(size);
+        Random random = new Random(42);
+
+        // Registering customers beyond the generated ones
+        int registrations = Math.min(size, 100_000);
+        String[] newCustomerIds = new String[registrations];
+        for (int i = 0; i < registrations; i++) {
+            newCustomerIds[i] = customerId(customerCount + i);
+        }
+        run("registerNewCustomer", size, registrations, i -> consume(bank.registerNewCustomer(newCustomerIds[i], 50_000)));
+
+        // Adding and then removing loans with record IDs that are not in the book yet
+        int churn = Math.min(100_000, RECORD_ID_SPACE - size);
+        String[] churnIds = recordIds(size, churn);
+        Loan[] churnLoans = new Loan[churn];
+        for (int i = 0; i < churn; i++) {
+            churnLoans[i] = LoanType.PERSONAL.create(churnIds[i], 3.5, 12.0, 5, 0);
+        }
+        String[] churnOwners = new String[churn];
+        for (int i = 0; i < churn; i++) {
+            churnOwners[i] = customerId(random.nextInt(customerCount));
+        }
+        run("addLoanToCustomer", size, churn, i -> consume(bank.addLoanToCustomer(churnOwners[i], churnLoans[i])));
+        run("removeLoanFromCustomer", size, churn, i -> consume(bank.removeLoanFromCustomer(churnOwners[i], churnIds[i])));
+
+        // Income updates and record lookups on existing customers
+        int lookups = 200_000;
+        String[] lookupCustomers = new String[lookups];
+        String[] lookupRecords = new String[lookups];
+        Customer[] lookupOwners = new Customer[lookups];
+        String[] bookIds = recordIds(0, size);
+        for (int i = 0; i < lookups; i++) {
+            lookupRecords[i] = bookIds[random.nextInt(size)];
+            lookupOwners[i] = bank.findCustomerByRecordId(lookupRecords[i]);
+            lookupCustomers[i] = lookupOwners[i].getCustomerId();
+        }
+        run("updateCustomerIncome", size, lookups, i -> consume(bank.updateCustomerIncome(lookupCustomers[i], 40_000 + i)));
+        run("Customer.hasLoanWithRecordId", size, lookups, i -> consume(lookupOwners[i].hasLoanWithRecordId(lookupRecords[i])));
+        run("XYZBank.hasRecord", size, lookups, i -> consume(bank.hasRecord(lookupRecords[i])));
+
+        // Full report of the book, written to a sink so only the formatting work is measured
+        Writer sink = Writer.nullWriter();
+        run("printAllCustomersDetails", size, 3, i -> bank.printAllCustomersDetails(sink));
+    }
+
+    // Suite measuring how long a BankStore takes to recover a book from its journal alone and from a snapshot
+    private static void benchRecovery(int size) {
+        try {
+            Path directory = Files.createTempDirectory("xyzbank-recovery");
+            try (BankStore store = BankStore.open(directory, RECORD_ID_SPACE, FsyncPolicy.GROUP, 10)) {
+                XYZBank bank = store.getBank();
+                for (int c = 0; c < customerCount(size); c++) {
+                    bank.registerNewCustomer(customerId(c), 30_000);
+                }
+                String[] ids = recordIds(0, size);
+                List<LoanRequest> loans = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    loans.add(new LoanRequest(customerId(i / LOANS_PER_CUSTOMER), LoanType.MORTGAGE.create(ids[i], 4.0, 150.0, 25, 1.0)));
+                }
+                bank.addLoans(loans);
+            }
+            // The whole book is in the journal at this point
+            run("recover from journal", size, 3, i -> reopenAndClose(directory));
+            try (BankStore store = BankStore.open(directory, RECORD_ID_SPACE, FsyncPolicy.GROUP, 10)) {
+                store.checkpoint();
+            }
+            // Now the whole book is in the snapshot and the journal is empty
+            run("recover from snapshot", size, 3, i -> reopenAndClose(directory));
+            Files.delete(directory.resolve("snapshot.bin"));
+            Files.delete(directory.resolve("journal.bin"));
+            Files.delete(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Method to recover a store and close it again, for timing recovery without checked exceptions
+    private static void reopenAndClose(Path directory) {
+        try {
+            BankStore.open(directory, RECORD_ID_SPACE, FsyncPolicy.GROUP, 10).close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Suite measuring the retained heap per loan of the object model and of a columnar copy of it
+    // The copy is held on top of the bank, so this compares layouts, it does not shrink the bank
+    // The ns/op column holds the build time per loan and the bytes/op column the retained bytes per loan
+    private static void benchMemory(int size) {
+        long before = usedHeap();
+        long start = System.nanoTime();
+        XYZBank bank = newBook(size);
+        long bankNanos = System.nanoTime() - start;
+        long bankBytes = usedHeap() - before;
+
+        before = usedHeap();
+        start = System.nanoTime();
+        ColumnarLoanStore store = ColumnarLoanStore.from(bank);
+        long storeNanos = System.nanoTime() - start;
+        long storeBytes = usedHeap() - before;
+
+        report("XYZBank objects", size, size, (double) bankNanos / size, (double) bankBytes / size);
+        report("ColumnarLoanStore copy", size, store.size(), (double) storeNanos / size, (double) storeBytes / size);
+    }
+
+    // Suite measuring a full portfolio summary over the live bank and over its columnar copy
+    private static void benchAnalytics(int size) {
+        XYZBank bank = newBook(size);
+        ColumnarLoanStore store = ColumnarLoanStore.from(bank);
+        EligibilityPolicy policy = bank.getEligibilityEvaluator().getPolicy();
+        run("summarize XYZBank", size, 5, i -> consume(bank.getPortfolioSummary()));
+        run("summarize ColumnarLoanStore", size, 5, i -> consume(PortfolioAnalytics.summarize(store, policy)));
+    }
+
+    // Suite measuring one accrual period over the columnar store and over the live bank, reported per loan
+    private static void benchAccrual(int size) {
+        XYZBank bank = newBook(size);
+        ColumnarLoanStore store = ColumnarLoanStore.from(bank);
+        int periods = 5;
+        long start = System.nanoTime();
+        for (int i = 0; i < periods; i++) {
+            AccrualEngine.advance(store);
+        }
+        report("accrual ColumnarLoanStore", size, size, (double) (System.nanoTime() - start) / periods / size, 0);
+        start = System.nanoTime();
+        for (int i = 0; i < periods; i++) {
+            bank.accrueInterest();
+        }
+        report("accrual XYZBank", size, size, (double) (System.nanoTime() - start) / periods / size, 0);
+    }
+
+    // Suite measuring export and import of the book in both file formats, reported per line
+    private static void benchImportExport(int size) {
+        XYZBank bank = newBook(size);
+        try {
+            Path file = Files.createTempFile("xyzbank-book", ".txt");
+            for (BookFormat format : BookFormat.values()) {
+                String name = format.name().toLowerCase();
+                run("export " + name, size, 1, i -> exportBook(bank, file, format));
+                run("import " + name, size, 1, i -> importBook(file, format));
+                if (reporting) {
+                    System.out.printf("  %s file: %.1f bytes/line%n", name, (double) Files.size(file) / size);
+                }
+            }
+            Files.delete(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Method to export a book without checked exceptions, for timing
+    private static void exportBook(XYZBank bank, Path file, BookFormat format) {
+        try {
+            LoanBookIO.exportBook(bank, file, format);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Method to import a file into a new bank without checked exceptions, for timing
+    private static void importBook(Path file, BookFormat format) {
+        try {
+            LoanBookIO.importBook(file, format, new XYZBank(RECORD_ID_SPACE));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Suite measuring the input checks on a mix of valid and invalid IDs, the book size is the number of checks
+    // The regex lines run the String.matches calls the validators replaced, for comparison
+    private static void benchValidation(int size) {
+        String[] customerIds = new String[size];
+        String[] recordIds = new String[size];
+        String[] amounts = new String[size];
+        for (int i = 0; i < size; i++) {
+            boolean valid = i % 4 != 0;
+            customerIds[i] = valid ? customerId(i) : customerId(i).toLowerCase();
+            recordIds[i] = valid ? recordIds(i % RECORD_ID_SPACE, 1)[0] : "12a456";
+            amounts[i] = valid ? (i % 100_000) + "." + (i % 100) : "12.";
+        }
+        run("isValidCustomerId", size, size, i -> consume(Validators.isValidCustomerId(customerIds[i])));
+        run("isValidRecordId", size, size, i -> consume(Validators.isValidRecordId(recordIds[i])));
+        run("isValidAmount", size, size, i -> consume(Validators.isValidAmount(amounts[i])));
+        run("customer ID regex", size, size, i -> consume(customerIds[i].matches("[A-Z]{3}\\d{3}")));
+        run("record ID regex", size, size, i -> consume(recordIds[i].matches("\\d{6}")));
+    }
+
+    // Suite measuring cached eligibility decisions and the parallel re-evaluation after a policy change
+    private static void benchEligibility(int size) {
+        XYZBank bank = newBook(size);
+        Customer[] customers = bank.getCustomers().toArray(new Customer[0]);
+        int checks = 1_000_000;
+        bank.applyEligibilityPolicy(EligibilityPolicy.DEFAULT); // Fill every cache once
+        run("isEligible cached", size, checks, i -> consume(customers[i % customers.length].isEligible()));
+        int rounds = 5;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            bank.applyEligibilityPolicy(EligibilityPolicy.incomeMultiple(3 + i % 2));
+        }
+        report("applyEligibilityPolicy", size, customers.length,
+                (double) (System.nanoTime() - start) / rounds / customers.length, 0); // Per customer
+        if (reporting) {
+            EligibilityEvaluator evaluator = bank.getEligibilityEvaluator();
+            System.out.printf("  hit rate %.3f, %d evaluations%n", evaluator.getHitRate(), evaluator.getEvaluationCount());
+        }
+    }
+
+    // Suite measuring a page of the customer listing at random cursors and filtered walks over the whole book
+    private static void benchListing(int size) {
+        XYZBank bank = newBook(size);
+        int customerCount = customerCount(size);
+        Random random = new Random(42);
+        int pages = 10_000;
+        String[] cursors = new String[pages];
+        for (int i = 0; i < pages; i++) {
+            cursors[i] = customerId(random.nextInt(customerCount));
+        }
+        Writer sink = Writer.nullWriter();
+        run("listCustomers page of 50", size, pages, i -> consume(bank.listCustomers(cursors[i], 50, LoanFilter.ALL)));
+        run("printCustomersPage of 50", size, pages, i -> consume(bank.printCustomersPage(cursors[i], 50, LoanFilter.ALL, sink)));
+        LoanFilter filter = LoanFilter.ALL.withType(LoanType.MORTGAGE).withMinBalance(300);
+        run("listLoans filtered, whole book", size, 3, i -> consume(bank.listLoans(null, filter).count()));
+    }
+
+    // Suite measuring the write overhead of the secondary loan indexes and their queries against full scans
+    private static void benchIndexes(int size) {
+        for (boolean indexed : new boolean[] {false, true}) {
+            XYZBank bank = newBook(size, indexed);
+            String suffix = indexed ? " indexed" : " plain";
+            int churn = Math.min(100_000, RECORD_ID_SPACE - size);
+            String[] churnIds = recordIds(size, churn);
+            Loan[] churnLoans = new Loan[churn];
+            String[] churnOwners = new String[churn];
+            Random random = new Random(42);
+            for (int i = 0; i < churn; i++) {
+                churnLoans[i] = LoanType.MORTGAGE.create(churnIds[i], 3.5, random.nextInt(1_000), 1 + random.nextInt(30), 0);
+                churnOwners[i] = customerId(random.nextInt(customerCount(size)));
+            }
+            run("addLoanToCustomer" + suffix, size, churn, i -> consume(bank.addLoanToCustomer(churnOwners[i], churnLoans[i])));
+            run("updateLoan" + suffix, size, churn, i -> consume(bank.updateLoan(churnOwners[i], churnIds[i], i % 997, 1 + i % 30)));
+            run("removeLoanFromCustomer" + suffix, size, churn, i -> consume(bank.removeLoanFromCustomer(churnOwners[i], churnIds[i])));
+            if (indexed) {
+                run("Mortgage, term > 20 (index)", size, 20, i -> consume(bank.findLoansByTerm(LoanType.MORTGAGE, 21, Integer.MAX_VALUE)));
+                run("top 100 balances (index)", size, 20, i -> consume(bank.topBalances(null, 100)));
+            } else {
+                run("Mortgage, term > 20 (scan)", size, 20, i -> consume(bank.listLoans(null, LoanFilter.ALL.withType(LoanType.MORTGAGE))
+                        .filter(loan -> loan.getLoanTermLeft() > 20).count()));
+                run("top 100 balances (scan)", size, 20, i -> consume(bank.listLoans(null, LoanFilter.ALL)
+                        .sorted((a, b) -> Double.compare(b.getAmountLeft(), a.getAmountLeft())).limit(100).count()));
+            }
+        }
+    }
+
+    // Suite measuring the cost of BankMetrics: the same operations on one book with metrics disabled and enabled
+    private static void benchMetrics(int size) {
+        XYZBank bank = newBook(size, false);
+        Random random = new Random(42);
+        int churn = Math.min(100_000, RECORD_ID_SPACE - size);
+        String[] churnIds = recordIds(size, churn);
+        Loan[] churnLoans = new Loan[churn];
+        String[] churnOwners = new String[churn];
+        for (int i = 0; i < churn; i++) {
+            churnLoans[i] = LoanType.PERSONAL.create(churnIds[i], 3.5, 12.0, 5, 0);
+            churnOwners[i] = customerId(random.nextInt(customerCount(size)));
+        }
+        int lookups = 1_000_000;
+        String[] lookupRecords = new String[lookups];
+        String[] bookIds = recordIds(0, size);
+        for (int i = 0; i < lookups; i++) {
+            lookupRecords[i] = bookIds[random.nextInt(size)];
+        }
+        for (boolean enabled : new boolean[] {false, true}) {
+            bank.getMetrics().setEnabled(enabled);
+            bank.getMetrics().reset();
+            String suffix = enabled ? " metrics on" : " metrics off";
+            run("addLoanToCustomer" + suffix, size, churn, i -> consume(bank.addLoanToCustomer(churnOwners[i], churnLoans[i])));
+            run("removeLoanFromCustomer" + suffix, size, churn, i -> consume(bank.removeLoanFromCustomer(churnOwners[i], churnIds[i])));
+            run("updateCustomerIncome" + suffix, size, churn, i -> consume(bank.updateCustomerIncome(churnOwners[i], 40_000 + i)));
+            run("hasRecord" + suffix, size, lookups, i -> consume(bank.hasRecord(lookupRecords[i])));
+        }
+        if (reporting) {
+            bank.getMetrics().dump(System.out);
+        }
+    }
+
+    // Suite measuring BankServer under BankLoadGenerator with a growing number of concurrent clients
+    // The ns/op column holds the elapsed time per request over all clients, so it is the inverse of the throughput
+    private static void benchServer(int size) {
+        XYZBank bank = newBook(size);
+        try (BankServer server = new BankServer(bank, 0)) {
+            for (int clients : new int[] {1, 16, 256, 2048}) {
+                int requestsPerClient = Math.max(20, 100_000 / clients);
+                BankLoadGenerator generator = new BankLoadGenerator(server.getAddress(), clients, requestsPerClient, size);
+                long elapsed = generator.run();
+                LatencyHistogram latencies = generator.getLatencies();
+                report("server " + clients + " clients", size, (int) latencies.getCount(),
+                        (double) elapsed / latencies.getCount(), 0);
+                if (reporting) {
+                    System.out.printf("    latency us: p50 %.1f, p99 %.1f, p99.9 %.1f, errors %d%n",
+                            latencies.getValueAtPercentile(50) / 1e3, latencies.getValueAtPercentile(99) / 1e3,
+                            latencies.getValueAtPercentile(99.9) / 1e3, generator.getErrors());
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            throw new IllegalStateException("Server benchmark failed", e);
+        }
+    }
+
+    // Suite measuring the throughput of a ShardedBank with one client thread per shard
+    // Each thread mixes income updates, record lookups and add/remove churn on random customers
+    // The ns/op column holds the elapsed time per operation over all threads, so it is the inverse of the throughput
+    private static void benchSharding(int size) {
+        int totalOps = 400_000;
+        double baseline = 0;
+        for (int shardCount : new int[] {1, 2, 4, 8}) {
+            ShardedBank bank = new ShardedBank(shardCount, RECORD_ID_SPACE, false);
+            int customers = customerCount(size);
+            for (int c = 0; c < customers; c++) {
+                bank.registerNewCustomer(customerId(c), 30_000);
+            }
+            String[] ids = recordIds(0, size);
+            for (int i = 0; i < size; i++) {
+                bank.addLoanToCustomer(customerId(i / LOANS_PER_CUSTOMER), LoanType.PERSONAL.create(ids[i], 3.5, 1_200.0, 5, 0));
+            }
+            int churnPerThread = Math.min(10_000, (RECORD_ID_SPACE - size) / shardCount);
+            Thread[] threads = new Thread[shardCount];
+            for (int t = 0; t < shardCount; t++) {
+                int first = size + t * churnPerThread;
+                int seed = t;
+                threads[t] = new Thread(() -> shardingClient(bank, customers, ids, first, churnPerThread, totalOps / shardCount, seed));
+            }
+            long start = System.nanoTime();
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            double nanosPerOp = (double) (System.nanoTime() - start) / totalOps;
+            report("sharded bank " + shardCount + " shards", size, totalOps, nanosPerOp, 0);
+            if (shardCount == 1) {
+                baseline = nanosPerOp;
+            } else if (reporting) {
+                System.out.printf("    throughput %.2fx one shard on %d cores%n", baseline / nanosPerOp,
+                        Runtime.getRuntime().availableProcessors());
+            }
+        }
+    }
+
+    // Method to run the operation mix of one sharding benchmark thread
+    private static void shardingClient(ShardedBank bank, int customers, String[] bookIds, int firstChurnKey, int churn,
+                                       int ops, int seed) {
+        Random random = new Random(seed);
+        String[] churnIds = recordIds(firstChurnKey, churn);
+        String[] owners = new String[churn];
+        for (int i = 0; i < ops; i++) {
+            String customer = customerId(random.nextInt(customers));
+            switch (i & 3) {
+                case 0:
+                    bank.updateCustomerIncome(customer, 40_000 + i);
+                    break;
+                case 1:
+                    consume(bank.hasRecord(bookIds[random.nextInt(bookIds.length)]));
+                    break;
+                default:
+                    int slot = (i >>> 1) % churn;
+                    if (owners[slot] == null) {
+                        owners[slot] = customer;
+                        bank.addLoanToCustomer(customer, LoanType.PERSONAL.create(churnIds[slot], 3.5, 1_200.0, 5, 0));
+                    } else {
+                        bank.removeLoanFromCustomer(owners[slot], churnIds[slot]);
+                        owners[slot] = null;
+                    }
+                    break;
+            }
+        }
+    }
+
+    // Suite measuring what a ChangeFeed costs the mutation path, without a feed and with 0, 1, 4 and 16 subscribers
+    // Subscribers run on their own threads, so on few cores the writer also shares the CPU with them
+    private static void benchChangeFeed(int size) {
+        XYZBank bank = newBook(size, false);
+        Random random = new Random(42);
+        int churn = Math.min(100_000, RECORD_ID_SPACE - size);
+        String[] churnIds = recordIds(size, churn);
+        Loan[] churnLoans = new Loan[churn];
+        String[] churnOwners = new String[churn];
+        for (int i = 0; i < churn; i++) {
+            churnLoans[i] = LoanType.PERSONAL.create(churnIds[i], 3.5, 12.0, 5, 0);
+            churnOwners[i] = customerId(random.nextInt(customerCount(size)));
+        }
+        for (int subscribers : new int[] {-1, 0, 1, 4, 16}) {
+            ChangeFeed feed = subscribers < 0 ? null : new ChangeFeed();
+            bank.setChangeFeed(feed);
+            List<ChangeFeed.Subscription> subscriptions = new ArrayList<>();
+            double[] sums = new double[Math.max(0, subscribers)];
+            for (int s = 0; s < subscribers; s++) {
+                int subscriber = s;
+                subscriptions.add(feed.subscribe("feed-subscriber-" + s, (events, count) -> {
+                    for (int i = 0; i < count; i++) {
+                        sums[subscriber] += events[i].getAmountLeft() + events[i].getIncome();
+                    }
+                }, 1024));
+            }
+            String suffix = subscribers < 0 ? " no feed" : " " + subscribers + " subscribers";
+            run("addLoanToCustomer" + suffix, size, churn, i -> consume(bank.addLoanToCustomer(churnOwners[i], churnLoans[i])));
+            run("updateCustomerIncome" + suffix, size, churn, i -> consume(bank.updateCustomerIncome(churnOwners[i], 40_000 + i)));
+            run("removeLoanFromCustomer" + suffix, size, churn, i -> consume(bank.removeLoanFromCustomer(churnOwners[i], churnIds[i])));
+            if (feed != null) {
+                LockSupport.parkNanos(20_000_000); // Let the subscribers catch up before counting
+                long delivered = 0;
+                long missed = 0;
+                for (ChangeFeed.Subscription subscription : subscriptions) {
+                    delivered += subscription.getDelivered();
+                    missed += subscription.getMissed();
+                }
+                for (double sum : sums) {
+                    consume(sum);
+                }
+                if (reporting && subscribers > 0) {
+                    System.out.printf("    published %d, per subscriber delivered %d and missed %d on average%n",
+                            feed.getPublishedCount(), delivered / subscribers, missed / subscribers);
+                }
+                feed.close();
+            }
+        }
+        bank.setChangeFeed(null);
+    }
+
+    // Suite measuring a MappedBank: writing and opening its snapshot, lookups served from the mapped file against the
+    // live bank, first and later changes to snapshot customers, and merging the changes into a new snapshot
+    private static void benchMappedSnapshot(int size) {
+        try {
+            XYZBank bank = newBook(size, false);
+            Path file = Files.createTempFile("xyzbank-mapped", ".map");
+            Path merged = Files.createTempFile("xyzbank-mapped", ".map");
+            run("write mapped snapshot", size, 1, i -> writeMapped(bank, file));
+            MappedBank[] opened = new MappedBank[1];
+            run("open mapped snapshot", size, 3, i -> opened[0] = openMapped(file));
+            MappedBank mapped = opened[0];
+
+            Random random = new Random(42);
+            int lookups = 200_000;
+            String[] lookupCustomers = new String[lookups];
+            String[] lookupRecords = new String[lookups];
+            for (int i = 0; i < lookups; i++) {
+                lookupCustomers[i] = customerId(random.nextInt(customerCount(size)));
+                lookupRecords[i] = IdCodec.recordId(random.nextInt(Math.min(RECORD_ID_SPACE, 2 * size))); // Half miss
+            }
+            run("hasRecord live", size, lookups, i -> consume(bank.hasRecord(lookupRecords[i])));
+            run("hasRecord mapped", size, lookups, i -> consume(mapped.hasRecord(lookupRecords[i])));
+            run("getCustomerListing live", size, lookups, i -> consume(bank.getCustomerListing(lookupCustomers[i])));
+            run("getCustomerListing mapped", size, lookups, i -> consume(mapped.getCustomerListing(lookupCustomers[i])));
+            StringBuilder out = new StringBuilder();
+            int prints = lookups / 10;
+            run("printCustomerDetails live", size, prints, i -> {
+                out.setLength(0);
+                bank.printCustomerDetails(lookupCustomers[i], out);
+            });
+            run("printCustomerDetails mapped", size, prints, i -> {
+                out.setLength(0);
+                mapped.printCustomerDetails(lookupCustomers[i], out);
+            });
+
+            // The first change to a customer copies it into the overlay, later ones go straight to the overlay
+            int changes = Math.min(customerCount(size), 100_000);
+            run("updateCustomerIncome mapped, first change", size, changes,
+                    i -> consume(mapped.updateCustomerIncome(customerId(i), 40_000 + i)));
+            run("updateCustomerIncome mapped, later change", size, changes,
+                    i -> consume(mapped.updateCustomerIncome(customerId(i), 50_000 + i)));
+            run("write merged snapshot", size, 1, i -> writeMerged(mapped, merged));
+            Files.delete(file);
+            Files.delete(merged);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Method to write a mapped snapshot of a bank, for timing without checked exceptions
+    private static void writeMapped(XYZBank bank, Path file) {
+        try {
+            MappedSnapshot.write(bank, file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Method to open a mapped bank, for timing without checked exceptions
+    private static MappedBank openMapped(Path file) {
+        try {
+            return MappedBank.open(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Method to merge a mapped bank into a new snapshot, for timing without checked exceptions
+    private static void writeMerged(MappedBank bank, Path file) {
+        try {
+            bank.writeSnapshot(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Suite measuring stress scenarios over a columnar snapshot, one scenario alone and a grid of them in parallel
+    // Reported per scenario; the grid crosses rate shocks on each loan type with income drops
+    private static void benchStressScenarios(int size) {
+        XYZBank bank = newBook(size);
+        StressTestEngine engine = StressTestEngine.from(bank, PortfolioSummary.MAX_TERM_BUCKET);
+        StressScenario single = StressScenario.baseline("rates +2%").withRateShock(2.0).withIncomeChange(-10);
+        run("stress scenario", size, 5, i -> consume(engine.run(single)));
+
+        List<StressScenario> grid = new ArrayList<>();
+        int count = Math.max(8, Math.min(1_000, 20_000_000 / size));
+        for (int i = 0; grid.size() < count; i++) {
+            LoanType type = LoanType.fromCode(i % LoanType.values().length);
+            double shock = 0.25 * (i / LoanType.values().length % 13);
+            double incomeChange = -2.5 * (i % 13);
+            grid.add(StressScenario.baseline("grid " + i).withRateShock(shock, type).withIncomeChange(incomeChange));
+        }
+        long start = System.nanoTime();
+        List<ScenarioResult> results = engine.runAll(grid);
+        report("stress scenarios, parallel", size, count, (double) (System.nanoTime() - start) / count, 0);
+        if (reporting) {
+            System.out.printf("    %d threads, %s%n", Runtime.getRuntime().availableProcessors(), results.get(count - 1));
+        }
+    }
+
+    // Suite measuring snapshot reads: what versioning costs a writer, and writers and a reader running together
+    // The reader walks the whole book over and over, either customer by customer under their locks or from one snapshot
+    private static void benchSnapshots(int size) {
+        XYZBank bank = newBook(size, false);
+        int customers = customerCount(size);
+        String[] ids = recordIds(0, size);
+        int ops = Math.min(size, 200_000);
+        run("updateLoan versions off", size, ops,
+                i -> consume(bank.updateLoan(customerId(i / LOANS_PER_CUSTOMER), ids[i], 100.0 + i, 12)));
+        run("first snapshot", size, 1, i -> bank.openSnapshot().close());
+        run("updateLoan versions on", size, ops,
+                i -> consume(bank.updateLoan(customerId(i / LOANS_PER_CUSTOMER), ids[i], 200.0 + i, 12)));
+        run("updateCustomerIncome versions on", size, ops, i -> consume(bank.updateCustomerIncome(customerId(i % customers), 40_000 + i)));
+        for (boolean snapshots : new boolean[] {false, true}) {
+            int writers = 2;
+            int writerOps = 400_000;
+            AtomicBoolean writing = new AtomicBoolean(true);
+            long[] read = new long[2]; // Customers read and passes over the book
+            Thread reader = new Thread(() -> {
+                while (writing.get()) {
+                    double[] total = new double[1];
+                    if (snapshots) {
+                        try (BankSnapshot snapshot = bank.openSnapshot()) {
+                            read[0] += snapshot.listCustomers(null, LoanFilter.ALL)
+                                    .peek(listing -> total[0] += listing.getTotalAmountLeft()).count();
+                        }
+                    } else {
+                        read[0] += bank.listCustomers(null, LoanFilter.ALL)
+                                .peek(listing -> total[0] += listing.getTotalAmountLeft()).count();
+                    }
+                    consume(total[0]);
+                    read[1]++;
+                }
+            });
+            Thread[] threads = new Thread[writers];
+            for (int t = 0; t < writers; t++) {
+                int seed = t;
+                threads[t] = new Thread(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < writerOps; i++) {
+                        int loan = random.nextInt(size);
+                        if ((i & 1) == 0) {
+                            bank.updateLoan(customerId(loan / LOANS_PER_CUSTOMER), ids[loan], 100.0 + i, 12);
+                        } else {
+                            bank.updateCustomerIncome(customerId(loan / LOANS_PER_CUSTOMER), 40_000 + i);
+                        }
+                    }
+                });
+            }
+            long start = System.nanoTime();
+            reader.start();
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            try {
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                writing.set(false);
+                reader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+            String mode = snapshots ? "snapshot reader" : "live reader";
+            report("mixed writes, " + mode, size, writers * writerOps, (double) elapsed / (writers * writerOps), 0);
+            if (reporting) {
+                System.out.printf("    reader: %d customers in %d passes, %.1f ns per customer%n",
+                        read[0], read[1], read[0] == 0 ? 0.0 : (double) elapsed / read[0]);
+            }
+        }
+    }
+
+    // Suite measuring the report of all customers in each format and single customer statements
+    // The printf baseline formats the same report row by row with a Formatter, as the bank did before ReportRenderer
+    private static void benchReports(int size) {
+        XYZBank bank = newBook(size, false);
+        bank.openSnapshot().close(); // Switch versioning on outside the timings
+        Writer sink = Writer.nullWriter();
+        run("report printf baseline", size, 1, i -> printfReport(bank, sink));
+        for (ReportFormat format : ReportFormat.values()) {
+            run("report " + format.name().toLowerCase(), size, 1, i -> bank.printAllCustomersDetails(sink, format));
+        }
+        try {
+            Path file = Files.createTempFile("xyzbank-report", ".txt");
+            run("report text to FileChannel", size, 1, i -> writeReport(bank, file));
+            Files.delete(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int statements = Math.min(customerCount(size), 100_000);
+        run("statement printf baseline", size, statements, i -> printfStatement(bank.getCustomerListing(customerId(i)), sink));
+        run("statement text", size, statements, i -> bank.printCustomerDetails(customerId(i), sink));
+    }
+
+    // Method to write the report of all customers the way the bank did before ReportRenderer
+    private static void printfReport(XYZBank bank, Appendable out) {
+        Formatter formatter = new Formatter(out);
+        formatter.format("Maximum number of Records: %d%n", bank.getMaxRecordsAllowed());
+        formatter.format("Registered records: %d%n", bank.getCurrentNumberOfRecords());
+        formatter.format("================================%n");
+        bank.listCustomers(null, LoanFilter.ALL).forEach(listing -> {
+            formatter.format("CustomerID: %s%n", listing.getCustomerId());
+            if (listing.getLoans().isEmpty()) {
+                formatter.format("No loans found for this customer.%n");
+            } else {
+                formatter.format("%-10s %-15s %-10s %-10s %-8s%n",
+                        "RecordID", "LoanType", "IntRate", "AmountLeft", "TimeLeft");
+                for (Loan loan : listing.getLoans()) {
+                    formatter.format("%-10s %-15s %-10.2f %-10.2f %-8d%n",
+                            loan.getRecordID(), loan.getLoanType(),
+                            loan.getInterestRate(), loan.getAmountLeft(), loan.getLoanTermLeft());
+                }
+            }
+            formatter.format("--------------------------------%n");
+        });
+    }
+
+    // Method to write a customer statement the way Customer did before ReportRenderer
+    private static void printfStatement(CustomerListing listing, Appendable out) {
+        Formatter formatter = new Formatter(out);
+        formatter.format("Maximum number of Records: %n");
+        formatter.format("Registered records: %n");
+        formatter.format("================================%n");
+        formatter.format("Eligible to arrange new loans - %b%n", listing.isEligible());
+        formatter.format("CustomerID: %s%n", listing.getCustomerId());
+        formatter.format("%-12s %-15s %-12s %-15s %-18s%n",
+                "Record ID", "Loan Type", "Interest Rate", "Amount Left", "Loan Term Left");
+        for (Loan loan : listing.getLoans()) {
+            formatter.format("%-12s %-15s %-12.2f £%-15.2f %-18d%n",
+                    loan.getRecordID(), loan.getLoanType(),
+                    loan.getInterestRate(), loan.getAmountLeft(), loan.getLoanTermLeft());
+        }
+    }
+
+    // Method to write the text report of all customers to a file through a FileChannel
+    private static void writeReport(XYZBank bank, Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             BankSnapshot snapshot = bank.openSnapshot()) {
+            ReportRenderer renderer = new ReportRenderer(channel, ReportFormat.TEXT);
+            snapshot.renderReport(renderer);
+            renderer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Method to get the heap in use after a full collection
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    // Method to build a quiet bank holding the given number of loans spread over generated customers
+    static XYZBank newBook(int size) {
+        return newBook(size, false);
+    }
+
+    // Method to build a quiet bank with or without secondary loan indexes
+    static XYZBank newBook(int size, boolean secondaryIndexes) {
+        XYZBank bank = new XYZBank(RECORD_ID_SPACE, secondaryIndexes);
+        int customerCount = customerCount(size);
+        for (int c = 0; c < customerCount; c++) {
+            bank.registerNewCustomer(customerId(c), 30_000 + (c % 50) * 1_000);
+        }
+        String[] ids = recordIds(0, size);
+        LoanType[] types = LoanType.values();
+        for (int i = 0; i < size; i++) {
+            LoanType type = types[i % types.length];
+            Loan loan = type.create(ids[i], 1.0 + (i % 90) / 10.0, 5.0 + (i % 400), 1 + (i % 30), i % 3);
+            bank.addLoanToCustomer(customerId(i / LOANS_PER_CUSTOMER), loan);
+        }
+        return bank;
+    }
+
+    // Method to get the number of generated customers for a book size
+    static int customerCount(int size) {
+        return Math.max(1, (size + LOANS_PER_CUSTOMER - 1) / LOANS_PER_CUSTOMER);
+    }
+
+    // Method to generate the customer ID for an index, AAA000, AAA001, ... ZZZ999
+    static String customerId(int index) {
+        return IdCodec.customerId(index % IdCodec.CUSTOMER_KEY_SPACE);
+    }
+
+    // Method to generate consecutive 6-digit record IDs
+    static String[] recordIds(int first, int count) {
+        String[] ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = IdCodec.recordId(first + i);
+        }
+        return ids;
+    }
+
+    // Method to time an operation over the given number of calls
+    static void run(String name, int size, int ops, IntConsumer operation) {
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            operation.accept(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        report(name, size, ops, (double) elapsed / ops, (double) allocated / ops);
+    }
+
+    // Methods to consume the result of a measured call, see the consumed field
+    static void consume(boolean value) {
+        consumed += value ? 1 : 0;
+    }
+
+    static void consume(long value) {
+        consumed += value;
+    }
+
+    static void consume(double value) {
+        consumed += Double.doubleToRawLongBits(value);
+    }
+
+    static void consume(Object value) {
+        if (value == objectSink) {
+            consumed++;
+        }
+    }
+
+    // Method to print one result line, skipped during the warm-up pass
+    static void report(String name, int size, int ops, double nanosPerOp, double bytesPerOp) {
+        if (reporting) {
+            System.out.printf("%-32s %10d %10d %12.1f %12.1f%n", name, size, ops, nanosPerOp, bytesPerOp);
+        }
+    }
+}
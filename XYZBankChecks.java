@@ -0,0 +1,816 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+
+// Long-running randomized checks of the XYZBank invariants, run from the command line like XYZBankBenchmark
+// Usage: java XYZBankChecks [check] [operations] [seed], for example: java XYZBankChecks balance 100000000
+// Every check prints what it verified; the process exits with status 1 on the first violation, so scripts can run it
+class XYZBankChecks {
+    private static final String[] CHECKS = {"balance", "records", "concurrency", "journal"}; // Checks run by "all", in order
+    private static final long DEFAULT_OPERATIONS = 10_000_000;
+    private static final double DRIFT_TOLERANCE = 1e-6; // Amounts are in thousands, so this is a thousandth of a unit
+
+    // Settings of the balance check
+    private static final int BALANCE_CUSTOMERS = 100;
+    private static final int LOAN_SLOTS = 64; // Record IDs per customer, each slot holds a loan or is free
+
+    // Settings of the records check
+    private static final int RECORD_CUSTOMERS = 40; // Registered customers
+    private static final int UNKNOWN_CUSTOMERS = 10; // Customer IDs that are never registered
+    private static final int RECORD_KEYS = 500; // Record IDs the operations draw from
+    private static final int RECORD_CAP = 300; // Records limit of the bank, low enough to be reached often
+
+    // Settings of the concurrency check
+    private static final int REGISTRATION_RACES = 2_000; // Customer IDs every thread tries to register
+    private static final int SHARED_CUSTOMERS = 32; // Customers every thread adds loans to and removes loans from
+    private static final int SHARED_KEYS = 512; // Record IDs every thread adds and removes
+    private static final int BATCH_KEYS = 64; // Record IDs of each thread, added in batches
+    private static final int CONCURRENT_CAP = 600; // Records limit of the bank, reached all the time
+
+    // Settings of the journal check
+    private static final long MAX_JOURNAL_OPERATIONS = 400_000; // Every operation writes to a temporary file, so cap them
+    private static final int JOURNAL_CUSTOMERS = 64; // Customer IDs the operations draw from, registered along the way
+    private static final int JOURNAL_KEYS = 2_048; // Record IDs the operations draw from
+    private static final int JOURNAL_CAP = 1_500; // Records limit of the bank
+
+    // Main method
+    public static void main(String[] args) {
+        String check = args.length > 0 ? args[0] : "all";
+        long operations = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_OPERATIONS;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+        System.out.println("Seed: " + seed + " (pass it as the third argument to repeat a run)");
+        if (check.equals("all")) {
+            for (String name : CHECKS) {
+                runCheck(name, operations, seed);
+            }
+        } else if (!runCheck(check, operations, seed)) {
+            System.out.println("Unknown check: " + check);
+            System.exit(2);
+        }
+        System.out.println("All checks passed.");
+    }
+
+    // Method to run one check, returns false if the check name is unknown
+    private static boolean runCheck(String check, long operations, long seed) {
+        switch (check) {
+            case "balance":
+                checkBalance(operations, seed);
+                return true;
+            case "records":
+                checkRecords(operations, seed);
+                return true;
+            case "concurrency":
+                checkConcurrency(operations, seed);
+                return true;
+            case "journal":
+                checkJournal(operations, seed);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Method to report a violated invariant and stop with a failure status
+    private static void fail(String check, long operation, String message) {
+        System.out.println(check + ": FAILED after " + operation + " operations: " + message);
+        System.exit(1);
+    }
+
+    // Check that Customer's running outstanding balance stays equal to a full recomputation over its loans
+    // Random adds, removes, balance changes and term changes run against customers that are rarely left without loans,
+    // so rounding errors have the longest possible time to build up; amounts mix magnitudes from 0.001 to 10,000
+    // The cached eligibility decision must also follow the recomputed total
+    private static void checkBalance(long operations, long seed) {
+        Random random = new Random(seed);
+        Customer[] customers = new Customer[BALANCE_CUSTOMERS];
+        Loan[][] slots = new Loan[BALANCE_CUSTOMERS][LOAN_SLOTS];
+        int[] loanCounts = new int[BALANCE_CUSTOMERS];
+        for (int c = 0; c < BALANCE_CUSTOMERS; c++) {
+            customers[c] = new Customer(IdCodec.customerId(c), randomAmount(random));
+        }
+        double worstDrift = 0;
+        for (long op = 1; op <= operations; op++) {
+            int c = random.nextInt(BALANCE_CUSTOMERS);
+            Customer customer = customers[c];
+            int slot = random.nextInt(LOAN_SLOTS);
+            Loan loan = slots[c][slot];
+            int action = random.nextInt(100);
+            if (loan == null) {
+                // A free slot gets a new loan, so about four slots in five hold a loan
+                LoanType type = LoanType.fromCode(random.nextInt(LoanType.values().length));
+                loan = type.create(IdCodec.recordId(c * LOAN_SLOTS + slot), 0.5 + random.nextInt(100) / 10.0,
+                        randomAmount(random), 1 + random.nextInt(30), 0);
+                customer.addLoan(loan);
+                slots[c][slot] = loan;
+                loanCounts[c]++;
+            } else if (action < 25) {
+                if (customer.removeLoan(loan.getRecordID()) != loan) {
+                    fail("balance", op, "removeLoan did not return loan " + loan.getRecordID());
+                }
+                slots[c][slot] = null;
+                loanCounts[c]--;
+            } else if (action < 90) {
+                customer.updateLoanBalance(loan.getRecordID(), randomAmount(random));
+            } else if (action < 97) {
+                customer.updateLoan(loan.getRecordID(), randomAmount(random), random.nextInt(30));
+            } else {
+                customer.updateIncome(randomAmount(random));
+            }
+
+            // Recompute the total from scratch and compare
+            double recomputed = 0;
+            for (Loan held : slots[c]) {
+                if (held != null) {
+                    recomputed += held.getAmountLeft();
+                }
+            }
+            if (customer.getCreditRecords().size() != loanCounts[c]) {
+                fail("balance", op, customer.getCustomerId() + " holds " + customer.getCreditRecords().size()
+                        + " loans, expected " + loanCounts[c]);
+            }
+            double drift = Math.abs(customer.getOutstandingBalance() - recomputed);
+            worstDrift = Math.max(worstDrift, drift);
+            if (drift > DRIFT_TOLERANCE) {
+                fail("balance", op, customer.getCustomerId() + " running balance " + customer.getOutstandingBalance()
+                        + " drifted from the recomputed " + recomputed + " by " + drift);
+            }
+            double income = customer.getAnnualIncome();
+            boolean expected = EligibilityPolicy.DEFAULT.isEligible(income, recomputed);
+            boolean nearLimit = Math.abs(recomputed - 4 * income) <= DRIFT_TOLERANCE; // Drift may tip either way there
+            if (!nearLimit && customer.isEligible() != expected) {
+                fail("balance", op, customer.getCustomerId() + " eligibility is " + !expected + " for income " + income
+                        + " and a recomputed total of " + recomputed);
+            }
+        }
+        System.out.printf("balance: %d operations on %d customers, worst drift %.3g, passed%n",
+                operations, BALANCE_CUSTOMERS, worstDrift);
+    }
+
+    // Check that XYZBank's record count always equals the number of loans its customers really hold
+    // Random single adds, batch adds, updates and removes are run against a model of which customer owns each record ID,
+    // including unknown customers, duplicate record IDs, removals from the wrong customer and adds beyond the limit;
+    // every result must match the model and the count must match both the model and a recount over the customers
+    private static void checkRecords(long operations, long seed) {
+        Random random = new Random(seed);
+        XYZBank bank = new XYZBank(RECORD_CAP);
+        String[] customerIds = new String[RECORD_CUSTOMERS + UNKNOWN_CUSTOMERS];
+        for (int c = 0; c < customerIds.length; c++) {
+            customerIds[c] = IdCodec.customerId(c);
+            if (c < RECORD_CUSTOMERS) {
+                bank.registerNewCustomer(customerIds[c], 50);
+            }
+        }
+        int[] owners = new int[RECORD_KEYS]; // Customer index owning each record key, -1 if the record is free
+        Arrays.fill(owners, -1);
+        int held = 0; // Loans the model holds
+        long[] outcomes = new long[BankResult.values().length];
+        for (long op = 1; op <= operations; op++) {
+            int c = random.nextInt(customerIds.length);
+            int key = random.nextInt(RECORD_KEYS);
+            String recordId = IdCodec.recordId(key);
+            int action = random.nextInt(100);
+            if (action >= 45 && held > 0 && random.nextBoolean()) {
+                // Half of the removes and updates target a loan that exists, with its real owner
+                while (owners[key] < 0) {
+                    key = random.nextInt(RECORD_KEYS);
+                }
+                c = owners[key];
+                recordId = IdCodec.recordId(key);
+            }
+            BankResult expected;
+            BankResult actual;
+            if (action < 45) {
+                if (c >= RECORD_CUSTOMERS) {
+                    expected = BankResult.CUSTOMER_NOT_FOUND;
+                } else if (held >= RECORD_CAP) {
+                    expected = BankResult.LIMIT_REACHED;
+                } else if (owners[key] >= 0) {
+                    expected = BankResult.DUPLICATE_RECORD;
+                } else {
+                    expected = BankResult.SUCCESS;
+                    owners[key] = c;
+                    held++;
+                }
+                actual = bank.addLoanToCustomer(customerIds[c], randomLoan(random, recordId));
+            } else if (action < 80) {
+                if (c >= RECORD_CUSTOMERS) {
+                    expected = BankResult.CUSTOMER_NOT_FOUND;
+                } else if (owners[key] != c) {
+                    expected = BankResult.RECORD_NOT_FOUND;
+                } else {
+                    expected = BankResult.SUCCESS;
+                    owners[key] = -1;
+                    held--;
+                }
+                actual = bank.removeLoanFromCustomer(customerIds[c], recordId);
+            } else if (action < 90) {
+                if (c >= RECORD_CUSTOMERS) {
+                    expected = BankResult.CUSTOMER_NOT_FOUND;
+                } else if (owners[key] != c) {
+                    expected = BankResult.RECORD_NOT_FOUND;
+                } else {
+                    expected = BankResult.SUCCESS;
+                }
+                actual = bank.updateLoan(customerIds[c], recordId, randomAmount(random), 1 + random.nextInt(30));
+            } else {
+                // A batch processes its requests in order and stops at the limit
+                int size = 1 + random.nextInt(16);
+                List<LoanRequest> batch = new ArrayList<>(size);
+                int expectedAdded = 0;
+                boolean full = false;
+                for (int i = 0; i < size; i++) {
+                    int owner = random.nextInt(customerIds.length);
+                    int batchKey = random.nextInt(RECORD_KEYS);
+                    batch.add(new LoanRequest(customerIds[owner], randomLoan(random, IdCodec.recordId(batchKey))));
+                    if (full || owner >= RECORD_CUSTOMERS) {
+                        continue;
+                    }
+                    if (held >= RECORD_CAP) {
+                        full = true;
+                    } else if (owners[batchKey] < 0) {
+                        owners[batchKey] = owner;
+                        held++;
+                        expectedAdded++;
+                    }
+                }
+                int added = bank.addLoans(batch);
+                if (added != expectedAdded) {
+                    fail("records", op, "addLoans added " + added + " loans of a batch of " + size + ", expected "
+                            + expectedAdded);
+                }
+                expected = BankResult.SUCCESS;
+                actual = BankResult.SUCCESS;
+            }
+            if (actual != expected) {
+                fail("records", op, "customer " + customerIds[c] + ", record " + recordId + ": got " + actual
+                        + ", expected " + expected);
+            }
+            outcomes[actual.ordinal()]++;
+
+            int recounted = 0;
+            for (Customer customer : bank.getCustomers()) {
+                recounted += customer.getCreditRecords().size();
+            }
+            int count = bank.getCurrentNumberOfRecords();
+            if (count != held || recounted != held) {
+                fail("records", op, "record count " + count + ", loans held " + recounted + ", expected " + held);
+            }
+            if (bank.hasRecord(recordId) != owners[key] >= 0) {
+                fail("records", op, "record index disagrees about record " + recordId);
+            }
+        }
+        StringBuilder summary = new StringBuilder();
+        for (BankResult result : BankResult.values()) {
+            if (outcomes[result.ordinal()] > 0) {
+                summary.append(", ").append(result).append(' ').append(outcomes[result.ordinal()]);
+            }
+        }
+        System.out.println("records: " + operations + " operations" + summary + ", passed");
+    }
+
+    // Check that XYZBank stays exact when many threads use it at once, in three phases:
+    // 1. every thread tries to register the same customer IDs, and each ID must be registered exactly once
+    // 2. threads add, update and remove loans on shared customers and shared record IDs, add batches of their own record
+    //    IDs and update incomes, while a monitor samples the record count, which must never pass the limit; afterwards,
+    //    for every record ID and customer, successful adds and removes must alternate (so at most one more add than
+    //    removes, and exactly one more for the customer holding it), the count must equal the loans really held and every
+    //    customer's running balance must equal its recomputed total
+    // 3. every thread adds new loans until the limit stops it, and the count must end exactly at the limit
+    // Operations are shared out over max(4, cores) threads
+    private static void checkConcurrency(long operations, long seed) {
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        XYZBank bank = new XYZBank(CONCURRENT_CAP);
+
+        // Phase 1: registration races
+        AtomicIntegerArray registrations = new AtomicIntegerArray(REGISTRATION_RACES);
+        runThreads("concurrency", threads, t -> {
+            for (int i = 0; i < REGISTRATION_RACES; i++) {
+                int index = (i + t * 61) % REGISTRATION_RACES; // Threads start apart and catch up with each other
+                if (bank.registerNewCustomer(IdCodec.customerId(index), 50).isSuccess()) {
+                    registrations.incrementAndGet(index);
+                }
+            }
+        });
+        for (int i = 0; i < REGISTRATION_RACES; i++) {
+            if (registrations.get(i) != 1) {
+                fail("concurrency", 0, IdCodec.customerId(i) + " was registered " + registrations.get(i) + " times");
+            }
+        }
+        if (bank.getCustomerCount() != REGISTRATION_RACES) {
+            fail("concurrency", 0, bank.getCustomerCount() + " customers registered, expected " + REGISTRATION_RACES);
+        }
+
+        // Phase 2: mixed operations under a monitor
+        String[] customerIds = new String[SHARED_CUSTOMERS + 4]; // The last four are never registered
+        for (int c = 0; c < customerIds.length; c++) {
+            customerIds[c] = IdCodec.customerId(c < SHARED_CUSTOMERS ? c : REGISTRATION_RACES + c);
+        }
+        int[][][] adds = new int[threads][SHARED_CUSTOMERS][SHARED_KEYS]; // Successful adds by thread, customer and key
+        int[][][] removes = new int[threads][SHARED_CUSTOMERS][SHARED_KEYS];
+        int[][] batchOwners = new int[threads][BATCH_KEYS]; // Customer holding each batch key of a thread, or -1
+        long perThread = Math.max(1, operations / threads);
+        AtomicBoolean running = new AtomicBoolean(true);
+        int[] highest = new int[1];
+        Thread monitor = new Thread(() -> {
+            while (running.get()) {
+                highest[0] = Math.max(highest[0], bank.getCurrentNumberOfRecords());
+                Thread.onSpinWait();
+            }
+        }, "record-count-monitor");
+        monitor.start();
+        runThreads("concurrency", threads, t -> {
+            Random random = new Random(seed + t);
+            int batchBase = SHARED_KEYS + t * BATCH_KEYS;
+            int[] owners = batchOwners[t];
+            Arrays.fill(owners, -1);
+            for (long op = 0; op < perThread; op++) {
+                int c = random.nextInt(SHARED_CUSTOMERS);
+                int key = random.nextInt(SHARED_KEYS);
+                String recordId = IdCodec.recordId(key);
+                int action = random.nextInt(100);
+                if (action < 35) {
+                    if (bank.addLoanToCustomer(customerIds[c], randomLoan(random, recordId)).isSuccess()) {
+                        adds[t][c][key]++;
+                    }
+                } else if (action < 70) {
+                    if (bank.removeLoanFromCustomer(customerIds[c], recordId).isSuccess()) {
+                        removes[t][c][key]++;
+                    }
+                } else if (action < 78) {
+                    bank.updateLoan(customerIds[c], recordId, randomAmount(random), 1 + random.nextInt(30));
+                } else if (action < 85) {
+                    bank.updateCustomerIncome(customerIds[c], randomAmount(random));
+                } else if (action < 93) {
+                    // The batch adds its eligible requests in order until the limit stops it, so the number added
+                    // tells exactly which ones went in
+                    int size = 1 + random.nextInt(8);
+                    List<LoanRequest> batch = new ArrayList<>(size);
+                    int[] eligible = new int[size];
+                    int[] eligibleOwners = new int[size];
+                    int eligibleCount = 0;
+                    for (int i = 0; i < size; i++) {
+                        int owner = random.nextInt(customerIds.length);
+                        int slot = random.nextInt(BATCH_KEYS);
+                        batch.add(new LoanRequest(customerIds[owner], randomLoan(random, IdCodec.recordId(batchBase + slot))));
+                        boolean taken = owners[slot] >= 0;
+                        for (int j = 0; j < eligibleCount && !taken; j++) {
+                            taken = eligible[j] == slot;
+                        }
+                        if (owner < SHARED_CUSTOMERS && !taken) {
+                            eligible[eligibleCount] = slot;
+                            eligibleOwners[eligibleCount++] = owner;
+                        }
+                    }
+                    int added = bank.addLoans(batch);
+                    if (added > eligibleCount) {
+                        throw new IllegalStateException("addLoans added " + added + " loans, only " + eligibleCount
+                                + " could be added");
+                    }
+                    for (int i = 0; i < added; i++) {
+                        owners[eligible[i]] = eligibleOwners[i];
+                    }
+                } else {
+                    int slot = random.nextInt(BATCH_KEYS);
+                    if (owners[slot] >= 0) {
+                        BankResult result = bank.removeLoanFromCustomer(customerIds[owners[slot]],
+                                IdCodec.recordId(batchBase + slot));
+                        if (!result.isSuccess()) {
+                            throw new IllegalStateException("Removing batch loan " + (batchBase + slot) + " gave " + result);
+                        }
+                        owners[slot] = -1;
+                    }
+                }
+            }
+        });
+        running.set(false);
+        try {
+            monitor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (highest[0] > CONCURRENT_CAP) {
+            fail("concurrency", operations, "record count reached " + highest[0] + ", limit " + CONCURRENT_CAP);
+        }
+        int held = 0;
+        for (int key = 0; key < SHARED_KEYS; key++) {
+            Customer holder = bank.findCustomerByRecordId(IdCodec.recordId(key));
+            for (int c = 0; c < SHARED_CUSTOMERS; c++) {
+                int balance = 0;
+                for (int t = 0; t < threads; t++) {
+                    balance += adds[t][c][key] - removes[t][c][key];
+                }
+                int expected = holder != null && holder.getCustomerId().equals(customerIds[c]) ? 1 : 0;
+                if (balance != expected) {
+                    fail("concurrency", operations, "record " + IdCodec.recordId(key) + " was added to "
+                            + customerIds[c] + " " + balance + " more times than removed, expected " + expected);
+                }
+            }
+            held += holder != null ? 1 : 0;
+        }
+        for (int t = 0; t < threads; t++) {
+            for (int slot = 0; slot < BATCH_KEYS; slot++) {
+                Customer holder = bank.findCustomerByRecordId(IdCodec.recordId(SHARED_KEYS + t * BATCH_KEYS + slot));
+                int owner = batchOwners[t][slot];
+                if (owner < 0 ? holder != null : holder == null || !holder.getCustomerId().equals(customerIds[owner])) {
+                    fail("concurrency", operations, "batch record " + (SHARED_KEYS + t * BATCH_KEYS + slot)
+                            + " is held by the wrong customer");
+                }
+                held += owner >= 0 ? 1 : 0;
+            }
+        }
+        checkHeld(bank, held, operations);
+
+        // Phase 3: fill the bank up to its limit
+        int fillBase = SHARED_KEYS + threads * BATCH_KEYS;
+        runThreads("concurrency", threads, t -> {
+            Random random = new Random(seed - t);
+            int next = fillBase + t * CONCURRENT_CAP; // Each thread has enough record IDs to fill the bank alone
+            while (true) {
+                if (random.nextBoolean()) {
+                    BankResult result = bank.addLoanToCustomer(customerIds[random.nextInt(SHARED_CUSTOMERS)],
+                            randomLoan(random, IdCodec.recordId(next++)));
+                    if (result == BankResult.LIMIT_REACHED) {
+                        return;
+                    } else if (!result.isSuccess()) {
+                        throw new IllegalStateException("Adding a new record gave " + result);
+                    }
+                } else {
+                    List<LoanRequest> batch = new ArrayList<>(4);
+                    for (int i = 0; i < 4; i++) {
+                        batch.add(new LoanRequest(customerIds[random.nextInt(SHARED_CUSTOMERS)],
+                                randomLoan(random, IdCodec.recordId(next++))));
+                    }
+                    if (bank.addLoans(batch) < batch.size()) {
+                        return; // Only the limit stops a batch of new records for known customers
+                    }
+                }
+            }
+        });
+        if (bank.getCurrentNumberOfRecords() != CONCURRENT_CAP) {
+            fail("concurrency", operations, "filled bank holds " + bank.getCurrentNumberOfRecords() + " records, limit "
+                    + CONCURRENT_CAP);
+        }
+        checkHeld(bank, CONCURRENT_CAP, operations);
+        System.out.println("concurrency: " + threads + " threads, " + perThread * threads + " operations, highest record count "
+                + highest[0] + " of " + CONCURRENT_CAP + ", passed");
+    }
+
+    // Method to check a quiet bank's record count and its customers' running balances against the loans they hold
+    private static void checkHeld(XYZBank bank, int expected, long operation) {
+        int recounted = 0;
+        for (Customer customer : bank.getCustomers()) {
+            synchronized (customer) {
+                double total = 0;
+                for (Loan loan : customer.getCreditRecords()) {
+                    total += loan.getAmountLeft();
+                }
+                recounted += customer.getCreditRecords().size();
+                if (Math.abs(customer.getOutstandingBalance() - total) > DRIFT_TOLERANCE) {
+                    fail("concurrency", operation, customer.getCustomerId() + " running balance "
+                            + customer.getOutstandingBalance() + " differs from its recomputed total " + total);
+                }
+            }
+        }
+        if (bank.getCurrentNumberOfRecords() != expected || recounted != expected) {
+            fail("concurrency", operation, "record count " + bank.getCurrentNumberOfRecords() + ", loans held "
+                    + recounted + ", expected " + expected);
+        }
+    }
+
+    // Check that the journal holds exactly the mutations the bank applied, in two parts:
+    // 1. threads mix registrations, adds, batch adds, updates, removes and interest accruals on a bank logging to a
+    //    group-committed journal, which is then closed and replayed into a new bank that must equal the live one
+    // 2. the same mix, without accruals, runs on a bank logging to a synchronously committed journal whose file fails a
+    //    single write half way through: some calls must fail, a call made afterwards must fail without changing the bank,
+    //    and replaying the file must again give the live bank, so no call succeeded with a record that was never written
+    // Operations are shared out over max(4, cores) threads, at most MAX_JOURNAL_OPERATIONS per part
+    private static void checkJournal(long operations, long seed) {
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        long perThread = Math.max(2, Math.min(operations, MAX_JOURNAL_OPERATIONS) / threads);
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("xyzbank-journal-check");
+
+            // Part 1: replay a journal written by many threads
+            Path replayFile = directory.resolve("replay.journal");
+            XYZBank live = new XYZBank(JOURNAL_CAP);
+            LoanJournal journal = LoanJournal.open(replayFile, FsyncPolicy.GROUP, 1);
+            live.attachJournal(journal);
+            runThreads("journal", threads, t -> {
+                Random random = new Random(seed + t);
+                for (long op = 0; op < perThread; op++) {
+                    journalOperation(live, random, true);
+                }
+            });
+            journal.close();
+            compareReplay(replayFile, live, "replayed journal", operations);
+
+            // Part 2: a write fails while threads are logging
+            Path failureFile = directory.resolve("failure.journal");
+            XYZBank failing = new XYZBank(JOURNAL_CAP);
+            FailingChannel channel = new FailingChannel(FileChannel.open(failureFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE));
+            LoanJournal failingJournal = LoanJournal.open(channel, FsyncPolicy.SYNC, 1);
+            failing.attachJournal(failingJournal);
+            AtomicLong failedCalls = new AtomicLong();
+            runThreads("journal", threads, t -> {
+                Random random = new Random(seed - t);
+                for (long op = 0; op < perThread; op++) {
+                    if (t == 0 && op == perThread / 2) {
+                        channel.failNextWrite();
+                    }
+                    try {
+                        journalOperation(failing, random, false);
+                    } catch (UncheckedIOException e) {
+                        failedCalls.incrementAndGet();
+                    }
+                }
+            });
+            if (failedCalls.get() == 0) {
+                fail("journal", operations, "no call failed after the journal's write failed");
+            }
+            for (Customer customer : failing.getCustomers()) {
+                double income = customer.getAnnualIncome();
+                try {
+                    failing.updateCustomerIncome(customer.getCustomerId(), income + 1);
+                    fail("journal", operations, "updating an income succeeded after the journal's write failed");
+                } catch (UncheckedIOException e) {
+                    if (customer.getAnnualIncome() != income) {
+                        fail("journal", operations, "an income the journal refused was applied to the bank");
+                    }
+                }
+                break; // One customer is enough
+            }
+            try {
+                failingJournal.close();
+            } catch (UncheckedIOException e) {
+                // The journal failed, so closing it cannot commit; the channel is closed all the same
+            }
+            compareReplay(failureFile, failing, "journal with a failed write", operations);
+            System.out.println("journal: " + threads + " threads, " + perThread * threads + " operations per part, "
+                    + live.getCurrentNumberOfRecords() + " records replayed, " + failedCalls.get()
+                    + " calls refused after a failed write, passed");
+        } catch (IOException e) {
+            fail("journal", operations, e.toString());
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    // Method to run one random operation of the journal check, with a rare interest accrual over the whole bank if asked
+    private static void journalOperation(XYZBank bank, Random random, boolean accrue) {
+        String customerId = IdCodec.customerId(random.nextInt(JOURNAL_CUSTOMERS));
+        String recordId = IdCodec.recordId(random.nextInt(JOURNAL_KEYS));
+        int action = random.nextInt(1000);
+        if (action < 50) {
+            bank.registerNewCustomer(customerId, randomAmount(random));
+        } else if (action < 400) {
+            bank.addLoanToCustomer(customerId, randomLoan(random, recordId));
+        } else if (action < 450) {
+            List<LoanRequest> batch = new ArrayList<>(4);
+            for (int i = 0; i < 4; i++) {
+                batch.add(new LoanRequest(IdCodec.customerId(random.nextInt(JOURNAL_CUSTOMERS)),
+                        randomLoan(random, IdCodec.recordId(random.nextInt(JOURNAL_KEYS)))));
+            }
+            bank.addLoans(batch);
+        } else if (action < 700) {
+            bank.removeLoanFromCustomer(customerId, recordId);
+        } else if (action < 850) {
+            bank.updateLoan(customerId, recordId, randomAmount(random), 1 + random.nextInt(30));
+        } else if (action < 999 || !accrue) {
+            bank.updateCustomerIncome(customerId, randomAmount(random));
+        } else {
+            bank.accrueInterest();
+        }
+    }
+
+    // Method to replay a journal file into a new bank and check that it holds exactly what the live bank holds
+    private static void compareReplay(Path file, XYZBank live, String description, long operations)
+            throws IOException {
+        XYZBank replayed = new XYZBank(JOURNAL_CAP);
+        LoanJournal.replay(file, replayed);
+        Map<String, Customer> replayedCustomers = new HashMap<>();
+        for (Customer customer : replayed.getCustomers()) {
+            replayedCustomers.put(customer.getCustomerId(), customer);
+        }
+        if (replayedCustomers.size() != live.getCustomerCount()
+                || replayed.getCurrentNumberOfRecords() != live.getCurrentNumberOfRecords()) {
+            fail("journal", operations, "the " + description + " holds " + replayedCustomers.size() + " customers and "
+                    + replayed.getCurrentNumberOfRecords() + " records, the bank " + live.getCustomerCount() + " and "
+                    + live.getCurrentNumberOfRecords());
+        }
+        for (Customer customer : live.getCustomers()) {
+            Customer copy = replayedCustomers.get(customer.getCustomerId());
+            if (copy == null) {
+                fail("journal", operations, "the " + description + " is missing customer " + customer.getCustomerId());
+            }
+            if (copy.getAnnualIncome() != customer.getAnnualIncome()
+                    || copy.getCreditRecords().size() != customer.getCreditRecords().size()) {
+                fail("journal", operations, "the " + description + " differs from the bank for customer "
+                        + customer.getCustomerId());
+            }
+            Map<Integer, Loan> copiedLoans = new HashMap<>();
+            for (Loan loan : copy.getCreditRecords()) {
+                copiedLoans.put(loan.getRecordKey(), loan);
+            }
+            for (Loan loan : customer.getCreditRecords()) {
+                Loan other = copiedLoans.get(loan.getRecordKey());
+                if (other == null || other.getType() != loan.getType() || other.getInterestRate() != loan.getInterestRate()
+                        || other.getAmountLeft() != loan.getAmountLeft() || other.getLoanTermLeft() != loan.getLoanTermLeft()
+                        || other.getOverpayment() != loan.getOverpayment()) {
+                    fail("journal", operations, "the " + description + " differs from the bank for loan " + loan.getRecordID()
+                            + " of customer " + customer.getCustomerId());
+                }
+            }
+        }
+    }
+
+    // Method to delete a temporary directory and the files in it, ignoring what cannot be deleted
+    private static void deleteDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            // Leave the files behind, they are in the temporary directory
+        }
+        directory.toFile().delete();
+    }
+
+    // Method to run a body on a number of threads at once and wait for all of them, failing the check if any of them threw
+    private static void runThreads(String check, int threads, IntConsumer body) {
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    body.accept(index);
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                }
+            }, "check-worker-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (error.get() != null) {
+            error.get().printStackTrace(System.out);
+            fail(check, 0, error.get().toString());
+        }
+    }
+
+    // Method to create a loan of a random type with random terms
+    private static Loan randomLoan(Random random, String recordId) {
+        LoanType type = LoanType.fromCode(random.nextInt(LoanType.values().length));
+        return type.create(recordId, 0.5 + random.nextInt(100) / 10.0, randomAmount(random), 1 + random.nextInt(30),
+                random.nextInt(3));
+    }
+
+    // Method to pick an amount between 0.001 and 10,000 with a random order of magnitude
+    private static double randomAmount(Random random) {
+        return Math.pow(10, random.nextInt(7) - 3) * (1 + 9 * random.nextDouble());
+    }
+
+    // File channel that passes everything to a real one, except that it can be told to fail its next write
+    // Nothing of the failed write reaches the file, like a write the operating system rejects outright
+    private static class FailingChannel extends FileChannel {
+        private final FileChannel file;
+        private final AtomicBoolean failNext = new AtomicBoolean();
+
+        // Constructor
+        FailingChannel(FileChannel file) {
+            this.file = file;
+        }
+
+        // Method to make the next write fail
+        void failNextWrite() {
+            failNext.set(true);
+        }
+
+        // Method to throw instead of writing if a failure was asked for
+        private void checkWrite() throws IOException {
+            if (failNext.compareAndSet(true, false)) {
+                throw new IOException("Injected write failure");
+            }
+        }
+
+        // The remaining methods pass through to the real channel, writes after checkWrite
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            checkWrite();
+            return file.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            checkWrite();
+            return file.write(srcs, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            checkWrite();
+            return file.write(src, position);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return file.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return file.read(dsts, offset, length);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return file.read(dst, position);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return file.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            file.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return file.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            file.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            file.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return file.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            checkWrite();
+            return file.transferFrom(src, position, count);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return file.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return file.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return file.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            file.close();
+        }
+    }
+}